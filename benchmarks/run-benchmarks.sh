@@ -0,0 +1,27 @@
+#!/bin/sh
+# Compile the application and the benchmarks, then run them headless.
+# Arguments go to the benchmark runner:
+#   -wi <n>           warmup iterations (default 3)
+#   -i <n>            measurement iterations (default 5)
+#   -r <ms>           time per iteration (default 1000)
+#   -p size=<n,...>   roster sizes (default 1000,10000,100000,1000000)
+#   -rf <file>        write JMH style JSON results
+#   <regex>           only run benchmarks whose name matches
+# With --stress as the first argument, the StudentStore stress check runs
+# instead: run-benchmarks.sh --stress [rounds] [threads]
+# With --scaling, the check that ID lookups stay flat as the roster grows
+# runs: run-benchmarks.sh --scaling [sizes]
+set -e
+cd "$(dirname "$0")/.."
+rm -rf benchmarks/out
+mkdir -p benchmarks/out
+javac -encoding UTF-8 -d benchmarks/out $(find src benchmarks/src -name '*.java')
+main=RosterBenchmarks
+if [ "$1" = "--stress" ]; then
+    shift
+    main=StoreStress
+elif [ "$1" = "--scaling" ]; then
+    shift
+    main=LookupScaling
+fi
+exec java -Xmx4g -Djava.awt.headless=true ${BENCHMARK_JVM_ARGS} -cp benchmarks/out $main "$@"
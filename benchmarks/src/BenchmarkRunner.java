@@ -0,0 +1,197 @@
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+// Small JMH style harness: each benchmark is set up once per roster size, run
+// for a number of timed warmup and measurement iterations, and reported as
+// average time per operation. Results are written in the same JSON layout as
+// JMH's -rf json, so the files can be compared with the usual JMH tools
+public class BenchmarkRunner {
+
+    // Operations and time recorded by one call to a benchmark
+    public static class Sample {
+        long ops;
+        long nanos;
+
+        // Time a block of operations
+        void time(int operations, Runnable block) {
+            long start = System.nanoTime();
+            block.run();
+            nanos += System.nanoTime() - start;
+            ops += operations;
+        }
+    }
+
+    public interface Benchmark {
+        String name();
+
+        // Called once per roster size, not timed
+        void setup(int size);
+
+        // Run some operations and record them in the sample
+        void run(Sample sample);
+
+        // Threads the benchmark runs its operations on, for the report
+        default int threads() {
+            return 1;
+        }
+    }
+
+    private static class Result {
+        final String benchmark;
+        final int size;
+        final int threads;
+        final double[] scores;
+
+        Result(String benchmark, int size, int threads, double[] scores) {
+            this.benchmark = benchmark;
+            this.size = size;
+            this.threads = threads;
+            this.scores = scores;
+        }
+
+        double mean() {
+            double sum = 0;
+            for(double score : scores) {
+                sum += score;
+            }
+            return sum / scores.length;
+        }
+
+        // Half width of the 99.9% confidence interval, like JMH reports
+        double error() {
+            if(scores.length < 2) {
+                return Double.NaN;
+            }
+            double mean = mean();
+            double sum = 0;
+            for(double score : scores) {
+                sum += (score - mean) * (score - mean);
+            }
+            return 3.29 * Math.sqrt(sum / (scores.length - 1)) / Math.sqrt(scores.length);
+        }
+    }
+
+    private int warmupIterations = 3;
+    private int measurementIterations = 5;
+    private long iterationNanos = 1_000_000_000L;
+    private int[] sizes = {1_000, 10_000, 100_000, 1_000_000};
+    private Pattern include = Pattern.compile(".*");
+    private Path resultFile;
+
+    // Options: -wi <n> -i <n> -r <ms> -p size=<n,n,...> -rf <file> [regex]
+    public BenchmarkRunner(String[] args) {
+        for(int i = 0; i < args.length; i++) {
+            switch(args[i]) {
+                case "-wi": warmupIterations = Integer.parseInt(args[++i]); break;
+                case "-i": measurementIterations = Integer.parseInt(args[++i]); break;
+                case "-r": iterationNanos = Long.parseLong(args[++i]) * 1_000_000; break;
+                case "-rf": resultFile = Path.of(args[++i]); break;
+                case "-p":
+                    String value = args[++i];
+                    String[] parts = value.substring(value.indexOf('=') + 1).split(",");
+                    sizes = new int[parts.length];
+                    for(int j = 0; j < parts.length; j++) {
+                        sizes[j] = Integer.parseInt(parts[j].trim().replace("_", ""));
+                    }
+                    break;
+                default: include = Pattern.compile(args[i]);
+            }
+        }
+    }
+
+    public void run(List<Benchmark> benchmarks) throws IOException {
+        ArrayList<Result> results = new ArrayList<>();
+        for(Benchmark benchmark : benchmarks) {
+            if(!include.matcher(benchmark.name()).find()) {
+                continue;
+            }
+            for(int size : sizes) {
+                System.out.printf("# %s, size = %d%n", benchmark.name(), size);
+                benchmark.setup(size);
+                for(int i = 0; i < warmupIterations; i++) {
+                    System.out.printf("Warmup %d: %s%n", i + 1, format(iteration(benchmark)));
+                }
+                double[] scores = new double[measurementIterations];
+                for(int i = 0; i < measurementIterations; i++) {
+                    scores[i] = iteration(benchmark);
+                    System.out.printf("Iteration %d: %s%n", i + 1, format(scores[i]));
+                }
+                Result result = new Result(benchmark.name(), size, benchmark.threads(), scores);
+                results.add(result);
+                System.out.printf("Result: %s +- %s%n%n", format(result.mean()), format(result.error()));
+                benchmark.setup(0);
+            }
+        }
+
+        System.out.printf("%-40s %10s %8s %16s %14s%n", "Benchmark", "size", "threads", "Score", "Error");
+        for(Result result : results) {
+            System.out.printf("%-40s %10d %8d %16.3f %14.3f  ns/op%n", result.benchmark, result.size,
+                    result.threads, result.mean(), result.error());
+        }
+        if(resultFile != null) {
+            Files.writeString(resultFile, toJson(results), StandardCharsets.UTF_8);
+            System.out.println("Results written to " + resultFile);
+        }
+    }
+
+    // Average nanoseconds per operation over one iteration
+    private double iteration(Benchmark benchmark) {
+        Sample sample = new Sample();
+        long end = System.nanoTime() + iterationNanos;
+        do {
+            benchmark.run(sample);
+        } while(System.nanoTime() < end);
+        return sample.nanos / (double) Math.max(1, sample.ops);
+    }
+
+    private static String format(double nanos) {
+        return String.format(Locale.ROOT, "%.3f ns/op", nanos);
+    }
+
+    private String toJson(List<Result> results) {
+        StringBuilder json = new StringBuilder("[\n");
+        for(int i = 0; i < results.size(); i++) {
+            Result result = results.get(i);
+            json.append("    {\n");
+            json.append("        \"benchmark\" : \"").append(result.benchmark).append("\",\n");
+            json.append("        \"mode\" : \"avgt\",\n");
+            json.append("        \"threads\" : ").append(result.threads).append(",\n");
+            json.append("        \"forks\" : 1,\n");
+            json.append("        \"jvm\" : \"").append(escape(System.getProperty("java.home"))).append("\",\n");
+            json.append("        \"jdkVersion\" : \"").append(System.getProperty("java.version")).append("\",\n");
+            json.append("        \"warmupIterations\" : ").append(warmupIterations).append(",\n");
+            json.append("        \"warmupTime\" : \"").append(iterationNanos / 1_000_000).append(" ms\",\n");
+            json.append("        \"measurementIterations\" : ").append(measurementIterations).append(",\n");
+            json.append("        \"measurementTime\" : \"").append(iterationNanos / 1_000_000).append(" ms\",\n");
+            json.append("        \"params\" : {\n");
+            json.append("            \"size\" : \"").append(result.size).append("\"\n");
+            json.append("        },\n");
+            json.append("        \"primaryMetric\" : {\n");
+            json.append("            \"score\" : ").append(number(result.mean())).append(",\n");
+            json.append("            \"scoreError\" : ").append(number(result.error())).append(",\n");
+            json.append("            \"scoreUnit\" : \"ns/op\",\n");
+            json.append("            \"rawData\" : [\n                [\n");
+            for(int j = 0; j < result.scores.length; j++) {
+                json.append("                    ").append(number(result.scores[j]));
+                json.append(j + 1 < result.scores.length ? ",\n" : "\n");
+            }
+            json.append("                ]\n            ]\n        }\n");
+            json.append(i + 1 < results.size() ? "    },\n" : "    }\n");
+        }
+        return json.append("]\n").toString();
+    }
+
+    private static String number(double value) {
+        return Double.isNaN(value) ? "\"NaN\"" : String.format(Locale.ROOT, "%.6f", value);
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+}
@@ -0,0 +1,127 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Random;
+
+// Check that finding a student by ID stays flat as the roster grows. Times
+// the ID-table probe alone (RosterView.rowOf, no Student is decoded) at 1K
+// to 1M students and fails if the largest roster is more than MAX_GROWTH
+// times slower per lookup than the smallest.
+//
+// Every size looks up the same few IDs, spread over the whole roster, so
+// the probed entries stay in cache and the time follows the work per lookup
+// rather than cache and TLB misses. A lookup that walks a tree would take
+// twice the steps at 1M as at 1K and fail; the linear scan the index
+// replaced is timed alongside for contrast.
+//
+// Run with benchmarks/run-benchmarks.sh --scaling [sizes]
+public class LookupScaling {
+
+    private static final double MAX_GROWTH = 1.5;
+    private static final int HOT_IDS = 16;
+    private static final int ROUNDS = 20;
+    private static final long WARMUP_NANOS = 500_000_000L;
+    private static final long ROUND_NANOS = 50_000_000L;
+
+    public static void main(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+        int[] sizes = {1_000, 10_000, 100_000, 1_000_000};
+        if(args.length > 0) {
+            String[] parts = args[0].split(",");
+            sizes = new int[parts.length];
+            for(int i = 0; i < parts.length; i++) {
+                sizes[i] = Integer.parseInt(parts[i].trim().replace("_", ""));
+            }
+        }
+
+        // Every size is built and warmed up before any is measured, and the
+        // rounds take turns between sizes, so all of them run the same
+        // compiled code under the same conditions
+        RosterView[] views = new RosterView[sizes.length];
+        String[][] ids = new String[sizes.length][];
+        for(int i = 0; i < sizes.length; i++) {
+            views[i] = roster(sizes[i]);
+            ids[i] = hotIds(sizes[i]);
+        }
+        for(int i = 0; i < sizes.length; i++) {
+            probe(views[i], ids[i], WARMUP_NANOS);
+        }
+        double[] best = new double[sizes.length];
+        Arrays.fill(best, Double.MAX_VALUE);
+        for(int round = 0; round < ROUNDS; round++) {
+            for(int i = 0; i < sizes.length; i++) {
+                best[i] = Math.min(best[i], probe(views[i], ids[i], ROUND_NANOS));
+            }
+        }
+
+        for(int i = 0; i < sizes.length; i++) {
+            double scan = measureScan(sizes[i]);
+            System.out.printf(Locale.ROOT, "%,10d students: ID probe %7.1f ns, linear scan %12.1f ns%n",
+                    sizes[i], best[i], scan);
+        }
+
+        double growth = best[sizes.length - 1] / best[0];
+        if(growth > MAX_GROWTH) {
+            throw new AssertionError(String.format(Locale.ROOT,
+                    "The ID probe is %.2fx slower at %,d students than at %,d, more than %.1fx",
+                    growth, sizes[sizes.length - 1], sizes[0], MAX_GROWTH));
+        }
+        System.out.printf(Locale.ROOT, "OK: the ID probe grows %.2fx from %,d to %,d students%n",
+                growth, sizes[0], sizes[sizes.length - 1]);
+    }
+
+    private static RosterView roster(int size) {
+        StudentStore store = new StudentStore();
+        ArrayList<Student> batch = new ArrayList<>(10_000);
+        for(int i = 0; i < size; i++) {
+            batch.add(RosterBenchmarks.student(i));
+            if(batch.size() == 10_000) {
+                store.addAll(batch);
+                batch.clear();
+            }
+        }
+        store.addAll(batch);
+        return store.snapshot();
+    }
+
+    // IDs spread over the whole roster, few enough that the pages they touch
+    // stay mapped in the TLB at every size
+    private static String[] hotIds(int size) {
+        Random random = new Random(42);
+        String[] ids = new String[HOT_IDS];
+        for(int i = 0; i < ids.length; i++) {
+            ids[i] = RosterBenchmarks.student(random.nextInt(size)).id;
+        }
+        return ids;
+    }
+
+    // Average nanoseconds per rowOf over a stretch of lookups
+    private static double probe(RosterView view, String[] ids, long nanos) {
+        long lookups = 0;
+        long start = System.nanoTime();
+        long end = start + nanos;
+        long now;
+        do {
+            for(String id : ids) {
+                if(view.rowOf(id) < 0) {
+                    throw new IllegalStateException("Missing " + id);
+                }
+            }
+            lookups += ids.length;
+            now = System.nanoTime();
+        } while(now < end);
+        return (double) (now - start) / lookups;
+    }
+
+    // The lookupByIdLinearScan benchmark, for contrast
+    private static double measureScan(int size) {
+        BenchmarkRunner.Benchmark benchmark = new RosterBenchmarks.LinearScanLookup();
+        benchmark.setup(size);
+        long end = System.nanoTime() + ROUND_NANOS * 4;
+        BenchmarkRunner.Sample sample = new BenchmarkRunner.Sample();
+        while(System.nanoTime() < end) {
+            benchmark.run(sample);
+        }
+        return (double) sample.nanos / sample.ops;
+    }
+}
@@ -0,0 +1,906 @@
+import javax.swing.table.DefaultTableModel;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+// Benchmarks for the roster hot paths, driven through the data layer without
+// showing a frame. Each benchmark runs at every roster size (default 1K, 10K,
+// 100K and 1M) and reports the average time of one operation.
+//
+// Run with benchmarks/run-benchmarks.sh, for example
+//   benchmarks/run-benchmarks.sh -rf results.json
+//   benchmarks/run-benchmarks.sh -p size=1000,100000 lookup
+public class RosterBenchmarks {
+
+    // Operations per timed block, so timer overhead stays out of the score
+    static final int BATCH = 1000;
+
+    public static void main(String[] args) throws IOException {
+        System.setProperty("java.awt.headless", "true");
+        new BenchmarkRunner(args).run(Arrays.asList(
+                new Insert(),
+                new LookupById(),
+                new LinearScanLookup(),
+                new Delete(),
+                new GradeBurst(),
+                new GradeBatch(),
+                new ConcurrentWrites(1),
+                new ConcurrentWrites(4),
+                new ConcurrentWrites(16),
+                new LookupDuringWrites(),
+                new TableRefresh(),
+                new PagedScroll(-1),
+                new PagedScroll(StudentStore.NAME),
+                new FilterQuery(false, false),
+                new FilterQuery(true, false),
+                new FilterQuery(false, true),
+                new LinearScanQuery(),
+                new DuplicateLookup(),
+                new DuplicateScanAll(),
+                new WriteReports(RosterReports.Format.HTML),
+                new WriteReports(RosterReports.Format.TEXT),
+                new Replication(false),
+                new Replication(true),
+                new LegacyTableRebuild()));
+    }
+
+    static Student student(int number) {
+        return new Student(String.format("S%07d", number), "Student " + number,
+                "Course " + (number % 20), "student" + number + "@example.edu");
+    }
+
+    // Store with students 0 .. size - 1 and their ids in random order
+    abstract static class RosterBenchmark implements BenchmarkRunner.Benchmark {
+        StudentStore store;
+        String[] ids;
+        int size;
+        int cursor;
+        final Random random = new Random(42);
+
+        @Override
+        public void setup(int size) {
+            this.size = size;
+            store = new StudentStore();
+            ids = new String[size];
+            ArrayList<Student> batch = new ArrayList<>(10_000);
+            for(int i = 0; i < size; i++) {
+                Student student = student(i);
+                ids[i] = student.id;
+                batch.add(student);
+                if(batch.size() == 10_000) {
+                    store.addAll(batch);
+                    batch.clear();
+                }
+            }
+            store.addAll(batch);
+            for(int i = size - 1; i > 0; i--) {
+                int j = random.nextInt(i + 1);
+                String id = ids[i];
+                ids[i] = ids[j];
+                ids[j] = id;
+            }
+        }
+
+        String nextId() {
+            if(cursor == ids.length) {
+                cursor = 0;
+            }
+            return ids[cursor++];
+        }
+    }
+
+    // Add a batch of new students; they are removed again outside the timing
+    static class Insert extends RosterBenchmark {
+        int next;
+
+        public String name() {
+            return "insert";
+        }
+
+        @Override
+        public void setup(int size) {
+            super.setup(size);
+            next = size;
+        }
+
+        public void run(BenchmarkRunner.Sample sample) {
+            Student[] batch = new Student[BATCH];
+            for(int i = 0; i < BATCH; i++) {
+                batch[i] = student(next++);
+            }
+            sample.time(BATCH, () -> {
+                for(Student student : batch) {
+                    store.add(student);
+                }
+            });
+            for(Student student : batch) {
+                store.remove(student.id);
+            }
+        }
+    }
+
+    // Find Student through the store's id index
+    static class LookupById extends RosterBenchmark {
+        public String name() {
+            return "lookupById";
+        }
+
+        public void run(BenchmarkRunner.Sample sample) {
+            String[] batch = new String[BATCH];
+            for(int i = 0; i < BATCH; i++) {
+                batch[i] = nextId();
+            }
+            sample.time(BATCH, () -> {
+                for(String id : batch) {
+                    if(store.find(id) == null) {
+                        throw new IllegalStateException("Missing " + id);
+                    }
+                }
+            });
+        }
+    }
+
+    // The linear scan the Grade tab used before the id index, as a baseline
+    static class LinearScanLookup extends RosterBenchmark {
+        ArrayList<Student> list;
+
+        public String name() {
+            return "lookupByIdLinearScan";
+        }
+
+        @Override
+        public void setup(int size) {
+            super.setup(0);
+            list = new ArrayList<>(size);
+            ids = new String[size];
+            for(int i = 0; i < size; i++) {
+                list.add(student(i));
+                ids[i] = list.get(i).id;
+            }
+            Collections.shuffle(Arrays.asList(ids), random);
+        }
+
+        public void run(BenchmarkRunner.Sample sample) {
+            String id = nextId();
+            sample.time(1, () -> {
+                Student found = null;
+                for(Student student : list) {
+                    if(student.id.equals(id)) {
+                        found = student;
+                        break;
+                    }
+                }
+                if(found == null) {
+                    throw new IllegalStateException("Missing " + id);
+                }
+            });
+        }
+    }
+
+    // Delete Selected; the students are added back outside the timing
+    static class Delete extends RosterBenchmark {
+        public String name() {
+            return "delete";
+        }
+
+        public void run(BenchmarkRunner.Sample sample) {
+            int count = Math.min(BATCH, size);
+            String[] batch = new String[count];
+            for(int i = 0; i < count; i++) {
+                batch[i] = nextId();
+            }
+            ArrayList<Student> removed = new ArrayList<>(count);
+            sample.time(count, () -> {
+                for(String id : batch) {
+                    removed.add(store.remove(id));
+                }
+            });
+            store.addAll(removed);
+        }
+    }
+
+    // Assign Grade to many students in a row
+    static class GradeBurst extends RosterBenchmark {
+        int grade;
+
+        public String name() {
+            return "gradeAssignmentBurst";
+        }
+
+        public void run(BenchmarkRunner.Sample sample) {
+            String[] batch = new String[BATCH];
+            for(int i = 0; i < BATCH; i++) {
+                batch[i] = nextId();
+            }
+            String value = Student.GRADES[grade++ % Student.GRADES.length];
+            sample.time(BATCH, () -> {
+                for(String id : batch) {
+                    store.setGrade(id, value);
+                }
+            });
+        }
+    }
+
+    // Assign a grade sheet of up to 100k grades as one change. The score is
+    // per grade, so batch time is score * min(size, 100k)
+    static class GradeBatch extends RosterBenchmark {
+        int grade;
+
+        public String name() {
+            return "gradeBatch";
+        }
+
+        public void run(BenchmarkRunner.Sample sample) {
+            int count = Math.min(size, 100_000);
+            String value = Student.GRADES[grade++ % Student.GRADES.length];
+            LinkedHashMap<String, String> sheet = new LinkedHashMap<>();
+            for(int i = 0; i < count; i++) {
+                sheet.put(nextId(), value);
+            }
+            sample.time(count, () -> store.setGrades(sheet));
+        }
+    }
+
+    // Scroll the disk paged table a mouse wheel step at a time and read every
+    // visible cell, as the table does when it paints. Pages are decoded on the
+    // spot, which is what happens when prefetching falls behind. With a sort
+    // column, rows come through the on-disk index in random file order
+    static class PagedScroll extends RosterBenchmark {
+        static final int VISIBLE_ROWS = 40;
+        static final int WHEEL_ROWS = 3;
+
+        final int sortColumn;
+        PagedStudentTableModel model;
+        int top;
+
+        PagedScroll(int sortColumn) {
+            this.sortColumn = sortColumn;
+        }
+
+        public String name() {
+            return sortColumn < 0 ? "pagedScroll" : "pagedScrollSorted";
+        }
+
+        @Override
+        public void setup(int size) {
+            super.setup(size);
+            try {
+                if(model != null) {
+                    model.close();
+                }
+                model = PagedStudentTableModel.create(store.snapshot());
+                if(sortColumn >= 0) {
+                    model.prepareSort(sortColumn);
+                    model.sortBy(sortColumn, false);
+                }
+            } catch(IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            // The roster now lives in the page file only
+            store = null;
+            top = 0;
+        }
+
+        public void run(BenchmarkRunner.Sample sample) {
+            int steps = BATCH / VISIBLE_ROWS;
+            sample.time(steps * VISIBLE_ROWS, () -> {
+                for(int step = 0; step < steps; step++) {
+                    if(top + VISIBLE_ROWS > model.getRowCount()) {
+                        top = 0;
+                    }
+                    for(int row = top; row < top + VISIBLE_ROWS; row++) {
+                        for(int column = 0; column < model.getColumnCount(); column++) {
+                            if(model.getValueAt(row, column) == null) {
+                                throw new IllegalStateException("Missing row " + row);
+                            }
+                        }
+                    }
+                    top += WHEEL_ROWS * 37;
+                }
+            });
+            if(model.cachedPages() > PagedStudentTableModel.MAX_PAGES) {
+                throw new IllegalStateException(model.cachedPages() + " pages cached");
+            }
+        }
+    }
+
+    // Students spread over all grades, for the query benchmarks
+    abstract static class GradedRoster extends RosterBenchmark {
+        // Two of the twenty courses and three grades, about 4% of the roster
+        static final List<String> COURSES = Arrays.asList("Course 3", "Course 7");
+        static final List<String> GRADES = Arrays.asList("D", "F", "Incomplete");
+
+        @Override
+        public void setup(int size) {
+            super.setup(size);
+            LinkedHashMap<String, String> grades = new LinkedHashMap<>();
+            for(int i = 0; i < size; i++) {
+                grades.put(ids[i], Student.GRADES[random.nextInt(Student.GRADES.length)]);
+                if(grades.size() == 100_000) {
+                    store.setGrades(grades);
+                    grades.clear();
+                }
+            }
+            store.setGrades(grades);
+        }
+    }
+
+    // Multi-criteria query through the bitmap index: two courses and three
+    // grades, optionally within an ID range of 30% of the roster. The index
+    // is kept up to date through a batch of grade changes between samples
+    static class FilterQuery extends GradedRoster {
+        final boolean idRange;
+        final boolean churn;
+        RosterBitmapIndex index;
+        RosterQuery query;
+
+        FilterQuery(boolean idRange, boolean churn) {
+            this.idRange = idRange;
+            this.churn = churn;
+        }
+
+        public String name() {
+            return churn ? "filterQueryWhileGrading" : idRange ? "filterQueryIdRange" : "filterQuery";
+        }
+
+        @Override
+        public void setup(int size) {
+            super.setup(size);
+            index = new RosterBitmapIndex(store);
+            query = new RosterQuery(COURSES, GRADES,
+                    idRange ? String.format("S%07d", size / 10) : null,
+                    idRange ? String.format("S%07d", size / 10 * 4) : null);
+        }
+
+        public void run(BenchmarkRunner.Sample sample) {
+            if(churn) {
+                for(int i = 0; i < BATCH; i++) {
+                    store.setGrade(nextId(), Student.GRADES[random.nextInt(Student.GRADES.length)]);
+                }
+            }
+            sample.time(1, () -> {
+                if(index.query(query).length == 0) {
+                    throw new IllegalStateException("No students match");
+                }
+            });
+        }
+    }
+
+    // The same query as filterQuery answered by scanning every row, as a baseline
+    static class LinearScanQuery extends GradedRoster {
+        public String name() {
+            return "linearScanQuery";
+        }
+
+        public void run(BenchmarkRunner.Sample sample) {
+            sample.time(1, () -> {
+                RosterView view = store.snapshot();
+                int count = 0;
+                for(int row = 0; row < view.size(); row++) {
+                    if(COURSES.contains(view.valueAt(row, StudentStore.COURSE))
+                            && GRADES.contains(Student.GRADES[view.gradeCode(row)])) {
+                        count++;
+                    }
+                }
+                if(count == 0) {
+                    throw new IllegalStateException("No students match");
+                }
+            });
+        }
+    }
+
+    // Students with made-up names and emails, one in a hundred a near copy of an
+    // earlier one: a typo in the name, the name turned around or the email
+    // with dots or a +tag. The "Student N" names of the other benchmarks are
+    // all alike, which is not what a real roster looks like to MinHash
+    abstract static class NamedRoster implements BenchmarkRunner.Benchmark {
+        static final String CONSONANTS = "bcdfghjklmnprstvwz";
+        static final String VOWELS = "aeiou";
+        StudentStore store;
+        final Random random = new Random(42);
+
+        @Override
+        public void setup(int size) {
+            store = new StudentStore();
+            String[] firstNames = new String[2000];
+            String[] lastNames = new String[20000];
+            for(int i = 0; i < firstNames.length; i++) {
+                firstNames[i] = word();
+            }
+            for(int i = 0; i < lastNames.length; i++) {
+                lastNames[i] = word();
+            }
+            ArrayList<Student> batch = new ArrayList<>(10_000);
+            ArrayList<Student> recent = new ArrayList<>();
+            for(int i = 0; i < size; i++) {
+                String id = String.format("S%07d", i);
+                Student student;
+                if(!recent.isEmpty() && random.nextInt(100) == 0) {
+                    Student original = recent.get(random.nextInt(recent.size()));
+                    student = nearCopy(id, original);
+                } else {
+                    String first = firstNames[random.nextInt(firstNames.length)];
+                    String last = lastNames[random.nextInt(lastNames.length)];
+                    student = new Student(id, first + " " + last, "Course " + (i % 20),
+                            first.toLowerCase().charAt(0) + last.toLowerCase() + "@example.edu");
+                }
+                batch.add(student);
+                if(recent.size() < 10_000) {
+                    recent.add(student);
+                } else {
+                    recent.set(random.nextInt(recent.size()), student);
+                }
+                if(batch.size() == 10_000) {
+                    store.addAll(batch);
+                    batch.clear();
+                }
+            }
+            store.addAll(batch);
+        }
+
+        Student nearCopy(String id, Student original) {
+            String[] names = original.name.split(" ");
+            switch(random.nextInt(3)) {
+                case 0:
+                    return new Student(id, typo(names[0]) + " " + names[1], original.course, original.email);
+                case 1:
+                    return new Student(id, names[1] + ", " + names[0], original.course,
+                            names[0].toLowerCase() + "." + names[1].toLowerCase() + "@example.edu");
+                default:
+                    return new Student(id, original.name, original.course, original.email.replace("@", "+2@"));
+            }
+        }
+
+        String word() {
+            StringBuilder word = new StringBuilder();
+            for(int syllables = 2 + random.nextInt(2); syllables > 0; syllables--) {
+                word.append(CONSONANTS.charAt(random.nextInt(CONSONANTS.length())))
+                        .append(VOWELS.charAt(random.nextInt(VOWELS.length())));
+                if(random.nextInt(3) == 0) {
+                    word.append(CONSONANTS.charAt(random.nextInt(CONSONANTS.length())));
+                }
+            }
+            word.setCharAt(0, Character.toUpperCase(word.charAt(0)));
+            return word.toString();
+        }
+
+        String typo(String name) {
+            int at = 1 + random.nextInt(name.length() - 1);
+            return name.substring(0, at) + VOWELS.charAt(random.nextInt(VOWELS.length())) + name.substring(at + 1);
+        }
+    }
+
+    // The Add Student check: look up a near copy of a stored student in the
+    // LSH index and rank the candidates
+    static class DuplicateLookup extends NamedRoster {
+        DuplicateIndex index;
+
+        public String name() {
+            return "duplicateLookup";
+        }
+
+        @Override
+        public void setup(int size) {
+            super.setup(size);
+            index = new DuplicateIndex(store);
+        }
+
+        public void run(BenchmarkRunner.Sample sample) {
+            RosterView view = store.snapshot();
+            Student[] lookups = new Student[100];
+            for(int i = 0; i < lookups.length; i++) {
+                lookups[i] = nearCopy("new", view.get(random.nextInt(view.size())));
+            }
+            sample.time(lookups.length, () -> {
+                for(Student student : lookups) {
+                    index.similar(student.name, student.email, MinHash.THRESHOLD, 5);
+                }
+            });
+        }
+    }
+
+    // The Find Duplicates job: every likely duplicate pair of the roster,
+    // on the fork/join pool
+    static class DuplicateScanAll extends NamedRoster {
+        public String name() {
+            return "duplicateScan";
+        }
+
+        public void run(BenchmarkRunner.Sample sample) {
+            RosterView view = store.snapshot();
+            sample.time(1, () -> {
+                if(DuplicateScan.scan(view, MinHash.THRESHOLD, 1000, () -> false, progress -> {}).isEmpty()
+                        && view.size() >= 1000) {
+                    throw new IllegalStateException("No duplicates found");
+                }
+            });
+        }
+    }
+
+    // The term-end reports of a roster spread over 1,000 courses and all
+    // grades, written into a temporary directory that is emptied between
+    // samples
+    static class WriteReports implements BenchmarkRunner.Benchmark {
+        static final int COURSES = 1000;
+
+        final RosterReports.Format format;
+        RosterView view;
+        Path directory;
+
+        WriteReports(RosterReports.Format format) {
+            this.format = format;
+        }
+
+        public String name() {
+            return "reports" + (format == RosterReports.Format.HTML ? "Html" : "Text");
+        }
+
+        @Override
+        public void setup(int size) {
+            Random random = new Random(42);
+            StudentStore store = new StudentStore();
+            ArrayList<Student> batch = new ArrayList<>(10_000);
+            LinkedHashMap<String, String> grades = new LinkedHashMap<>();
+            for(int i = 0; i < size; i++) {
+                batch.add(new Student(String.format("S%07d", i), "Student " + i, "Course " + (i % COURSES),
+                        "student" + i + "@example.edu"));
+                grades.put(batch.get(batch.size() - 1).id, Student.GRADES[random.nextInt(Student.GRADES.length)]);
+                if(batch.size() == 10_000) {
+                    store.addAll(batch);
+                    store.setGrades(grades);
+                    batch.clear();
+                    grades.clear();
+                }
+            }
+            store.addAll(batch);
+            store.setGrades(grades);
+            view = store.snapshot();
+            try {
+                directory = Files.createTempDirectory("reports");
+            } catch(IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        public void run(BenchmarkRunner.Sample sample) {
+            sample.time(1, () -> {
+                try {
+                    RosterReports.write(view, course -> "", format, directory, () -> false, progress -> {});
+                } catch(IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            try(Stream<Path> files = Files.walk(directory)) {
+                files.sorted(Comparator.reverseOrder()).filter(file -> !file.equals(directory)).forEach(file -> {
+                    try {
+                        Files.delete(file);
+                    } catch(IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } catch(IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    // Changes made on a primary until a follower on localhost has applied them
+    // all: single grade changes, or new students that are removed again
+    // outside the timing. The primary journals to a temporary directory and
+    // the follower keeps the same indexes as a Roster, so 1e9 / score is the
+    // end to end replication throughput
+    static class Replication extends RosterBenchmark {
+        static final int CHANGES = 100_000;
+
+        final boolean adds;
+        RosterReplicationServer server;
+        RosterFollower follower;
+        int round;
+        String[] names;
+
+        Replication(boolean adds) {
+            this.adds = adds;
+        }
+
+        public String name() {
+            return adds ? "replicateAdds" : "replicateGrades";
+        }
+
+        @Override
+        public void setup(int size) {
+            super.setup(size);
+            try {
+                if(server != null) {
+                    server.close();
+                    follower.close();
+                }
+                // The students so far reach the follower in its first snapshot
+                RosterPersistence persistence = new RosterPersistence(Files.createTempDirectory("primary"));
+                persistence.recover(store);
+                server = new RosterReplicationServer(persistence,
+                        new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+                server.start();
+            } catch(IOException e) {
+                throw new UncheckedIOException(e);
+            }
+
+            StudentStore copy = new StudentStore();
+            CourseIndex enrollment = new CourseIndex(copy);
+            new RosterBitmapIndex(copy);
+            new DuplicateIndex(copy);
+            follower = new RosterFollower(server.address(), copy, new CourseRegistry(), enrollment,
+                    new StoreExecutor(), () -> {});
+            follower.start();
+            follower.synced().join();
+
+            // Varied names, as the follower's duplicate index sees them for real
+            Random random = new Random(42);
+            names = new String[CHANGES];
+            for(int i = 0; i < CHANGES; i++) {
+                names[i] = syllables(random) + " " + syllables(random);
+            }
+        }
+
+        private static String syllables(Random random) {
+            StringBuilder word = new StringBuilder();
+            for(int syllables = 2 + random.nextInt(2); syllables > 0; syllables--) {
+                word.append(NamedRoster.CONSONANTS.charAt(random.nextInt(NamedRoster.CONSONANTS.length())))
+                        .append(NamedRoster.VOWELS.charAt(random.nextInt(NamedRoster.VOWELS.length())));
+            }
+            word.setCharAt(0, Character.toUpperCase(word.charAt(0)));
+            return word.toString();
+        }
+
+        public void run(BenchmarkRunner.Sample sample) {
+            round++;
+            sample.time(CHANGES, () -> {
+                for(int i = 0; i < CHANGES; i++) {
+                    if(adds) {
+                        store.add(new Student("R" + round + "-" + i, names[i], "Course " + (i % 20),
+                                names[i].toLowerCase().replace(' ', '.') + "@example.edu"));
+                    } else {
+                        store.setGrade(nextId(), Student.GRADES[i % Student.GRADES.length]);
+                    }
+                }
+                awaitFollower();
+            });
+            if(adds) {
+                for(int i = 0; i < CHANGES; i++) {
+                    store.remove("R" + round + "-" + i);
+                }
+                awaitFollower();
+            }
+        }
+
+        private void awaitFollower() {
+            try {
+                if(!follower.awaitApplied(server.head(), 60_000)) {
+                    throw new IllegalStateException("Follower did not catch up");
+                }
+            } catch(InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    // Writers on several threads at once, each assigning grades and adding and
+    // removing students of its own. The score is wall time per operation over
+    // all threads, so 1e9 / score is the combined throughput
+    static class ConcurrentWrites extends RosterBenchmark {
+        final int threads;
+        ExecutorService pool;
+        List<Callable<Void>> writers;
+
+        ConcurrentWrites(int threads) {
+            this.threads = threads;
+        }
+
+        public String name() {
+            return "concurrentWrites";
+        }
+
+        @Override
+        public int threads() {
+            return threads;
+        }
+
+        @Override
+        public void setup(int size) {
+            super.setup(size);
+            if(pool == null) {
+                pool = Executors.newFixedThreadPool(threads, r -> {
+                    Thread thread = new Thread(r);
+                    thread.setDaemon(true);
+                    return thread;
+                });
+            }
+            writers = new ArrayList<>(threads);
+            for(int t = 0; t < threads; t++) {
+                writers.add(new Writer(t));
+            }
+        }
+
+        public void run(BenchmarkRunner.Sample sample) {
+            for(Callable<Void> writer : writers) {
+                ((Writer) writer).prepare();
+            }
+            sample.time(threads * BATCH, () -> {
+                try {
+                    for(Future<Void> done : pool.invokeAll(writers)) {
+                        done.get();
+                    }
+                } catch(InterruptedException | ExecutionException e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+        }
+
+        // One writer's operations: a third each of grade, add and remove
+        class Writer implements Callable<Void> {
+            final int number;
+            final Random random;
+            final ArrayDeque<String> added = new ArrayDeque<>();
+            final Student[] batch = new Student[BATCH / 3 + 1];
+            int next;
+
+            Writer(int number) {
+                this.number = number;
+                this.random = new Random(number);
+            }
+
+            void prepare() {
+                for(int i = 0; i < batch.length; i++) {
+                    batch[i] = new Student("W" + number + "-" + next++, "Writer " + number, "Course 1",
+                            "writer" + number + "@example.edu");
+                }
+            }
+
+            public Void call() {
+                int adds = 0;
+                for(int i = 0; i < BATCH; i++) {
+                    switch(i % 3) {
+                        case 0:
+                            if(size > 0) {
+                                store.setGrade(ids[random.nextInt(size)], Student.GRADES[i % Student.GRADES.length]);
+                            }
+                            break;
+                        case 1:
+                            Student student = batch[adds++];
+                            store.add(student);
+                            added.add(student.id);
+                            break;
+                        default:
+                            store.remove(added.poll());
+                    }
+                }
+                return null;
+            }
+        }
+    }
+
+    // Find Student while another thread keeps assigning grades. Reads go to
+    // the latest published view and do not wait for the writer
+    static class LookupDuringWrites extends RosterBenchmark {
+        Thread writer;
+        volatile boolean writing;
+
+        public String name() {
+            return "lookupByIdDuringWrites";
+        }
+
+        @Override
+        public void setup(int size) {
+            if(writer != null) {
+                writing = false;
+                try {
+                    writer.join();
+                } catch(InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+                writer = null;
+            }
+            super.setup(size);
+            if(size == 0) {
+                return;
+            }
+            writing = true;
+            String[] targets = ids.clone();
+            writer = new Thread(() -> {
+                Random random = new Random(7);
+                while(writing) {
+                    store.setGrade(targets[random.nextInt(targets.length)],
+                            Student.GRADES[random.nextInt(Student.GRADES.length)]);
+                }
+            });
+            writer.setDaemon(true);
+            writer.start();
+        }
+
+        public void run(BenchmarkRunner.Sample sample) {
+            String[] batch = new String[BATCH];
+            for(int i = 0; i < BATCH; i++) {
+                batch[i] = nextId();
+            }
+            sample.time(BATCH, () -> {
+                for(String id : batch) {
+                    if(store.find(id) == null) {
+                        throw new IllegalStateException("Missing " + id);
+                    }
+                }
+            });
+        }
+    }
+
+    // updateStudentTable(): refresh the live model and read a screenful of rows
+    static class TableRefresh extends RosterBenchmark {
+        StudentTableModel model;
+
+        public String name() {
+            return "tableRefresh";
+        }
+
+        @Override
+        public void setup(int size) {
+            super.setup(size);
+            model = new StudentTableModel(store);
+        }
+
+        public void run(BenchmarkRunner.Sample sample) {
+            sample.time(1, () -> {
+                model.fireTableDataChanged();
+                int rows = Math.min(40, model.getRowCount());
+                for(int row = 0; row < rows; row++) {
+                    for(int column = 0; column < model.getColumnCount(); column++) {
+                        model.getValueAt(row, column);
+                    }
+                }
+            });
+        }
+    }
+
+    // The DefaultTableModel rebuild updateStudentTable() did before, as a baseline
+    static class LegacyTableRebuild extends RosterBenchmark {
+        List<Student> list;
+        DefaultTableModel model;
+
+        public String name() {
+            return "tableRefreshLegacyRebuild";
+        }
+
+        @Override
+        public void setup(int size) {
+            super.setup(0);
+            list = new ArrayList<>(size);
+            for(int i = 0; i < size; i++) {
+                list.add(student(i));
+            }
+            model = new DefaultTableModel(new String[]{"ID", "Name", "Course", "Email", "Grade"}, 0);
+        }
+
+        public void run(BenchmarkRunner.Sample sample) {
+            sample.time(1, () -> {
+                model.setRowCount(0);
+                for(Student student : list) {
+                    model.addRow(new Object[]{student.id, student.name, student.course, student.email, student.grade});
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,616 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+// Multi-threaded stress check for StudentStore. Each round starts a fresh
+// store with a background population, then lets several threads add, remove,
+// grade and find a small set of shared IDs while a churn thread keeps adding
+// and removing other students (row moves, rehashing, compaction) and a reader
+// keeps taking snapshots. Afterwards it checks that
+//   - the history of every shared ID is linearizable. Linearizability is
+//     local, so checking each ID on its own is enough; the search is Wing &
+//     Gong's, memoized on how far each thread has got
+//   - listener events arrived one at a time with consecutive versions, and
+//     replaying them gives the store's final contents
+//   - every snapshot was internally consistent and did not change later
+//   - the CourseIndex lists exactly the final view's students per course
+//   - the RosterBitmapIndex answers course, grade and ID queries like a scan
+//     of the final view
+//   - the DuplicateIndex finds what one built from the final view finds
+// It then swaps whole rosters in with replaceAll, shrinking, reusing IDs and
+// growing again, and checks that the search index and a table-like row
+// mirror fed by its events agree with the result.
+//
+// Run with benchmarks/run-benchmarks.sh --stress [rounds] [threads]
+public class StoreStress {
+
+    private static final int KEYS = 8;
+    private static final int OPS_PER_THREAD = 400;
+    private static final int POPULATION = 20_000;
+
+    private static final int ADD = 0;
+    private static final int REMOVE = 1;
+    private static final int SET_GRADE = 2;
+    private static final int FIND = 3;
+
+    // One completed operation. grade is the argument for ADD and SET_GRADE;
+    // result is the grade code seen (FIND, REMOVE), 1/0 for true/false, or -1
+    // for none
+    private static class Op {
+        final int thread;
+        final int type;
+        final int grade;
+        final long invoked;
+        final long responded;
+        final int result;
+
+        Op(int thread, int type, int grade, long invoked, long responded, int result) {
+            this.thread = thread;
+            this.type = type;
+            this.grade = grade;
+            this.invoked = invoked;
+            this.responded = responded;
+            this.result = result;
+        }
+
+        @Override
+        public String toString() {
+            String[] names = {"add", "remove", "setGrade", "find"};
+            return "thread " + thread + " " + names[type] + (type == ADD || type == SET_GRADE ? "(" + grade + ")" : "")
+                    + " -> " + result + " [" + invoked + ", " + responded + "]";
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        System.setProperty("java.awt.headless", "true");
+        int rounds = args.length > 0 ? Integer.parseInt(args[0]) : 50;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+        long operations = 0;
+        for(int round = 0; round < rounds; round++) {
+            operations += round(round, threads);
+        }
+        checkReplaceAll();
+        System.out.printf("OK: %d rounds, %d threads, %d checked operations%n", rounds, threads, operations);
+    }
+
+    // A follower resync: the removals compact the search index while later
+    // removals of the same change are still to be heard, and the additions
+    // must not be indexed under slots the index still holds
+    private static void checkReplaceAll() {
+        StudentStore store = new StudentStore();
+        store.addAll(replacement(0, 3000, 0));
+        StudentSearchIndex search = new StudentSearchIndex(store);
+        ArrayList<String> mirror = new ArrayList<>();
+        RosterView start = store.addListener(new StudentStoreListener() {
+            public void studentAdded(int row, Student student) {
+                mirror.add(student.id);
+            }
+
+            public void studentsAdded(int firstRow, List<Student> students) {
+                for(Student student : students) {
+                    mirror.add(student.id);
+                }
+            }
+
+            public void gradeChanged(int row, Student student, String oldGrade) {
+            }
+
+            public void gradesChanged(int[] rows, List<Student> students, List<String> oldGrades) {
+            }
+
+            public void courseReassigned(int[] rows, List<Student> students, String oldCourse) {
+            }
+
+            public void studentRemoved(int row, int lastRow, Student student) {
+                if(!mirror.get(row).equals(student.id) || lastRow != mirror.size() - 1) {
+                    throw new AssertionError("replaceAll removed " + student.id + " from row " + row
+                            + ", last row " + lastRow + ", but the mirror has " + mirror.size() + " rows");
+                }
+                mirror.set(row, mirror.get(lastRow));
+                mirror.remove(lastRow);
+            }
+        });
+        for(int row = 0; row < start.size(); row++) {
+            mirror.add(start.valueAt(row, StudentStore.ID));
+        }
+
+        int[][] rosters = {{0, 100}, {50, 3000}, {2000, 5000}, {0, 0}, {0, 4000}};
+        for(int variant = 0; variant < rosters.length; variant++) {
+            int[] roster = rosters[variant];
+            StudentStore target = new StudentStore();
+            target.addAll(replacement(roster[0], roster[1], variant + 1));
+            store.replaceAll(target.snapshot());
+
+            RosterView view = store.snapshot();
+            checkView(view);
+            if(view.size() != roster[1] - roster[0] || mirror.size() != view.size()) {
+                throw new AssertionError("replaceAll to " + Arrays.toString(roster) + " left " + view.size()
+                        + " students, the mirror has " + mirror.size());
+            }
+            for(int row = 0; row < view.size(); row++) {
+                if(!view.valueAt(row, StudentStore.ID).equals(mirror.get(row))) {
+                    throw new AssertionError("replaceAll to " + Arrays.toString(roster) + ": row " + row + " differs");
+                }
+            }
+            for(String query : new String[]{"r 1", "ent 2", "course 3", "re@", "R"}) {
+                int[] slots = search.search(query);
+                HashSet<String> found = new HashSet<>();
+                for(int slot : slots) {
+                    if(!found.add(view.valueAtSlot(slot, StudentStore.ID))) {
+                        throw new AssertionError("Search for \"" + query + "\" lists a student twice");
+                    }
+                }
+                HashSet<String> expected = new HashSet<>();
+                for(int row = 0; row < view.size(); row++) {
+                    Student student = view.get(row);
+                    String text = (student.name + "\n" + student.email + "\n" + student.course).toLowerCase();
+                    if(text.contains(query.toLowerCase())) {
+                        expected.add(student.id);
+                    }
+                }
+                if(!found.equals(expected)) {
+                    throw new AssertionError("replaceAll to " + Arrays.toString(roster) + ": search for \""
+                            + query + "\" found " + found.size() + " students, expected " + expected.size());
+                }
+            }
+        }
+    }
+
+    // Students R<from> up to R<to>. Every third name depends on the variant,
+    // so an ID kept across two rosters is sometimes a different student
+    private static List<Student> replacement(int from, int to, int variant) {
+        ArrayList<Student> students = new ArrayList<>();
+        for(int i = from; i < to; i++) {
+            String name = (i % 3 == variant % 3 ? "Learner " : "Student ") + i;
+            students.add(new Student("R" + i, name, "Course " + (i % 7), "r" + i + "@example.edu"));
+        }
+        return students;
+    }
+
+    private static long round(int round, int threads) throws Exception {
+        StudentStore store = new StudentStore();
+        ArrayList<Student> population = new ArrayList<>(POPULATION);
+        for(int i = 0; i < POPULATION; i++) {
+            population.add(new Student("P" + i, "Student " + i, "Course " + (i % 7), "p" + i + "@example.edu"));
+        }
+        store.addAll(population);
+
+        EventLog events = new EventLog(store);
+        store.addListener(events);
+        CourseIndex courses = new CourseIndex(store);
+        RosterBitmapIndex filters = new RosterBitmapIndex(store);
+        DuplicateIndex duplicates = new DuplicateIndex(store);
+
+        String[] keys = new String[KEYS];
+        for(int k = 0; k < KEYS; k++) {
+            keys[k] = "K" + round + "-" + k;
+        }
+        // Per key, the operations of each thread in the order it made them
+        List<List<List<Op>>> histories = new ArrayList<>(KEYS);
+        for(int k = 0; k < KEYS; k++) {
+            List<List<Op>> perThread = new ArrayList<>(threads);
+            for(int t = 0; t < threads; t++) {
+                perThread.add(new ArrayList<>());
+            }
+            histories.add(perThread);
+        }
+
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        CountDownLatch start = new CountDownLatch(1);
+        ArrayList<Thread> workers = new ArrayList<>();
+        for(int t = 0; t < threads; t++) {
+            int thread = t;
+            workers.add(new Thread(() -> {
+                Random random = new Random(round * 1000L + thread);
+                await(start);
+                for(int i = 0; i < OPS_PER_THREAD; i++) {
+                    int key = random.nextInt(KEYS);
+                    int type = random.nextInt(4);
+                    int grade = random.nextInt(Student.GRADES.length);
+                    histories.get(key).get(thread).add(apply(store, keys[key], thread, type, grade));
+                }
+            }));
+        }
+        Thread churn = new Thread(() -> {
+            Random random = new Random(round);
+            await(start);
+            int next = 0;
+            while(running.get()) {
+                // Long names fill the text arena quickly, so deletes trigger compaction
+                String name = "Churn " + "x".repeat(200 + random.nextInt(200));
+                store.add(new Student("C" + next, name, "Course " + (next % 5), "c" + next + "@example.edu"));
+                if(next >= 50) {
+                    store.remove("C" + (next - 50));
+                }
+                if(random.nextInt(10) == 0) {
+                    store.remove("P" + random.nextInt(POPULATION));
+                }
+                if(random.nextInt(10) == 0) {
+                    LinkedHashMap<String, String> sheet = new LinkedHashMap<>();
+                    for(int i = 0; i < 20; i++) {
+                        sheet.put("P" + random.nextInt(POPULATION), Student.GRADES[random.nextInt(Student.GRADES.length)]);
+                    }
+                    store.setGrades(sheet);
+                }
+                if(random.nextInt(50) == 0) {
+                    store.reassignCourse("Course " + random.nextInt(7), "Course " + random.nextInt(7));
+                }
+                next++;
+            }
+        });
+        ArrayList<RosterView> views = new ArrayList<>();
+        ArrayList<Long> digests = new ArrayList<>();
+        Thread reader = new Thread(() -> {
+            await(start);
+            long lastVersion = -1;
+            while(running.get()) {
+                RosterView view = store.snapshot();
+                if(view.version() < lastVersion) {
+                    failure.compareAndSet(null, new AssertionError("Snapshot version went back from "
+                            + lastVersion + " to " + view.version()));
+                }
+                lastVersion = view.version();
+                try {
+                    checkView(view);
+                } catch(Throwable e) {
+                    failure.compareAndSet(null, e);
+                }
+                if(views.size() < 64) {
+                    views.add(view);
+                    digests.add(digest(view));
+                }
+            }
+        });
+
+        for(Thread worker : workers) {
+            worker.start();
+        }
+        churn.start();
+        reader.start();
+        start.countDown();
+        for(Thread worker : workers) {
+            worker.join();
+        }
+        running.set(false);
+        churn.join();
+        reader.join();
+        if(failure.get() != null) {
+            throw new AssertionError("Round " + round + ": " + failure.get(), failure.get());
+        }
+
+        long checked = 0;
+        for(int k = 0; k < KEYS; k++) {
+            if(!linearizable(histories.get(k))) {
+                StringBuilder history = new StringBuilder();
+                for(List<Op> ops : histories.get(k)) {
+                    for(Op op : ops) {
+                        history.append("\n  ").append(op);
+                    }
+                }
+                throw new AssertionError("Round " + round + ": history of " + keys[k] + " is not linearizable:" + history);
+            }
+            for(List<Op> ops : histories.get(k)) {
+                checked += ops.size();
+            }
+        }
+
+        events.check(store.snapshot());
+        checkCourses(courses, store.snapshot());
+        checkQueries(filters, store.snapshot());
+        checkDuplicates(duplicates, store);
+        for(int i = 0; i < views.size(); i++) {
+            if(digest(views.get(i)) != digests.get(i)) {
+                throw new AssertionError("Round " + round + ": snapshot version " + views.get(i).version()
+                        + " changed after it was published");
+            }
+        }
+        checkView(store.snapshot());
+        return checked;
+    }
+
+    private static Op apply(StudentStore store, String id, int thread, int type, int grade) {
+        long invoked = System.nanoTime();
+        int result;
+        switch(type) {
+            case ADD:
+                Student student = new Student(id, "Name " + id, "Course 1", id + "@example.edu");
+                student.grade = Student.GRADES[grade];
+                result = store.add(student) ? 1 : 0;
+                break;
+            case REMOVE:
+                Student removed = store.remove(id);
+                result = removed == null ? -1 : Student.gradeCode(removed.grade);
+                break;
+            case SET_GRADE:
+                result = store.setGrade(id, Student.GRADES[grade]) ? 1 : 0;
+                break;
+            default:
+                Student found = store.find(id);
+                result = found == null ? -1 : Student.gradeCode(found.grade);
+        }
+        return new Op(thread, type, grade, invoked, System.nanoTime(), result);
+    }
+
+    // Search for an order of the operations that respects real time and the
+    // sequential semantics of one student: absent, or present with a grade
+    private static boolean linearizable(List<List<Op>> threads) {
+        int[] next = new int[threads.size()];
+        return search(threads, next, -1, new HashSet<>());
+    }
+
+    private static boolean search(List<List<Op>> threads, int[] next, int state, HashSet<String> failed) {
+        long earliestResponse = Long.MAX_VALUE;
+        boolean done = true;
+        for(int t = 0; t < threads.size(); t++) {
+            if(next[t] < threads.get(t).size()) {
+                done = false;
+                earliestResponse = Math.min(earliestResponse, threads.get(t).get(next[t]).responded);
+            }
+        }
+        if(done) {
+            return true;
+        }
+        String key = Arrays.toString(next) + state;
+        if(failed.contains(key)) {
+            return false;
+        }
+        for(int t = 0; t < threads.size(); t++) {
+            if(next[t] == threads.get(t).size()) {
+                continue;
+            }
+            Op op = threads.get(t).get(next[t]);
+            // Only an operation that began before every pending one ended can go next
+            if(op.invoked > earliestResponse) {
+                continue;
+            }
+            int after = step(state, op);
+            if(after == Integer.MIN_VALUE) {
+                continue;
+            }
+            next[t]++;
+            boolean found = search(threads, next, after, failed);
+            next[t]--;
+            if(found) {
+                return true;
+            }
+        }
+        failed.add(key);
+        return false;
+    }
+
+    // Apply an operation to the model (-1 absent, else the grade code) and
+    // return the new state, or MIN_VALUE if the recorded result is impossible
+    private static int step(int state, Op op) {
+        switch(op.type) {
+            case ADD:
+                if(state < 0) {
+                    return op.result == 1 ? op.grade : Integer.MIN_VALUE;
+                }
+                return op.result == 0 ? state : Integer.MIN_VALUE;
+            case REMOVE:
+                return op.result == state ? -1 : Integer.MIN_VALUE;
+            case SET_GRADE:
+                if(state < 0) {
+                    return op.result == 0 ? state : Integer.MIN_VALUE;
+                }
+                return op.result == 1 ? op.grade : Integer.MIN_VALUE;
+            default:
+                return op.result == state ? state : Integer.MIN_VALUE;
+        }
+    }
+
+    // Every row's ID must lead back to that row, and slots must agree
+    private static void checkView(RosterView view) {
+        for(int row = 0; row < view.size(); row++) {
+            String id = view.valueAt(row, StudentStore.ID);
+            if(view.rowOf(id) != row) {
+                throw new AssertionError("Snapshot version " + view.version() + ": " + id + " is in row " + row
+                        + " but its index says " + view.rowOf(id));
+            }
+            Student student = view.get(row);
+            if(!id.equals(view.valueAtSlot(student.slot, StudentStore.ID))) {
+                throw new AssertionError("Snapshot version " + view.version() + ": slot of " + id + " disagrees");
+            }
+        }
+    }
+
+    // The course index must list exactly the students the final view has per course
+    private static void checkCourses(CourseIndex index, RosterView view) {
+        HashMap<String, HashSet<String>> expected = new HashMap<>();
+        for(int row = 0; row < view.size(); row++) {
+            expected.computeIfAbsent(view.valueAt(row, StudentStore.COURSE), c -> new HashSet<>())
+                    .add(view.valueAt(row, StudentStore.ID));
+        }
+        for(String course : view.courseNames()) {
+            ArrayList<Student> listed = new ArrayList<>();
+            int enrolled = index.students(course, Integer.MAX_VALUE, listed);
+            HashSet<String> ids = new HashSet<>();
+            for(Student student : listed) {
+                ids.add(student.id);
+            }
+            HashSet<String> want = expected.getOrDefault(course, new HashSet<>());
+            if(enrolled != want.size() || !ids.equals(want)) {
+                throw new AssertionError("Course index lists " + enrolled + " students in " + course
+                        + ", the store has " + want.size());
+            }
+        }
+    }
+
+    // Each lookup must find the students that an index built from scratch finds,
+    // apart from those in buckets that were dropped as too common while the
+    // round ran, and only students that are still there
+    private static void checkDuplicates(DuplicateIndex index, StudentStore store) {
+        DuplicateIndex rebuilt = new DuplicateIndex(store);
+        RosterView view = store.snapshot();
+        for(int row = 0; row < view.size(); row += Math.max(1, view.size() / 200)) {
+            Student student = view.get(row);
+            HashSet<String> expected = new HashSet<>();
+            for(DuplicateIndex.Match match : rebuilt.similar(student.name, student.email, 0, Integer.MAX_VALUE)) {
+                expected.add(match.student.id);
+            }
+            for(DuplicateIndex.Match match : index.similar(student.name, student.email, 0, Integer.MAX_VALUE)) {
+                if(!expected.contains(match.student.id) || view.find(match.student.id) == null) {
+                    throw new AssertionError("Duplicate index finds " + match.student.id + " for " + student.id
+                            + ", an index of the final view does not");
+                }
+            }
+            if(!expected.contains(student.id)) {
+                throw new AssertionError("Duplicate index of the final view does not find " + student.id + " itself");
+            }
+        }
+    }
+
+    private static void checkQueries(RosterBitmapIndex index, RosterView view) {
+        List<String> courses = Arrays.asList(view.courseNames());
+        List<String> grades = Arrays.asList(Student.GRADES);
+        ArrayList<RosterQuery> queries = new ArrayList<>();
+        queries.add(new RosterQuery(List.of(), List.of(), null, null));
+        for(String course : courses) {
+            queries.add(new RosterQuery(List.of(course), List.of(), null, null));
+        }
+        for(String grade : grades) {
+            queries.add(new RosterQuery(List.of(), List.of(grade), null, null));
+        }
+        if(courses.size() > 1) {
+            queries.add(new RosterQuery(courses.subList(0, 2), grades.subList(2, 5), null, null));
+        }
+        if(view.size() > 1) {
+            String a = view.valueAt(0, StudentStore.ID);
+            String b = view.valueAt(view.size() - 1, StudentStore.ID);
+            boolean ordered = RosterQuery.compareIds(a, b) <= 0;
+            queries.add(new RosterQuery(courses.subList(0, 1), List.of(), ordered ? a : b, ordered ? b : a));
+            queries.add(new RosterQuery(List.of(), grades.subList(0, 3), null, a));
+        }
+        for(RosterQuery query : queries) {
+            int[] expected = new int[view.size()];
+            int count = 0;
+            for(int row = 0; row < view.size(); row++) {
+                if((query.courses.isEmpty() || query.courses.contains(view.valueAt(row, StudentStore.COURSE)))
+                        && (query.grades.isEmpty() || query.grades.contains(view.valueAt(row, StudentStore.GRADE)))
+                        && query.matchesId(view.valueAt(row, StudentStore.ID))) {
+                    expected[count++] = view.slot(row);
+                }
+            }
+            expected = Arrays.copyOf(expected, count);
+            Arrays.sort(expected);
+            int[] found = index.query(query);
+            if(!Arrays.equals(expected, found)) {
+                throw new AssertionError("Query " + query + " found " + found.length + " students, a scan finds "
+                        + expected.length);
+            }
+        }
+    }
+
+    private static long digest(RosterView view) {
+        long digest = view.size();
+        for(int row = 0; row < view.size(); row++) {
+            digest = digest * 31 + view.valueAt(row, StudentStore.ID).hashCode();
+            digest = digest * 31 + view.gradeCode(row);
+            digest = digest * 31 + view.courseCode(row);
+        }
+        return digest;
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch(InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // Replays store events into a map and checks their versions
+    private static class EventLog implements StudentStoreListener {
+        private final StudentStore store;
+        private final HashMap<String, String> grades = new HashMap<>();
+        private long lastVersion;
+        private String error;
+
+        EventLog(StudentStore store) {
+            this.store = store;
+            RosterView view = store.snapshot();
+            lastVersion = view.version();
+            for(int row = 0; row < view.size(); row++) {
+                grades.put(view.valueAt(row, StudentStore.ID), view.valueAt(row, StudentStore.GRADE));
+            }
+        }
+
+        private void version() {
+            long version = store.version();
+            if(error == null && version != lastVersion + 1) {
+                error = "Event for version " + version + " followed version " + lastVersion;
+            }
+            lastVersion = version;
+        }
+
+        @Override
+        public void studentAdded(int row, Student student) {
+            version();
+            grades.put(student.id, student.grade);
+        }
+
+        @Override
+        public void studentsAdded(int firstRow, List<Student> students) {
+            version();
+            for(Student student : students) {
+                grades.put(student.id, student.grade);
+            }
+        }
+
+        @Override
+        public void gradeChanged(int row, Student student, String oldGrade) {
+            version();
+            grades.put(student.id, student.grade);
+        }
+
+        @Override
+        public void gradesChanged(int[] rows, List<Student> students, List<String> oldGrades) {
+            version();
+            for(Student student : students) {
+                grades.put(student.id, student.grade);
+            }
+        }
+
+        @Override
+        public void courseReassigned(int[] rows, List<Student> students, String oldCourse) {
+            version();
+        }
+
+        @Override
+        public void studentRemoved(int row, int lastRow, Student student) {
+            version();
+            grades.remove(student.id);
+        }
+
+        void check(RosterView view) {
+            if(error != null) {
+                throw new AssertionError(error);
+            }
+            if(view.version() != lastVersion) {
+                throw new AssertionError("Last event was version " + lastVersion + ", store is at " + view.version());
+            }
+            HashMap<String, String> actual = new HashMap<>();
+            for(int row = 0; row < view.size(); row++) {
+                actual.put(view.valueAt(row, StudentStore.ID), view.valueAt(row, StudentStore.GRADE));
+            }
+            if(!actual.equals(grades)) {
+                for(Map.Entry<String, String> entry : grades.entrySet()) {
+                    if(!entry.getValue().equals(actual.get(entry.getKey()))) {
+                        throw new AssertionError("Replayed events say " + entry.getKey() + " = " + entry.getValue()
+                                + ", store has " + actual.get(entry.getKey()));
+                    }
+                }
+                throw new AssertionError("Store has students that no event added");
+            }
+        }
+    }
+}
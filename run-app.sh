@@ -0,0 +1,43 @@
+#!/bin/sh
+# Compile the application into a jar and start it with a class data sharing
+# (AppCDS) archive, so the classes used at startup are mapped from the archive
+# instead of being loaded and verified one by one. Needs JDK 21.
+#
+#   run-app.sh [args]              start, compiling first if there is no jar yet
+#   run-app.sh --build-cds [args]  compile, then start once with the given
+#                                  arguments and dump the classes it used into
+#                                  out/app.jsa. That run exits by itself after
+#                                  the first paint and the roster load
+#
+# Rebuild the archive after every change to the sources: the JVM ignores an
+# archive whose jar has changed since, with a warning. Arguments go to the
+# application, e.g. --headless. Set APP_JVM_ARGS for extra JVM options, such as
+# -Dstudentmanagement.startupTiming=true to print the startup times.
+set -e
+cd "$(dirname "$0")"
+jar=out/student-management.jar
+archive=out/app.jsa
+
+build() {
+    rm -rf out/classes "$jar" "$archive"
+    mkdir -p out/classes
+    javac -encoding UTF-8 -d out/classes $(find src -name '*.java')
+    jar --create --file "$jar" --main-class StudentManagementApp -C out/classes .
+}
+
+if [ "$1" = "--build-cds" ]; then
+    shift
+    build
+    # Training run, the archive is written when it exits
+    java -XX:ArchiveClassesAtExit="$archive" -Dstudentmanagement.exitAfterStartup=true \
+        ${APP_JVM_ARGS} -jar "$jar" "$@"
+    exit 0
+fi
+
+if [ ! -f "$jar" ]; then
+    build
+fi
+if [ -f "$archive" ]; then
+    exec java -XX:SharedArchiveFile="$archive" ${APP_JVM_ARGS} -jar "$jar" "$@"
+fi
+exec java ${APP_JVM_ARGS} -jar "$jar" "$@"
@@ -0,0 +1,49 @@
+import java.util.Arrays;
+
+// Byte counterpart of IntColumn, used for the grade column
+final class ByteColumn {
+
+    private byte[][] chunks;
+    private long[] shared;
+
+    // Capacity must be a multiple of IntColumn.CHUNK_SIZE
+    ByteColumn(int capacity) {
+        chunks = new byte[0][];
+        shared = new long[0];
+        grow(capacity);
+    }
+
+    byte get(int index) {
+        return chunks[index >>> IntColumn.CHUNK_BITS][index & IntColumn.CHUNK_MASK];
+    }
+
+    void set(int index, byte value) {
+        int chunk = index >>> IntColumn.CHUNK_BITS;
+        long bit = 1L << chunk;
+        if((shared[chunk >>> 6] & bit) != 0) {
+            chunks[chunk] = chunks[chunk].clone();
+            shared[chunk >>> 6] &= ~bit;
+        }
+        chunks[chunk][index & IntColumn.CHUNK_MASK] = value;
+    }
+
+    void grow(int capacity) {
+        int count = chunks.length;
+        chunks = Arrays.copyOf(chunks, capacity >>> IntColumn.CHUNK_BITS);
+        for(int i = count; i < chunks.length; i++) {
+            chunks[i] = new byte[IntColumn.CHUNK_SIZE];
+        }
+        shared = Arrays.copyOf(shared, (chunks.length + 63) >>> 6);
+    }
+
+    // Immutable copy of the first length entries
+    byte[][] publish(int length) {
+        int count = (length + IntColumn.CHUNK_MASK) >>> IntColumn.CHUNK_BITS;
+        IntColumn.markShared(shared, count);
+        return Arrays.copyOf(chunks, count);
+    }
+
+    static byte get(byte[][] chunks, int index) {
+        return chunks[index >>> IntColumn.CHUNK_BITS][index & IntColumn.CHUNK_MASK];
+    }
+}
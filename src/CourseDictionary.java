@@ -0,0 +1,39 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+
+// Maps course names to small integer codes so each student stores an int
+// instead of its own reference to the name. Codes are never reused
+public class CourseDictionary {
+
+    private final HashMap<String, Integer> codes = new HashMap<>();
+    private final ArrayList<String> names = new ArrayList<>();
+
+    // Code for a course name, assigning a new one the first time it is seen
+    public int code(String name) {
+        Integer code = codes.get(name);
+        if(code == null) {
+            code = names.size();
+            codes.put(name, code);
+            names.add(name);
+        }
+        return code;
+    }
+
+    // Code for a course name, or -1 if it has never been used
+    public int find(String name) {
+        Integer code = codes.get(name);
+        return code == null ? -1 : code;
+    }
+
+    public String name(int code) {
+        return names.get(code);
+    }
+
+    public int size() {
+        return names.size();
+    }
+
+    public String[] toArray() {
+        return names.toArray(new String[0]);
+    }
+}
@@ -0,0 +1,134 @@
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+// Secondary index from course name to the storage slots of its students, kept
+// up to date from store events. Counting a course's students is a hash lookup,
+// and neither listing them nor moving them to another course scans the roster.
+//
+// Each course keeps an unordered slot list and every slot remembers its
+// position in that list, so a student leaves its course by moving the last
+// entry into the gap. Events arrive under the store's lock and queries come
+// from any thread, so access is synchronized. Listed students are read from
+// one snapshot taken before the index lock, so the index is never behind it
+public class CourseIndex implements StudentStoreListener {
+
+    // Growable unordered list of slots
+    private static class Enrollment {
+        int[] slots = new int[16];
+        int size;
+    }
+
+    private final StudentStore store;
+    private final HashMap<String, Enrollment> byCourse = new HashMap<>();
+
+    // Slot -> position in its course's list
+    private int[] position = new int[1024];
+
+    public CourseIndex(StudentStore store) {
+        this.store = store;
+        // Changes that arrive while indexing wait for the lock
+        synchronized(this) {
+            RosterView view = store.addListener(this);
+            for(int row = 0; row < view.size(); row++) {
+                enroll(view.valueAt(row, StudentStore.COURSE), view.slot(row));
+            }
+        }
+    }
+
+    // Number of students enrolled in a course
+    public synchronized int enrolled(String course) {
+        Enrollment enrollment = byCourse.get(course);
+        return enrollment == null ? 0 : enrollment.size;
+    }
+
+    // Copy up to limit students of a course into out, in no particular order.
+    // Returns the number of students enrolled
+    public int students(String course, int limit, List<Student> out) {
+        RosterView view = store.snapshot();
+        int[] slots;
+        int total;
+        synchronized(this) {
+            Enrollment enrollment = byCourse.get(course);
+            if(enrollment == null) {
+                return 0;
+            }
+            total = enrollment.size;
+            slots = Arrays.copyOf(enrollment.slots, Math.min(limit, total));
+        }
+        // The index may be ahead of the snapshot: slots that are not yet in
+        // use there, or still hold a student of another course, are skipped
+        for(int slot : slots) {
+            Student student = view.atSlot(slot);
+            if(student != null && student.course.equals(course)) {
+                out.add(student);
+            }
+        }
+        return total;
+    }
+
+    // Storage slots of a course's students, in no particular order. Taken
+    // under the store's lock they are exactly the store's
+    public synchronized int[] slots(String course) {
+        Enrollment enrollment = byCourse.get(course);
+        return enrollment == null ? new int[0] : Arrays.copyOf(enrollment.slots, enrollment.size);
+    }
+
+    @Override
+    public synchronized void studentAdded(int row, Student student) {
+        enroll(student.course, student.slot);
+    }
+
+    @Override
+    public synchronized void studentsAdded(int firstRow, List<Student> students) {
+        for(Student student : students) {
+            enroll(student.course, student.slot);
+        }
+    }
+
+    @Override
+    public void gradeChanged(int row, Student student, String oldGrade) {
+        // Grades are not indexed
+    }
+
+    @Override
+    public void gradesChanged(int[] rows, List<Student> students, List<String> oldGrades) {
+        // Grades are not indexed
+    }
+
+    @Override
+    public synchronized void courseReassigned(int[] rows, List<Student> students, String oldCourse) {
+        for(Student student : students) {
+            leave(oldCourse, student.slot);
+            enroll(student.course, student.slot);
+        }
+    }
+
+    @Override
+    public synchronized void studentRemoved(int row, int lastRow, Student student) {
+        leave(student.course, student.slot);
+    }
+
+    private void enroll(String course, int slot) {
+        Enrollment enrollment = byCourse.computeIfAbsent(course, c -> new Enrollment());
+        if(enrollment.size == enrollment.slots.length) {
+            enrollment.slots = Arrays.copyOf(enrollment.slots, enrollment.size * 2);
+        }
+        if(slot >= position.length) {
+            position = Arrays.copyOf(position, Math.max(position.length * 2, slot + 1));
+        }
+        position[slot] = enrollment.size;
+        enrollment.slots[enrollment.size++] = slot;
+    }
+
+    private void leave(String course, int slot) {
+        Enrollment enrollment = byCourse.get(course);
+        int at = position[slot];
+        int moved = enrollment.slots[--enrollment.size];
+        enrollment.slots[at] = moved;
+        position[moved] = at;
+        if(enrollment.size == 0) {
+            byCourse.remove(course);
+        }
+    }
+}
@@ -0,0 +1,52 @@
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Courses offered, in the order they were added, each with a description.
+// Lookups by name are hash lookups. Read from the EDT, the HTTP threads and
+// the store's writer, so access is synchronized
+public class CourseRegistry {
+
+    private final LinkedHashMap<String, String> descriptions = new LinkedHashMap<>();
+
+    // Add a course, returns false if it already exists
+    public synchronized boolean add(String course, String description) {
+        if(descriptions.containsKey(course)) {
+            return false;
+        }
+        descriptions.put(course, description == null ? "" : description);
+        return true;
+    }
+
+    public synchronized boolean remove(String course) {
+        return descriptions.remove(course) != null;
+    }
+
+    public synchronized boolean contains(String course) {
+        return descriptions.containsKey(course);
+    }
+
+    // Description of a course, "" if it has none and null if it does not exist
+    public synchronized String description(String course) {
+        return descriptions.get(course);
+    }
+
+    // Change the description of an existing course, returns false if there is none
+    public synchronized boolean describe(String course, String description) {
+        if(!descriptions.containsKey(course)) {
+            return false;
+        }
+        descriptions.put(course, description == null ? "" : description);
+        return true;
+    }
+
+    public synchronized List<String> names() {
+        return new ArrayList<>(descriptions.keySet());
+    }
+
+    // Names and descriptions in registry order
+    public synchronized Map<String, String> toMap() {
+        return new LinkedHashMap<>(descriptions);
+    }
+}
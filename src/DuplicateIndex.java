@@ -0,0 +1,239 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.stream.IntStream;
+
+// Locality-sensitive hash index of every student's name and email, kept up to
+// date from store events, for warning about a likely duplicate before a
+// student is added. Each MinHash band has a hash table of (band hash, slot)
+// entries; a lookup collects the students that share any band with the new
+// one and ranks them by their actual similarity (see MinHash).
+//
+// The tables use linear probing with one long per entry, the band hash in the
+// high half and the slot + 1 in the low half, 0 for empty. Deleting shifts the
+// entries after the gap back, so there are no tombstones. A band hash that
+// more than MinHash.MAX_BUCKET students share is dropped from its table and
+// no longer indexed, as the scan skips such buckets too; this keeps the probe
+// runs short. Names and emails never change, so only adds and removes touch
+// the index.
+//
+// Events arrive under the store's lock and lookups come from any thread, so
+// access is synchronized. Candidates are read from a snapshot taken before the
+// index lock, the same way CourseIndex lists students
+public class DuplicateIndex implements StudentStoreListener {
+
+    // A stored student and how similar it is to the one looked up
+    public static class Match {
+        public final Student student;
+        public final double similarity;
+
+        Match(Student student, double similarity) {
+            this.student = student;
+            this.similarity = similarity;
+        }
+    }
+
+    private final StudentStore store;
+    private final long[][] tables = new long[MinHash.BANDS][];
+    private final int[] sizes = new int[MinHash.BANDS];
+
+    // Per band, the band hashes that have been dropped
+    private final List<HashSet<Integer>> crowded = new ArrayList<>();
+
+    public DuplicateIndex(StudentStore store) {
+        this.store = store;
+        for(int band = 0; band < tables.length; band++) {
+            tables[band] = new long[1024];
+            crowded.add(new HashSet<>());
+        }
+        // Changes that arrive while indexing wait for the lock
+        synchronized(this) {
+            RosterView view = store.addListener(this);
+            for(int row = 0; row < view.size(); row++) {
+                add(bands(view.valueAt(row, StudentStore.NAME), view.valueAt(row, StudentStore.EMAIL)), view.slot(row));
+            }
+        }
+    }
+
+    // Stored students at least threshold similar to the given name and email,
+    // most similar first, at most limit of them
+    public List<Match> similar(String name, String email, double threshold, int limit) {
+        int[] shingles = MinHash.shingles(name, email);
+        int[] bands = bands(shingles);
+        RosterView view = store.snapshot();
+        int[] candidates = new int[16];
+        int count = 0;
+        synchronized(this) {
+            for(int band = 0; band < bands.length; band++) {
+                long[] table = tables[band];
+                int mask = table.length - 1;
+                for(int i = bands[band] & mask; table[i] != 0; i = (i + 1) & mask) {
+                    if((int) (table[i] >>> 32) == bands[band]) {
+                        if(count == candidates.length) {
+                            candidates = Arrays.copyOf(candidates, count * 2);
+                        }
+                        candidates[count++] = (int) table[i] - 1;
+                    }
+                }
+            }
+        }
+
+        // A pair that shares several bands is listed once
+        Arrays.sort(candidates, 0, count);
+        List<Match> matches = new ArrayList<>();
+        for(int i = 0; i < count; i++) {
+            if(i > 0 && candidates[i] == candidates[i - 1]) {
+                continue;
+            }
+            // The index may be ahead of the snapshot, slots not in use there are skipped
+            Student student = view.atSlot(candidates[i]);
+            if(student == null) {
+                continue;
+            }
+            double similarity = MinHash.similarity(shingles, MinHash.shingles(student.name, student.email), threshold);
+            if(similarity >= threshold) {
+                matches.add(new Match(student, similarity));
+            }
+        }
+        matches.sort((a, b) -> a.similarity != b.similarity
+                ? Double.compare(b.similarity, a.similarity) : RosterQuery.compareIds(a.student.id, b.student.id));
+        return matches.size() > limit ? new ArrayList<>(matches.subList(0, limit)) : matches;
+    }
+
+    @Override
+    public synchronized void studentAdded(int row, Student student) {
+        add(bands(student.name, student.email), student.slot);
+    }
+
+    // Batches come from loading and importing, their signatures are worked
+    // out in parallel
+    @Override
+    public synchronized void studentsAdded(int firstRow, List<Student> students) {
+        int[][] bands = new int[students.size()][];
+        IntStream.range(0, bands.length).parallel()
+                .forEach(i -> bands[i] = bands(students.get(i).name, students.get(i).email));
+        for(int i = 0; i < bands.length; i++) {
+            add(bands[i], students.get(i).slot);
+        }
+    }
+
+    @Override
+    public void gradeChanged(int row, Student student, String oldGrade) {
+        // Grades are not indexed
+    }
+
+    @Override
+    public void gradesChanged(int[] rows, List<Student> students, List<String> oldGrades) {
+        // Grades are not indexed
+    }
+
+    @Override
+    public void courseReassigned(int[] rows, List<Student> students, String oldCourse) {
+        // Courses are not indexed
+    }
+
+    @Override
+    public synchronized void studentRemoved(int row, int lastRow, Student student) {
+        int[] bands = bands(student.name, student.email);
+        for(int band = 0; band < bands.length; band++) {
+            if(!isCrowded(band, bands[band])) {
+                remove(tables[band], entry(bands[band], student.slot));
+                sizes[band]--;
+            }
+        }
+    }
+
+    private static int[] bands(String name, String email) {
+        return bands(MinHash.shingles(name, email));
+    }
+
+    private static int[] bands(int[] shingles) {
+        int[] signature = MinHash.signature(shingles);
+        int[] bands = new int[MinHash.BANDS];
+        for(int band = 0; band < bands.length; band++) {
+            bands[band] = MinHash.band(signature, band);
+        }
+        return bands;
+    }
+
+    private void add(int[] bands, int slot) {
+        for(int band = 0; band < bands.length; band++) {
+            int hash = bands[band];
+            if(isCrowded(band, hash)) {
+                continue;
+            }
+            // At most three quarters full
+            if((sizes[band] + 1) * 4L > tables[band].length * 3L) {
+                long[] old = tables[band];
+                tables[band] = new long[old.length * 2];
+                for(long entry : old) {
+                    if(entry != 0) {
+                        insert(tables[band], entry);
+                    }
+                }
+            }
+            sizes[band]++;
+            if(insert(tables[band], entry(hash, slot)) < MinHash.MAX_BUCKET) {
+                continue;
+            }
+            // Too common to tell students apart, drop the whole bucket
+            crowded.get(band).add(hash);
+            long[] table = tables[band];
+            int mask = table.length - 1;
+            for(int i = hash & mask; table[i] != 0; ) {
+                if((int) (table[i] >>> 32) == hash) {
+                    remove(table, table[i]);
+                    sizes[band]--;
+                } else {
+                    i = (i + 1) & mask;
+                }
+            }
+        }
+    }
+
+    private boolean isCrowded(int band, int hash) {
+        HashSet<Integer> hashes = crowded.get(band);
+        return !hashes.isEmpty() && hashes.contains(hash);
+    }
+
+    private static long entry(int hash, int slot) {
+        return (long) hash << 32 | (slot + 1);
+    }
+
+    // Returns the number of entries with the same band hash before this one
+    private static int insert(long[] table, long entry) {
+        int mask = table.length - 1;
+        int hash = (int) (entry >>> 32);
+        int same = 0;
+        int i = hash & mask;
+        while(table[i] != 0) {
+            if((int) (table[i] >>> 32) == hash) {
+                same++;
+            }
+            i = (i + 1) & mask;
+        }
+        table[i] = entry;
+        return same;
+    }
+
+    private static void remove(long[] table, long entry) {
+        int mask = table.length - 1;
+        int gap = (int) (entry >>> 32) & mask;
+        while(table[gap] != entry) {
+            gap = (gap + 1) & mask;
+        }
+        table[gap] = 0;
+        // Move back every later entry of the run that may no longer be
+        // reachable from its home position
+        for(int i = (gap + 1) & mask; table[i] != 0; i = (i + 1) & mask) {
+            int home = (int) (table[i] >>> 32) & mask;
+            boolean reachable = gap <= i ? home > gap && home <= i : home > gap || home <= i;
+            if(!reachable) {
+                table[gap] = table[i];
+                table[i] = 0;
+                gap = i;
+            }
+        }
+    }
+}
@@ -0,0 +1,264 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.function.IntConsumer;
+
+// Finds the likely duplicate pairs of a whole roster with MinHash and
+// locality-sensitive hashing, in three fork/join stages over one snapshot:
+//   1. shingle and sign every student, in chunks of rows
+//   2. sort each band's (band hash, row) keys, so that the students sharing a
+//      band hash end up next to each other
+//   3. score the pairs within every run of equal keys, in groups of runs
+// A pair that shares several bands is only scored in the first of them. Runs
+// longer than MinHash.MAX_BUCKET are skipped.
+//
+// Takes about 200 bytes per student while it runs
+public class DuplicateScan {
+
+    // Two students and how similar they are
+    public static class Pair {
+        public final Student first;
+        public final Student second;
+        public final double similarity;
+
+        Pair(Student first, Student second, double similarity) {
+            this.first = first;
+            this.second = second;
+            this.similarity = similarity;
+        }
+    }
+
+    // Rows signed by one task of the first stage
+    private static final int SIGN_CHUNK = 2048;
+
+    // Keys scored by one task of the third stage, in whole runs
+    private static final int PAIR_CHUNK = 16384;
+
+    private final RosterView view;
+    private final double threshold;
+    private final BooleanSupplier cancelled;
+    private final IntConsumer progress;
+    private final int size;
+    private final AtomicInteger done = new AtomicInteger();
+
+    // Row -> sorted shingles, row * BANDS + band -> band hash
+    private final int[][] shingles;
+    private final int[] bands;
+
+    // Per band, (band hash << 32 | row), sorted in the second stage
+    private final long[][] keys = new long[MinHash.BANDS][];
+
+    // Per band, a bit set of the rows in skipped runs, null if there are none
+    private final long[][] crowded = new long[MinHash.BANDS][];
+
+    private DuplicateScan(RosterView view, double threshold, BooleanSupplier cancelled, IntConsumer progress) {
+        this.view = view;
+        this.threshold = threshold;
+        this.cancelled = cancelled;
+        this.progress = progress;
+        this.size = view.size();
+        this.shingles = new int[size][];
+        this.bands = new int[size * MinHash.BANDS];
+        for(int band = 0; band < keys.length; band++) {
+            keys[band] = new long[size];
+        }
+    }
+
+    // The pairs at least threshold similar, most similar first, at most limit
+    // of them. Progress is reported in percent from the pool's threads; once
+    // cancelled returns true the scan stops with a CancellationException
+    public static List<Pair> scan(RosterView view, double threshold, int limit,
+                                  BooleanSupplier cancelled, IntConsumer progress) {
+        return new DuplicateScan(view, threshold, cancelled, progress).run(limit);
+    }
+
+    private List<Pair> run(int limit) {
+        if(size == 0) {
+            return new ArrayList<>();
+        }
+        ForkJoinPool pool = ForkJoinPool.commonPool();
+        pool.invoke(new Sign(0, size));
+
+        progress.accept(70);
+        for(long[] band : keys) {
+            checkCancelled();
+            Arrays.parallelSort(band);
+        }
+        progress.accept(80);
+
+        // Runs of two or more keys, grouped into tasks of about PAIR_CHUNK keys
+        List<Score> tasks = new ArrayList<>();
+        for(int band = 0; band < keys.length; band++) {
+            long[] sorted = keys[band];
+            int from = 0;
+            for(int start = 0; start < size; ) {
+                int end = start + 1;
+                while(end < size && sorted[end] >>> 32 == sorted[start] >>> 32) {
+                    end++;
+                }
+                if(end - start > MinHash.MAX_BUCKET) {
+                    if(crowded[band] == null) {
+                        crowded[band] = new long[(size + 63) >>> 6];
+                    }
+                    for(int i = start; i < end; i++) {
+                        int row = (int) sorted[i];
+                        crowded[band][row >>> 6] |= 1L << row;
+                    }
+                }
+                if(end - from >= PAIR_CHUNK) {
+                    tasks.add(new Score(band, from, end));
+                    from = end;
+                }
+                start = end;
+            }
+            if(from < size) {
+                tasks.add(new Score(band, from, size));
+            }
+        }
+        done.set(0);
+        List<long[]> found = new ArrayList<>();
+        for(Score task : tasks) {
+            pool.execute(task);
+        }
+        for(Score task : tasks) {
+            found.add(task.join());
+        }
+
+        // Each found entry is (first row, second row, similarity bits)
+        int count = 0;
+        for(long[] rows : found) {
+            count += rows.length / 3;
+        }
+        long[][] pairs = new long[count][];
+        int at = 0;
+        for(long[] rows : found) {
+            for(int i = 0; i < rows.length; i += 3) {
+                pairs[at++] = new long[]{rows[i], rows[i + 1], rows[i + 2]};
+            }
+        }
+        Arrays.sort(pairs, (a, b) -> a[2] != b[2]
+                ? Double.compare(Double.longBitsToDouble(b[2]), Double.longBitsToDouble(a[2]))
+                : a[0] != b[0] ? Long.compare(a[0], b[0]) : Long.compare(a[1], b[1]));
+
+        List<Pair> ranked = new ArrayList<>(Math.min(count, limit));
+        for(int i = 0; i < count && i < limit; i++) {
+            Student first = view.get((int) pairs[i][0]);
+            Student second = view.get((int) pairs[i][1]);
+            if(RosterQuery.compareIds(first.id, second.id) > 0) {
+                Student swap = first;
+                first = second;
+                second = swap;
+            }
+            ranked.add(new Pair(first, second, Double.longBitsToDouble(pairs[i][2])));
+        }
+        progress.accept(100);
+        return ranked;
+    }
+
+    private void checkCancelled() {
+        if(cancelled.getAsBoolean()) {
+            throw new CancellationException();
+        }
+    }
+
+    // First stage: shingles and band hashes of rows from to to
+    private class Sign extends RecursiveAction {
+        private final int from;
+        private final int to;
+
+        Sign(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if(to - from > SIGN_CHUNK) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new Sign(from, middle), new Sign(middle, to));
+                return;
+            }
+            checkCancelled();
+            for(int row = from; row < to; row++) {
+                int[] rowShingles = MinHash.shingles(view.valueAt(row, StudentStore.NAME),
+                        view.valueAt(row, StudentStore.EMAIL));
+                int[] signature = MinHash.signature(rowShingles);
+                shingles[row] = rowShingles;
+                for(int band = 0; band < MinHash.BANDS; band++) {
+                    int hash = MinHash.band(signature, band);
+                    bands[row * MinHash.BANDS + band] = hash;
+                    keys[band][row] = (long) hash << 32 | row;
+                }
+            }
+            progress.accept((int) (done.addAndGet(to - from) * 70L / size));
+        }
+    }
+
+    // Third stage: the pairs within the runs of keys from to to of one band
+    private class Score extends RecursiveTask<long[]> {
+        private final int band;
+        private final int from;
+        private final int to;
+
+        Score(int band, int from, int to) {
+            this.band = band;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected long[] compute() {
+            checkCancelled();
+            long[] sorted = keys[band];
+            long[] found = new long[48];
+            int count = 0;
+            for(int start = from; start < to; ) {
+                int end = start + 1;
+                while(end < to && sorted[end] >>> 32 == sorted[start] >>> 32) {
+                    end++;
+                }
+                if(end - start <= MinHash.MAX_BUCKET) {
+                    for(int i = start; i < end; i++) {
+                        int a = (int) sorted[i];
+                        for(int j = i + 1; j < end; j++) {
+                            int b = (int) sorted[j];
+                            if(sharesEarlierBand(a, b)) {
+                                continue;
+                            }
+                            double similarity = MinHash.similarity(shingles[a], shingles[b], threshold);
+                            if(similarity >= threshold) {
+                                if(count + 3 > found.length) {
+                                    found = Arrays.copyOf(found, found.length * 2);
+                                }
+                                found[count++] = a;
+                                found[count++] = b;
+                                found[count++] = Double.doubleToLongBits(similarity);
+                            }
+                        }
+                    }
+                }
+                start = end;
+            }
+            progress.accept(80 + (int) (done.addAndGet(to - from) * 20L / ((long) size * MinHash.BANDS)));
+            return Arrays.copyOf(found, count);
+        }
+
+        // Whether the pair was scored in an earlier band. Both are in the same
+        // run there, so either tells whether it was skipped
+        private boolean sharesEarlierBand(int a, int b) {
+            for(int earlier = 0; earlier < band; earlier++) {
+                if(bands[a * MinHash.BANDS + earlier] == bands[b * MinHash.BANDS + earlier]
+                        && (crowded[earlier] == null || (crowded[earlier][a >>> 6] & 1L << a) == 0)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,17 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+// Flight Recorder event for how long a probe waited in the EDT queue
+@Name("studentmanagement.EdtQueueDelay")
+@Label("EDT Queue Delay")
+@Category("Student Management")
+@Description("Time between posting a task to the Event Dispatch Thread and it running")
+public class EdtQueueDelayEvent extends jdk.jfr.Event {
+
+    @Label("Delay")
+    @Timespan(Timespan.NANOSECONDS)
+    long delay;
+}
@@ -0,0 +1,41 @@
+import java.awt.AWTEvent;
+import java.awt.EventQueue;
+import java.awt.Toolkit;
+
+// Times every event the EDT dispatches and reports the ones that take longer
+// than a threshold. The threshold in milliseconds can be set with
+// -Dstudentmanagement.edtStallMillis=<ms>
+public class EdtStallMonitor extends EventQueue {
+
+    private final long thresholdNanos;
+
+    private EdtStallMonitor(long thresholdMillis) {
+        this.thresholdNanos = thresholdMillis * 1_000_000;
+    }
+
+    public static void install() {
+        install(Long.getLong("studentmanagement.edtStallMillis", 100));
+    }
+
+    public static void install(long thresholdMillis) {
+        Toolkit.getDefaultToolkit().getSystemEventQueue().push(new EdtStallMonitor(thresholdMillis));
+    }
+
+    @Override
+    protected void dispatchEvent(AWTEvent event) {
+        long start = System.nanoTime();
+        try {
+            super.dispatchEvent(event);
+        } finally {
+            long elapsed = System.nanoTime() - start;
+            if(elapsed > thresholdNanos) {
+                System.err.println("EDT stall: " + elapsed / 1_000_000 + " ms in " + describe(event));
+            }
+        }
+    }
+
+    private static String describe(AWTEvent event) {
+        String text = event.toString();
+        return text.length() > 200 ? text.substring(0, 200) + "..." : text;
+    }
+}
@@ -0,0 +1,111 @@
+import javax.swing.SwingUtilities;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+// Passes store events from the changing thread to a listener on the EDT. Events
+// are queued and drained in passes that stop after a few milliseconds, so a
+// burst of changes never holds the EDT for longer than that at a time. If the
+// backlog grows too large, it is dropped and replaced by one full refresh
+// from a snapshot; events that snapshot already includes are skipped
+public class EdtStoreListener implements StudentStoreListener {
+
+    static final long PASS_NANOS = 4_000_000;
+    static final int MAX_BACKLOG = 10_000;
+
+    // A store event and the version of the change it reports
+    private static class Event {
+        final long version;
+        final Runnable delivery;
+
+        Event(long version, Runnable delivery) {
+            this.version = version;
+            this.delivery = delivery;
+        }
+    }
+
+    private final StudentStore store;
+    private final StudentStoreListener target;
+    private final Consumer<RosterView> refresh;
+    private final ConcurrentLinkedQueue<Event> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger backlog = new AtomicInteger();
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+
+    // Version of the last refresh, only used on the EDT
+    private long refreshed = -1;
+
+    // refresh runs on the EDT in place of a dropped backlog and is given the
+    // view the target should show from then on
+    public EdtStoreListener(StudentStore store, StudentStoreListener target, Consumer<RosterView> refresh) {
+        this.store = store;
+        this.target = target;
+        this.refresh = refresh;
+    }
+
+    @Override
+    public void studentAdded(int row, Student student) {
+        post(() -> target.studentAdded(row, student));
+    }
+
+    @Override
+    public void studentsAdded(int firstRow, List<Student> students) {
+        post(() -> target.studentsAdded(firstRow, students));
+    }
+
+    @Override
+    public void gradeChanged(int row, Student student, String oldGrade) {
+        post(() -> target.gradeChanged(row, student, oldGrade));
+    }
+
+    @Override
+    public void gradesChanged(int[] rows, List<Student> students, List<String> oldGrades) {
+        post(() -> target.gradesChanged(rows, students, oldGrades));
+    }
+
+    @Override
+    public void courseReassigned(int[] rows, List<Student> students, String oldCourse) {
+        post(() -> target.courseReassigned(rows, students, oldCourse));
+    }
+
+    @Override
+    public void studentRemoved(int row, int lastRow, Student student) {
+        post(() -> target.studentRemoved(row, lastRow, student));
+    }
+
+    // Called under the store's lock, so its version is the one of this change
+    private void post(Runnable delivery) {
+        queue.add(new Event(store.version(), delivery));
+        backlog.incrementAndGet();
+        if(scheduled.compareAndSet(false, true)) {
+            SwingUtilities.invokeLater(this::drain);
+        }
+    }
+
+    private void drain() {
+        if(backlog.get() > MAX_BACKLOG) {
+            while(queue.poll() != null) {
+                backlog.decrementAndGet();
+            }
+            RosterView view = store.snapshot();
+            refreshed = view.version();
+            refresh.accept(view);
+        }
+
+        long deadline = System.nanoTime() + PASS_NANOS;
+        Event event;
+        while(System.nanoTime() < deadline && (event = queue.poll()) != null) {
+            backlog.decrementAndGet();
+            if(event.version > refreshed) {
+                event.delivery.run();
+            }
+        }
+
+        // Leave the rest for another pass so repaints and input get a turn
+        scheduled.set(false);
+        if(!queue.isEmpty() && scheduled.compareAndSet(false, true)) {
+            SwingUtilities.invokeLater(this::drain);
+        }
+    }
+}
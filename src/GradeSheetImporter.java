@@ -0,0 +1,83 @@
+import javax.swing.SwingWorker;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Set;
+
+// Reads a grade sheet, a CSV file with the columns id,grade, on a background
+// thread and applies all of its grades to the roster as one change. Lines that
+// cannot be read are skipped and reported; if an ID appears more than once the
+// last line wins
+public class GradeSheetImporter extends SwingWorker<GradeSheetImporter.Result, Void> {
+
+    // Outcome of an import
+    public static class Result {
+        final int updated;
+        final List<String> unknownIds;
+        final List<String> rejectedLines;
+
+        Result(int updated, List<String> unknownIds, List<String> rejectedLines) {
+            this.updated = updated;
+            this.unknownIds = unknownIds;
+            this.rejectedLines = rejectedLines;
+        }
+    }
+
+    private final Path file;
+    private final Roster roster;
+    private final Set<String> grades = new HashSet<>(Arrays.asList(Student.GRADES));
+
+    public GradeSheetImporter(Path file, Roster roster) {
+        this.file = file;
+        this.roster = roster;
+    }
+
+    @Override
+    protected Result doInBackground() throws IOException {
+        long totalBytes = Math.max(1, Files.size(file));
+        long bytesRead = 0;
+        long lineNumber = 0;
+        LinkedHashMap<String, String> sheet = new LinkedHashMap<>();
+        ArrayList<String> rejected = new ArrayList<>();
+
+        try(BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while((line = reader.readLine()) != null) {
+                lineNumber++;
+                bytesRead += line.length() + 1;
+                if(lineNumber % 10_000 == 0) {
+                    if(isCancelled()) {
+                        return null;
+                    }
+                    setProgress((int) Math.min(99, bytesRead * 100 / totalBytes));
+                }
+                if((lineNumber == 1 && line.toLowerCase().startsWith("id,")) || line.trim().isEmpty()) {
+                    continue; // Header or blank line
+                }
+                List<String> fields = StudentCsvImporter.parseLine(line);
+                String id = fields.get(0).trim();
+                String grade = fields.size() > 1 ? fields.get(1).trim() : "";
+                if(fields.size() != 2 || id.isEmpty()) {
+                    rejected.add("Line " + lineNumber + ": expected id,grade");
+                } else if(!grades.contains(grade)) {
+                    rejected.add("Line " + lineNumber + ": invalid grade " + grade);
+                } else {
+                    sheet.put(id, grade);
+                }
+            }
+        }
+
+        // The whole sheet is one store change, so the table, the analytics and
+        // the journal each see a single event
+        List<String> unknown = sheet.isEmpty() ? new ArrayList<>() : roster.assignGrades(sheet).join();
+        setProgress(100);
+        return new Result(sheet.size() - unknown.size(), unknown, rejected);
+    }
+}
@@ -0,0 +1,68 @@
+import java.util.Arrays;
+
+// An int array kept in 1024 entry chunks so it can be published as an
+// immutable copy in O(chunks): publish() hands out the chunk pointers and
+// marks the chunks shared, and the first write to a shared chunk copies it.
+// Not thread safe; the owner serializes writes and publishing
+final class IntColumn {
+
+    static final int CHUNK_BITS = 10;
+    static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    private int[][] chunks;
+    private long[] shared;
+
+    // Capacity must be a multiple of CHUNK_SIZE
+    IntColumn(int capacity) {
+        chunks = new int[0][];
+        shared = new long[0];
+        grow(capacity);
+    }
+
+    int get(int index) {
+        return chunks[index >>> CHUNK_BITS][index & CHUNK_MASK];
+    }
+
+    void set(int index, int value) {
+        int chunk = index >>> CHUNK_BITS;
+        long bit = 1L << chunk;
+        if((shared[chunk >>> 6] & bit) != 0) {
+            chunks[chunk] = chunks[chunk].clone();
+            shared[chunk >>> 6] &= ~bit;
+        }
+        chunks[chunk][index & CHUNK_MASK] = value;
+    }
+
+    int capacity() {
+        return chunks.length << CHUNK_BITS;
+    }
+
+    void grow(int capacity) {
+        int count = chunks.length;
+        chunks = Arrays.copyOf(chunks, capacity >>> CHUNK_BITS);
+        for(int i = count; i < chunks.length; i++) {
+            chunks[i] = new int[CHUNK_SIZE];
+        }
+        shared = Arrays.copyOf(shared, (chunks.length + 63) >>> 6);
+    }
+
+    // Immutable copy of the first length entries
+    int[][] publish(int length) {
+        int count = (length + CHUNK_MASK) >>> CHUNK_BITS;
+        markShared(shared, count);
+        return Arrays.copyOf(chunks, count);
+    }
+
+    // Read an entry of a published copy
+    static int get(int[][] chunks, int index) {
+        return chunks[index >>> CHUNK_BITS][index & CHUNK_MASK];
+    }
+
+    static void markShared(long[] shared, int count) {
+        Arrays.fill(shared, 0, count >>> 6, -1L);
+        if((count & 63) != 0) {
+            shared[count >>> 6] |= (1L << count) - 1;
+        }
+    }
+}
@@ -0,0 +1,181 @@
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+// MinHash signatures of students for finding near duplicates. A student is
+// turned into a set of shingles: the character trigrams of the normalized
+// name, those of the email's local part and the email domain as a whole. Two
+// students agree on any one signature entry with probability equal to the
+// Jaccard similarity of their shingle sets.
+//
+// For locality-sensitive hashing the signature is cut into BANDS bands of
+// ROWS entries. Students that agree on a whole band become candidates; with
+// 8 bands of 3 rows a pair at similarity 0.6 is found 6 times in 7, at 0.7
+// almost always, and at 0.3 one time in 5. Candidates are then ranked by their
+// actual similarity
+public class MinHash {
+
+    static final int BANDS = 8;
+    static final int ROWS = 3;
+    static final int SIZE = BANDS * ROWS;
+
+    // Similarity from which two students are reported as likely the same
+    // person. Typos, reordered names and reformatted emails score 0.6 to 1;
+    // people who only share a surname, or a first name, stay below
+    static final double THRESHOLD = 0.6;
+
+    // A band hash shared by more students than this says little about any of
+    // them, such buckets are skipped. Alike students almost always meet again
+    // in a smaller bucket of another band
+    static final int MAX_BUCKET = 1000;
+
+    private static final Pattern ACCENTS = Pattern.compile("\\p{M}+");
+
+    // Multiply-shift hash functions, one per signature entry
+    private static final long[] MULTIPLIERS = new long[SIZE];
+    private static final long[] INCREMENTS = new long[SIZE];
+
+    static {
+        Random random = new Random(0x5EED);
+        for(int i = 0; i < SIZE; i++) {
+            MULTIPLIERS[i] = random.nextLong() | 1;
+            INCREMENTS[i] = random.nextLong();
+        }
+    }
+
+    // Lower case letters and digits without accents, words in alphabetical
+    // order so that "Smith, John" and "John Smith" come out the same
+    static String normalizeName(String name) {
+        String folded = fold(name);
+        List<String> words = new ArrayList<>(4);
+        int start = -1;
+        for(int i = 0; i <= folded.length(); i++) {
+            boolean letter = i < folded.length() && Character.isLetterOrDigit(folded.charAt(i));
+            if(letter && start < 0) {
+                start = i;
+            } else if(!letter && start >= 0) {
+                words.add(folded.substring(start, i));
+                start = -1;
+            }
+        }
+        Collections.sort(words);
+        return String.join(" ", words);
+    }
+
+    // Local part of the email in lower case, without dots and +tags
+    static String normalizeLocalPart(String email) {
+        int at = email.lastIndexOf('@');
+        String local = at >= 0 ? email.substring(0, at) : email;
+        int tag = local.indexOf('+');
+        if(tag >= 0) {
+            local = local.substring(0, tag);
+        }
+        return fold(local).replace(".", "");
+    }
+
+    // Sorted distinct shingle hashes of a student
+    static int[] shingles(String name, String email) {
+        String normalizedName = " " + normalizeName(name) + " ";
+        String local = " " + normalizeLocalPart(email) + " ";
+        int at = email.lastIndexOf('@');
+        String domain = at >= 0 ? email.substring(at + 1).toLowerCase(Locale.ROOT) : "";
+
+        int[] hashes = new int[Math.max(0, normalizedName.length() - 2) + Math.max(0, local.length() - 2) + 1];
+        int count = 0;
+        for(int i = 0; i + 3 <= normalizedName.length(); i++) {
+            hashes[count++] = trigram('n', normalizedName, i);
+        }
+        for(int i = 0; i + 3 <= local.length(); i++) {
+            hashes[count++] = trigram('e', local, i);
+        }
+        hashes[count++] = mix(domain.hashCode() * 31 + 'd');
+
+        Arrays.sort(hashes, 0, count);
+        int distinct = 0;
+        for(int i = 0; i < count; i++) {
+            if(distinct == 0 || hashes[distinct - 1] != hashes[i]) {
+                hashes[distinct++] = hashes[i];
+            }
+        }
+        return Arrays.copyOf(hashes, distinct);
+    }
+
+    static int[] signature(int[] shingles) {
+        int[] signature = new int[SIZE];
+        Arrays.fill(signature, Integer.MAX_VALUE);
+        for(int shingle : shingles) {
+            for(int i = 0; i < SIZE; i++) {
+                signature[i] = Math.min(signature[i], (int) ((MULTIPLIERS[i] * shingle + INCREMENTS[i]) >>> 33));
+            }
+        }
+        return signature;
+    }
+
+    // Hash of one band of a signature
+    static int band(int[] signature, int band) {
+        int hash = band;
+        for(int i = band * ROWS; i < (band + 1) * ROWS; i++) {
+            hash = hash * 0x9E3779B1 + signature[i];
+        }
+        return mix(hash);
+    }
+
+    // Jaccard similarity of two sorted shingle sets
+    static double similarity(int[] a, int[] b) {
+        return similarity(a, b, 0);
+    }
+
+    // Jaccard similarity of two sorted shingle sets, or -1 as soon as it is
+    // clear that it is below threshold. The merge steps without branches,
+    // which of the two sides moves on is hard to predict
+    static double similarity(int[] a, int[] b, double threshold) {
+        // Enough shared shingles for common / (a + b - common) >= threshold
+        int needed = (int) Math.ceil(threshold * (a.length + b.length) / (1 + threshold) - 1e-9);
+        if(Math.min(a.length, b.length) < needed) {
+            return -1;
+        }
+        int common = 0;
+        int i = 0;
+        int j = 0;
+        while(i < a.length && j < b.length) {
+            int x = a[i];
+            int y = b[j];
+            common += x == y ? 1 : 0;
+            i += x <= y ? 1 : 0;
+            j += x >= y ? 1 : 0;
+            if(common + Math.min(a.length - i, b.length - j) < needed) {
+                return -1;
+            }
+        }
+        int union = a.length + b.length - common;
+        return union == 0 ? 0 : (double) common / union;
+    }
+
+    // Lower case with the accents taken off, "María" becomes "maria". Plain
+    // ASCII, by far the most common, skips the Unicode decomposition
+    private static String fold(String text) {
+        for(int i = 0; i < text.length(); i++) {
+            if(text.charAt(i) >= 0x80) {
+                return ACCENTS.matcher(Normalizer.normalize(text, Normalizer.Form.NFD)).replaceAll("").toLowerCase(Locale.ROOT);
+            }
+        }
+        return text.toLowerCase(Locale.ROOT);
+    }
+
+    private static int trigram(char kind, String text, int at) {
+        return mix(((kind * 31 + text.charAt(at)) * 31 + text.charAt(at + 1)) * 31 + text.charAt(at + 2));
+    }
+
+    private static int mix(int h) {
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        h ^= h >>> 13;
+        h *= 0xC2B2AE35;
+        return h ^ h >>> 16;
+    }
+}
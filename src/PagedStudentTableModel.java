@@ -0,0 +1,216 @@
+import javax.swing.SwingUtilities;
+import javax.swing.table.AbstractTableModel;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// Read-only table over a RosterPageFile. Rows are decoded a page at a time
+// into a small LRU cache, so only the pages around the viewport are on the
+// heap whatever the roster size. The table asks for pages ahead of scrolling
+// through prefetch(), which decodes them on a background thread. Sorting goes
+// through on-disk RosterSortIndex files, built once per column.
+//
+// The page file and the indexes live in a directory of their own, deleted
+// again by close(). Used on the EDT only, apart from the background decoding
+public class PagedStudentTableModel extends AbstractTableModel implements AutoCloseable {
+
+    static final int PAGE_ROWS = 256;
+    static final int MAX_PAGES = 64;
+
+    // Pages decoded on either side of the viewport
+    static final int PREFETCH_PAGES = 2;
+
+    private static final String[] COLUMNS = {"ID", "Name", "Course", "Email", "Grade"};
+
+    private final Path directory;
+    private final RosterPageFile file;
+    private final HashMap<Integer, RosterSortIndex> indexes = new HashMap<>();
+    private final Object building = new Object();
+    private final ExecutorService loader = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "table-page-loader");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Decoded pages in access order, the least recently used is dropped first
+    private final LinkedHashMap<Integer, String[][]> pages = new LinkedHashMap<Integer, String[][]>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, String[][]> eldest) {
+            return size() > MAX_PAGES;
+        }
+    };
+    private final HashSet<Integer> loading = new HashSet<>();
+
+    private RosterSortIndex order;
+    private int sortColumn = -1;
+    private boolean descending;
+
+    // Incremented when the order changes, so pages decoded for an older order are dropped
+    private int generation;
+
+    private PagedStudentTableModel(Path directory, RosterPageFile file) {
+        this.directory = directory;
+        this.file = file;
+    }
+
+    // Write a view to a page file in a new temporary directory and open a model on it
+    public static PagedStudentTableModel create(RosterView roster) throws IOException {
+        Path directory = Files.createTempDirectory("roster-pages");
+        Path pageFile = directory.resolve("roster.pages");
+        // Files registered later are deleted first, the directory last
+        directory.toFile().deleteOnExit();
+        pageFile.toFile().deleteOnExit();
+        try {
+            RosterPageFile.write(roster, pageFile);
+            return new PagedStudentTableModel(directory, RosterPageFile.open(pageFile));
+        } catch(IOException | RuntimeException e) {
+            deleteDirectory(directory);
+            throw e;
+        }
+    }
+
+    @Override
+    public int getRowCount() {
+        return file.size();
+    }
+
+    @Override
+    public int getColumnCount() {
+        return COLUMNS.length;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        String name = COLUMNS[column];
+        return column == sortColumn ? name + (descending ? " ▼" : " ▲") : name;
+    }
+
+    @Override
+    public Object getValueAt(int row, int column) {
+        int page = row / PAGE_ROWS;
+        String[][] rows = pages.get(page);
+        if(rows == null) {
+            // Not prefetched in time, decode it here; one page takes microseconds
+            rows = decode(page, order, descending);
+            pages.put(page, rows);
+        }
+        return rows[row % PAGE_ROWS][column];
+    }
+
+    public int sortColumn() {
+        return sortColumn;
+    }
+
+    public boolean isDescending() {
+        return descending;
+    }
+
+    // Build the sort index for a column unless it exists. Slow for large
+    // rosters, call it off the EDT. Builds run one at a time
+    public void prepareSort(int column) throws IOException {
+        synchronized(building) {
+            synchronized(indexes) {
+                if(indexes.containsKey(column)) {
+                    return;
+                }
+            }
+            Path indexFile = directory.resolve("column" + column + ".index");
+            indexFile.toFile().deleteOnExit();
+            RosterSortIndex.build(file, column, indexFile);
+            RosterSortIndex index = RosterSortIndex.open(indexFile);
+            synchronized(indexes) {
+                indexes.put(column, index);
+            }
+        }
+    }
+
+    // Show rows in the order of a column prepared with prepareSort, or in file
+    // order for column -1
+    public void sortBy(int column, boolean descending) {
+        synchronized(indexes) {
+            order = column < 0 ? null : indexes.get(column);
+        }
+        if(column >= 0 && order == null) {
+            throw new IllegalStateException("Column " + column + " has not been prepared");
+        }
+        this.sortColumn = column;
+        this.descending = descending;
+        generation++;
+        pages.clear();
+        loading.clear();
+        // Header values do not follow the model, the table updates them
+        fireTableDataChanged();
+    }
+
+    // Decode the pages around the given rows in the background
+    public void prefetch(int firstRow, int lastRow) {
+        if(getRowCount() == 0) {
+            return;
+        }
+        int first = Math.max(0, firstRow / PAGE_ROWS - PREFETCH_PAGES);
+        int last = Math.min((getRowCount() - 1) / PAGE_ROWS, lastRow / PAGE_ROWS + PREFETCH_PAGES);
+        int requested = generation;
+        RosterSortIndex requestedOrder = order;
+        boolean requestedDescending = descending;
+        for(int page = first; page <= last; page++) {
+            if(pages.containsKey(page) || !loading.add(page)) {
+                continue;
+            }
+            int wanted = page;
+            loader.execute(() -> {
+                String[][] rows = decode(wanted, requestedOrder, requestedDescending);
+                SwingUtilities.invokeLater(() -> {
+                    if(generation == requested) {
+                        loading.remove(wanted);
+                        pages.putIfAbsent(wanted, rows);
+                    }
+                });
+            });
+        }
+    }
+
+    // Pages currently decoded, never more than MAX_PAGES
+    int cachedPages() {
+        return pages.size();
+    }
+
+    @Override
+    public void close() throws IOException {
+        loader.shutdownNow();
+        synchronized(indexes) {
+            for(RosterSortIndex index : indexes.values()) {
+                index.close();
+            }
+            indexes.clear();
+        }
+        file.close();
+        deleteDirectory(directory);
+    }
+
+    private String[][] decode(int page, RosterSortIndex order, boolean descending) {
+        int first = page * PAGE_ROWS;
+        int count = Math.min(PAGE_ROWS, file.size() - first);
+        String[][] rows = new String[count][COLUMNS.length];
+        for(int i = 0; i < count; i++) {
+            int position = descending ? file.size() - 1 - (first + i) : first + i;
+            file.read(order == null ? position : order.row(position), rows[i]);
+        }
+        return rows;
+    }
+
+    private static void deleteDirectory(Path directory) throws IOException {
+        try(DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for(Path file : files) {
+                Files.deleteIfExists(file);
+            }
+        }
+        Files.deleteIfExists(directory);
+    }
+}
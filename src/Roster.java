@@ -0,0 +1,441 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BooleanSupplier;
+import java.util.function.IntConsumer;
+import java.util.function.Supplier;
+
+// Student and course operations shared by the Swing frame and the HTTP API.
+// Changes go through the StoreExecutor's writer thread and come back as
+// futures that complete once the change is journaled to disk; lookups read the store directly and may be called from any thread
+// except the EDT. Every operation is recorded in RosterMetrics
+public class Roster {
+
+    // Course names and descriptions for a new roster
+    private static final String[][] DEFAULT_COURSES = {
+            {"Computer Science 101", "Introduction to programming concepts and problem-solving techniques."},
+            {"Data Structures", "Study of data structures and algorithms including lists, stacks, queues, and trees."},
+            {"Web Development", "Learn HTML, CSS, JavaScript and server-side programming."},
+            {"Database Systems", "Introduction to database design, SQL, and database management systems."},
+            {"Software Engineering", "Principles of software design, testing, and project management."}};
+
+    // Longest course description accepted, in characters
+    private static final int MAX_DESCRIPTION_LENGTH = 4000;
+
+    private final StudentStore store;
+    private final RosterPersistence persistence;
+    private final StoreExecutor executor;
+    private final RosterMetrics metrics;
+    private final CourseRegistry courses = new CourseRegistry();
+    private final CourseIndex enrollment;
+    private final RosterBitmapIndex filters;
+    private final DuplicateIndex duplicates;
+    private final CompletableFuture<Integer> loaded = new CompletableFuture<>();
+    private final List<Runnable> courseListeners = new CopyOnWriteArrayList<>();
+    private boolean loadStarted;
+
+    // Set when this roster is a read-only copy of another instance's
+    private volatile InetSocketAddress primary;
+
+    // Starts out empty, see load()
+    public Roster(StudentStore store, RosterPersistence persistence, StoreExecutor executor, RosterMetrics metrics) {
+        this.store = store;
+        this.persistence = persistence;
+        this.executor = executor;
+        this.metrics = metrics;
+        this.enrollment = new CourseIndex(store);
+        this.filters = new RosterBitmapIndex(store);
+        this.duplicates = new DuplicateIndex(store);
+    }
+
+    // Load the saved roster on the writer, or set up the default courses if
+    // there is none. Operations submitted in the meantime queue up behind it,
+    // and listeners see the students arrive in batches. Completes with the
+    // number of students loaded
+    public synchronized CompletableFuture<Integer> load() {
+        if(loadStarted) {
+            return loaded;
+        }
+        loadStarted = true;
+        if(primary != null) {
+            RosterFollower follower = new RosterFollower(primary, store, courses, enrollment, executor,
+                    this::coursesChanged);
+            metrics.watchReplication(follower::lagChanges, follower::lagMillis);
+            follower.synced().thenAccept(loaded::complete);
+            follower.start();
+            return loaded;
+        }
+        executor.write(() -> {
+            try {
+                persistence.recover(store);
+            } catch(IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            if(persistence.hasState()) {
+                // Courses saved by an earlier run
+                persistence.courses().forEach(courses::add);
+            } else {
+                for(String[] course : DEFAULT_COURSES) {
+                    courses.add(course[0], course[1]);
+                    persistence.courseAdded(course[0], course[1]);
+                }
+            }
+            return store.size();
+        }).whenComplete((count, error) -> {
+            if(error != null) {
+                loaded.completeExceptionally(error);
+            } else {
+                loaded.complete(count);
+            }
+        });
+        return loaded;
+    }
+
+    // Completes once load() has finished
+    public CompletableFuture<Integer> loaded() {
+        return loaded;
+    }
+
+    // Make this roster a read-only copy of the one shipped from primary (see
+    // RosterFollower), instead of loading the saved roster. Call before load(),
+    // which then completes once the first copy is in. Nothing is saved
+    public synchronized void follow(InetSocketAddress primary) {
+        if(loadStarted) {
+            throw new IllegalStateException("The roster is already loaded");
+        }
+        this.primary = primary;
+    }
+
+    // The instance this roster copies, or null if it is its own
+    public InetSocketAddress primary() {
+        return primary;
+    }
+
+    // Ship every change to the followers that connect to address (see
+    // RosterReplicationServer), from the time the roster is loaded
+    public RosterReplicationServer shipChanges(InetSocketAddress address) throws IOException {
+        if(primary != null) {
+            throw new IllegalStateException("A follower cannot ship changes");
+        }
+        RosterReplicationServer server = new RosterReplicationServer(persistence, address);
+        metrics.watchReplication(server::lagChanges, server::lagMillis);
+        loaded.thenRun(server::start);
+        return server;
+    }
+
+    // Run listener, on a background thread, when a follower's courses were
+    // changed by the primary
+    public void whenCoursesChange(Runnable listener) {
+        courseListeners.add(listener);
+    }
+
+    private void coursesChanged() {
+        for(Runnable listener : courseListeners) {
+            listener.run();
+        }
+    }
+
+    public StudentStore store() {
+        return store;
+    }
+
+    public StoreExecutor executor() {
+        return executor;
+    }
+
+    // Add a student, completes with false if the ID is already taken. Fields
+    // must not be empty or longer than Student.MAX_FIELD_LENGTH and the course
+    // must exist
+    public CompletableFuture<Boolean> addStudent(Student student) {
+        checkStudent(student);
+        if(primary != null) {
+            return readOnly();
+        }
+        return commit(() -> {
+            // The course may have been removed while this waited for the writer
+            if(!courses.contains(student.course)) {
+                throw new IllegalArgumentException("Unknown course: " + student.course);
+            }
+            long start = System.nanoTime();
+            boolean added = store.add(student);
+            metrics.record(RosterMetrics.Operation.ADD_STUDENT, start);
+            return added;
+        });
+    }
+
+    // Add a batch of students as one store change, checked like addStudent.
+    // Completes with the students that were not added, because their ID was
+    // taken or their course was removed while the batch waited for the writer
+    public CompletableFuture<List<Student>> addStudents(List<Student> batch) {
+        for(Student student : batch) {
+            checkStudent(student);
+        }
+        if(primary != null) {
+            return readOnly();
+        }
+        return commit(() -> {
+            long start = System.nanoTime();
+            ArrayList<Student> enrolled = new ArrayList<>(batch.size());
+            ArrayList<Student> rejected = new ArrayList<>();
+            for(Student student : batch) {
+                if(courses.contains(student.course)) {
+                    enrolled.add(student);
+                } else {
+                    rejected.add(student);
+                }
+            }
+            rejected.addAll(store.addAll(enrolled));
+            metrics.record(RosterMetrics.Operation.ADD_STUDENTS, start);
+            return rejected;
+        });
+    }
+
+    // Find a student by ID, or null if there is none
+    public Student findStudent(String id) {
+        long start = System.nanoTime();
+        Student student = store.find(id);
+        metrics.record(RosterMetrics.Operation.FIND_STUDENT, start);
+        return student;
+    }
+
+    // Up to limit students from row offset on, optionally only those in one
+    // course and with one grade (null matches any). Returns the row to
+    // continue from, or -1 once the end of the roster has been reached
+    public int listStudents(int offset, int limit, String course, String grade, List<Student> out) {
+        long start = System.nanoTime();
+        int next = store.list(offset, limit, course, grade, out);
+        metrics.record(RosterMetrics.Operation.LIST_STUDENTS, start);
+        return next;
+    }
+
+    // Storage slots of the students matching a query, in ascending order
+    public int[] queryStudents(RosterQuery query) {
+        long start = System.nanoTime();
+        int[] slots = filters.query(query);
+        metrics.record(RosterMetrics.Operation.QUERY_STUDENTS, start);
+        return slots;
+    }
+
+    // Up to limit stored students whose name and email are so much like these
+    // that they are likely the same person, most similar first
+    public List<DuplicateIndex.Match> findDuplicates(String name, String email, int limit) {
+        long start = System.nanoTime();
+        List<DuplicateIndex.Match> matches = duplicates.similar(name, email, MinHash.THRESHOLD, limit);
+        metrics.record(RosterMetrics.Operation.FIND_DUPLICATES, start);
+        return matches;
+    }
+
+    // The likely duplicate pairs of the whole roster as it is now, most
+    // similar first, at most limit of them. See DuplicateScan for progress
+    // and cancelling
+    public List<DuplicateScan.Pair> scanDuplicates(int limit, BooleanSupplier cancelled, IntConsumer progress) {
+        long start = System.nanoTime();
+        List<DuplicateScan.Pair> pairs = DuplicateScan.scan(store.snapshot(), MinHash.THRESHOLD, limit, cancelled, progress);
+        metrics.record(RosterMetrics.Operation.SCAN_DUPLICATES, start);
+        return pairs;
+    }
+
+    // Grade reports and transcripts of every course as the roster is now,
+    // written into directory. See RosterReports for progress and cancelling
+    public RosterReports.Summary writeReports(RosterReports.Format format, Path directory,
+                                              BooleanSupplier cancelled, IntConsumer progress) throws IOException {
+        long start = System.nanoTime();
+        RosterReports.Summary summary = RosterReports.write(store.snapshot(), courses::description, format,
+                directory, cancelled, progress);
+        metrics.record(RosterMetrics.Operation.WRITE_REPORTS, start);
+        return summary;
+    }
+
+    // Set a student's grade, completes with the student as it was before or
+    // null if the ID is unknown
+    public CompletableFuture<Student> assignGrade(String id, String grade) {
+        Student.gradeCode(grade);
+        if(primary != null) {
+            return readOnly();
+        }
+        return commit(() -> {
+            long start = System.nanoTime();
+            Student student = store.find(id);
+            boolean assigned = student != null && store.setGrade(id, grade);
+            metrics.record(RosterMetrics.Operation.ASSIGN_GRADE, start);
+            return assigned ? student : null;
+        });
+    }
+
+    // Set the grades of many students as one store change. Every grade is
+    // checked before any is applied; completes with the IDs that were unknown
+    public CompletableFuture<List<String>> assignGrades(Map<String, String> grades) {
+        for(String grade : grades.values()) {
+            Student.gradeCode(grade);
+        }
+        if(primary != null) {
+            return readOnly();
+        }
+        return commit(() -> {
+            long start = System.nanoTime();
+            List<String> unknown = store.setGrades(grades);
+            metrics.record(RosterMetrics.Operation.ASSIGN_GRADES, start);
+            return unknown;
+        });
+    }
+
+    // Remove a student, completes with the removed student or null
+    public CompletableFuture<Student> removeStudent(String id) {
+        if(primary != null) {
+            return readOnly();
+        }
+        return commit(() -> {
+            long start = System.nanoTime();
+            Student removed = store.remove(id);
+            metrics.record(RosterMetrics.Operation.DELETE_STUDENT, start);
+            return removed;
+        });
+    }
+
+    public List<String> courses() {
+        return courses.names();
+    }
+
+    public boolean hasCourse(String course) {
+        return courses.contains(course);
+    }
+
+    // Description of a course, "" if it has none and null if there is no such course
+    public String courseDescription(String course) {
+        return courses.description(course);
+    }
+
+    // Number of students enrolled in a course
+    public int enrolled(String course) {
+        return enrollment.enrolled(course);
+    }
+
+    // Up to limit students of a course, in no particular order. Returns the
+    // number enrolled, which may be more than were copied
+    public int studentsInCourse(String course, int limit, List<Student> out) {
+        return enrollment.students(course, limit, out);
+    }
+
+    // Add a course, completes with false if it already exists
+    public CompletableFuture<Boolean> addCourse(String course, String description) {
+        checkLength("Course names", course);
+        checkDescription(description);
+        if(primary != null) {
+            return readOnly();
+        }
+        return commit(() -> {
+            long start = System.nanoTime();
+            if(!courses.add(course, description)) {
+                return false;
+            }
+            persistence.courseAdded(course, description);
+            metrics.record(RosterMetrics.Operation.ADD_COURSE, start);
+            return true;
+        });
+    }
+
+    // Change a course's description, completes with false if there is no
+    // such course
+    public CompletableFuture<Boolean> describeCourse(String course, String description) {
+        checkDescription(description);
+        if(primary != null) {
+            return readOnly();
+        }
+        return commit(() -> {
+            if(!courses.describe(course, description)) {
+                return false;
+            }
+            persistence.courseDescribed(course, description);
+            return true;
+        });
+    }
+
+    // Remove a course. Enrolled students are moved to reassignTo; if that is
+    // null, removal is refused while anyone is enrolled. Completes with the
+    // number of students moved, or -1 if there is no such course
+    public CompletableFuture<Integer> removeCourse(String course, String reassignTo) {
+        if(reassignTo != null && (reassignTo.equals(course) || !courses.contains(reassignTo))) {
+            throw new IllegalArgumentException("Cannot move students to " + reassignTo);
+        }
+        if(primary != null) {
+            return readOnly();
+        }
+        // On the writer, so no student can join the course between the check
+        // and the removal
+        return commit(() -> {
+            long start = System.nanoTime();
+            if(!courses.contains(course)) {
+                return -1;
+            }
+            int enrolled = enrollment.enrolled(course);
+            if(enrolled > 0 && reassignTo == null) {
+                throw new IllegalStateException(enrolled + " students are still enrolled in " + course);
+            }
+            if(reassignTo != null && !courses.contains(reassignTo)) {
+                throw new IllegalArgumentException("Unknown course: " + reassignTo);
+            }
+            int moved = reassignTo == null ? 0 : reassign(course, reassignTo);
+            courses.remove(course);
+            persistence.courseRemoved(course);
+            metrics.record(RosterMetrics.Operation.REMOVE_COURSE, start);
+            return moved;
+        });
+    }
+
+    // Move a course's students through the course index, so only they are
+    // visited. Under the store's lock no change falls between reading the
+    // index and the move
+    private int reassign(String course, String to) {
+        synchronized(store) {
+            return store.reassignCourse(course, to, enrollment.slots(course));
+        }
+    }
+
+    // Run a change on the writer. The future completes once the journal
+    // commit that holds the change is on disk, so an acknowledged change
+    // survives a crash
+    private <T> CompletableFuture<T> commit(Supplier<T> change) {
+        return executor.write(() -> {
+            T result = change.get();
+            return persistence.durable().thenApply(committed -> result);
+        }).thenCompose(durable -> durable);
+    }
+
+    // Changes are only made on the primary, a follower gets them from there
+    private <T> CompletableFuture<T> readOnly() {
+        return CompletableFuture.failedFuture(
+                new IllegalStateException("This roster is a read-only copy of " + primary));
+    }
+
+    private void checkStudent(Student student) {
+        if(student.id.isEmpty() || student.name.isEmpty() || student.email.isEmpty()) {
+            throw new IllegalArgumentException("Please fill in all fields");
+        }
+        checkLength("IDs", student.id);
+        checkLength("Names", student.name);
+        checkLength("Emails", student.email);
+        if(!courses.contains(student.course)) {
+            throw new IllegalArgumentException("Unknown course: " + student.course);
+        }
+        Student.gradeCode(student.grade);
+    }
+
+    private static void checkLength(String field, String value) {
+        if(value.length() > Student.MAX_FIELD_LENGTH) {
+            throw new IllegalArgumentException(field + " are limited to " + Student.MAX_FIELD_LENGTH + " characters");
+        }
+    }
+
+    private static void checkDescription(String description) {
+        if(description.length() > MAX_DESCRIPTION_LENGTH) {
+            throw new IllegalArgumentException("Course descriptions are limited to " + MAX_DESCRIPTION_LENGTH
+                    + " characters");
+        }
+    }
+}
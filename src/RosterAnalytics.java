@@ -0,0 +1,122 @@
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+// Grade counts per course and overall, kept up to date from store events so
+// reading them never scans the roster. Events arrive on the threads that change
+// the store and the dashboard reads from the EDT, so access is synchronized
+public class RosterAnalytics implements StudentStoreListener {
+
+    // Grade counts for one course, indexed like Student.GRADES
+    public static class CourseStats {
+        final String course;
+        final long[] grades;
+
+        CourseStats(String course, long[] grades) {
+            this.course = course;
+            this.grades = grades;
+        }
+
+        public long enrolled() {
+            long total = 0;
+            for(long count : grades) {
+                total += count;
+            }
+            return total;
+        }
+
+        // Share of students with a final grade, A to F
+        public double completionRate() {
+            long enrolled = enrolled();
+            if(enrolled == 0) {
+                return 0;
+            }
+            long ungraded = grades[Student.gradeCode("Incomplete")] + grades[Student.NOT_GRADED];
+            return (enrolled - ungraded) / (double) enrolled;
+        }
+    }
+
+    private final LinkedHashMap<String, long[]> byCourse = new LinkedHashMap<>();
+    private final long[] overall = new long[Student.GRADES.length];
+
+    // Count the roster as of registering, then follow its changes. Changes
+    // that arrive while counting wait for the lock
+    public RosterAnalytics(StudentStore store) {
+        synchronized(this) {
+            RosterView roster = store.addListener(this);
+            for(int row = 0; row < roster.size(); row++) {
+                count(roster.valueAt(row, StudentStore.COURSE), roster.gradeCode(row), 1);
+            }
+        }
+    }
+
+    @Override
+    public synchronized void studentAdded(int row, Student student) {
+        count(student.course, Student.gradeCode(student.grade), 1);
+    }
+
+    @Override
+    public synchronized void gradesChanged(int[] rows, List<Student> students, List<String> oldGrades) {
+        for(int i = 0; i < rows.length; i++) {
+            Student student = students.get(i);
+            count(student.course, Student.gradeCode(oldGrades.get(i)), -1);
+            count(student.course, Student.gradeCode(student.grade), 1);
+        }
+    }
+
+    @Override
+    public synchronized void studentsAdded(int firstRow, List<Student> students) {
+        for(Student student : students) {
+            count(student.course, Student.gradeCode(student.grade), 1);
+        }
+    }
+
+    @Override
+    public synchronized void gradeChanged(int row, Student student, String oldGrade) {
+        count(student.course, Student.gradeCode(oldGrade), -1);
+        count(student.course, Student.gradeCode(student.grade), 1);
+    }
+
+    @Override
+    public synchronized void courseReassigned(int[] rows, List<Student> students, String oldCourse) {
+        for(Student student : students) {
+            byte grade = Student.gradeCode(student.grade);
+            count(oldCourse, grade, -1);
+            count(student.course, grade, 1);
+        }
+    }
+
+    @Override
+    public synchronized void studentRemoved(int row, int lastRow, Student student) {
+        count(student.course, Student.gradeCode(student.grade), -1);
+    }
+
+    // Courses offered with nobody enrolled yet still show up with zero counts
+    public synchronized void courseAdded(String course) {
+        byCourse.computeIfAbsent(course, c -> new long[Student.GRADES.length]);
+    }
+
+    // A removed course is dropped once nobody is enrolled in it
+    public synchronized void courseRemoved(String course) {
+        long[] grades = byCourse.get(course);
+        if(grades != null && new CourseStats(course, grades).enrolled() == 0) {
+            byCourse.remove(course);
+        }
+    }
+
+    private void count(String course, byte grade, int delta) {
+        byCourse.computeIfAbsent(course, c -> new long[Student.GRADES.length])[grade] += delta;
+        overall[grade] += delta;
+    }
+
+    // Copy of the per course counts, costs the same whatever the roster size
+    public synchronized List<CourseStats> courses() {
+        ArrayList<CourseStats> stats = new ArrayList<>(byCourse.size());
+        byCourse.forEach((course, grades) -> stats.add(new CourseStats(course, grades.clone())));
+        return stats;
+    }
+
+    public synchronized CourseStats overall() {
+        return new CourseStats("All courses", overall.clone());
+    }
+}
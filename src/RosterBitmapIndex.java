@@ -0,0 +1,177 @@
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+// Compressed bitmaps of the storage slots in every course and with every
+// grade, kept up to date from store events, for RosterQuery. A query ORs the
+// bitmaps of the courses it names, ORs those of the grades it names and ANDs
+// the two, which touches a few hundred chunks however many students match.
+//
+// An ID range is checked on the matches through a key per slot that keeps
+// the natural order of the IDs (see RosterQuery.idKey), so an ID is only read
+// when its key ties with a bound.
+//
+// Events arrive under the store's lock and queries come from any thread, so
+// access is synchronized. Tied IDs are read from a snapshot taken before the
+// index lock, the same way CourseIndex lists students
+public class RosterBitmapIndex implements StudentStoreListener {
+
+    private final StudentStore store;
+    private final HashMap<String, SlotBitmap> byCourse = new HashMap<>();
+    private final SlotBitmap[] byGrade = new SlotBitmap[Student.GRADES.length];
+
+    // Slot -> RosterQuery.idKey of its student's ID
+    private long[] idKeys = new long[1024];
+
+    public RosterBitmapIndex(StudentStore store) {
+        this.store = store;
+        for(int i = 0; i < byGrade.length; i++) {
+            byGrade[i] = new SlotBitmap();
+        }
+        // Changes that arrive while indexing wait for the lock
+        synchronized(this) {
+            RosterView view = store.addListener(this);
+            for(int row = 0; row < view.size(); row++) {
+                int slot = view.slot(row);
+                course(view.valueAt(row, StudentStore.COURSE)).add(slot);
+                byGrade[view.gradeCode(row)].add(slot);
+                setIdKey(slot, view.valueAt(row, StudentStore.ID));
+            }
+        }
+    }
+
+    // Storage slots of the students that match, in ascending order
+    public int[] query(RosterQuery query) {
+        RosterView view = query.hasIdRange() ? store.snapshot() : null;
+        long fromKey = query.idFrom != null ? RosterQuery.idKey(query.idFrom) : 0;
+        long toKey = query.idTo != null ? RosterQuery.idKey(query.idTo) : -1;
+        int[] slots;
+        int[] tied;
+        int count = 0;
+        int tiedCount = 0;
+        synchronized(this) {
+            SlotBitmap matches;
+            SlotBitmap courses = null;
+            if(!query.courses.isEmpty()) {
+                courses = new SlotBitmap();
+                for(String course : query.courses) {
+                    SlotBitmap students = byCourse.get(course);
+                    if(students != null) {
+                        courses = courses.or(students);
+                    }
+                }
+            }
+            // Every student has a grade, so all grades stand for no condition
+            SlotBitmap grades = null;
+            if(!query.grades.isEmpty() || courses == null) {
+                grades = new SlotBitmap();
+                for(int grade = 0; grade < byGrade.length; grade++) {
+                    if(query.grades.isEmpty() || query.grades.contains(Student.GRADES[grade])) {
+                        grades = grades.or(byGrade[grade]);
+                    }
+                }
+            }
+            matches = courses == null ? grades : grades == null ? courses : courses.and(grades);
+
+            slots = matches.toArray();
+            if(view == null) {
+                return slots;
+            }
+            // Matches are in slot order, so the keys are read front to back
+            tied = new int[Math.min(slots.length, 1024)];
+            for(int slot : slots) {
+                long key = idKeys[slot];
+                int from = Long.compareUnsigned(key, fromKey);
+                int to = Long.compareUnsigned(key, toKey);
+                if(from > 0 && to < 0) {
+                    slots[count++] = slot;
+                } else if(from >= 0 && to <= 0) {
+                    if(tiedCount == tied.length) {
+                        tied = Arrays.copyOf(tied, tiedCount * 2);
+                    }
+                    tied[tiedCount++] = slot;
+                }
+            }
+        }
+
+        // The index may be ahead of the snapshot, slots not in use there are skipped
+        int matched = count;
+        for(int i = 0; i < tiedCount; i++) {
+            String id = view.valueAtSlot(tied[i], StudentStore.ID);
+            if(id != null && query.matchesId(id)) {
+                slots[count++] = tied[i];
+            }
+        }
+        if(count > matched) {
+            Arrays.sort(slots, 0, count);
+        }
+        return count == slots.length ? slots : Arrays.copyOf(slots, count);
+    }
+
+    @Override
+    public synchronized void studentAdded(int row, Student student) {
+        add(student);
+    }
+
+    @Override
+    public synchronized void studentsAdded(int firstRow, List<Student> students) {
+        for(Student student : students) {
+            add(student);
+        }
+    }
+
+    @Override
+    public synchronized void gradeChanged(int row, Student student, String oldGrade) {
+        byGrade[Student.gradeCode(oldGrade)].remove(student.slot);
+        byGrade[Student.gradeCode(student.grade)].add(student.slot);
+    }
+
+    @Override
+    public synchronized void gradesChanged(int[] rows, List<Student> students, List<String> oldGrades) {
+        for(int i = 0; i < students.size(); i++) {
+            Student student = students.get(i);
+            byGrade[Student.gradeCode(oldGrades.get(i))].remove(student.slot);
+            byGrade[Student.gradeCode(student.grade)].add(student.slot);
+        }
+    }
+
+    @Override
+    public synchronized void courseReassigned(int[] rows, List<Student> students, String oldCourse) {
+        SlotBitmap from = byCourse.get(oldCourse);
+        SlotBitmap to = course(students.get(0).course);
+        for(Student student : students) {
+            from.remove(student.slot);
+            to.add(student.slot);
+        }
+        if(from.isEmpty()) {
+            byCourse.remove(oldCourse);
+        }
+    }
+
+    @Override
+    public synchronized void studentRemoved(int row, int lastRow, Student student) {
+        SlotBitmap course = byCourse.get(student.course);
+        course.remove(student.slot);
+        if(course.isEmpty()) {
+            byCourse.remove(student.course);
+        }
+        byGrade[Student.gradeCode(student.grade)].remove(student.slot);
+    }
+
+    private void add(Student student) {
+        course(student.course).add(student.slot);
+        byGrade[Student.gradeCode(student.grade)].add(student.slot);
+        setIdKey(student.slot, student.id);
+    }
+
+    private void setIdKey(int slot, String id) {
+        if(slot >= idKeys.length) {
+            idKeys = Arrays.copyOf(idKeys, Math.max(idKeys.length * 2, slot + 1));
+        }
+        idKeys[slot] = RosterQuery.idKey(id);
+    }
+
+    private SlotBitmap course(String course) {
+        return byCourse.computeIfAbsent(course, c -> new SlotBitmap());
+    }
+}
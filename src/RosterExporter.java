@@ -0,0 +1,194 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// Writes students straight into a direct buffer that is drained to a file
+// channel. Text is copied as stored UTF-8 bytes from a RosterView and course
+// and grade are compared as codes, so no row arrays or per record strings are
+// built on the way out
+public class RosterExporter {
+
+    public enum Format { CSV, BINARY }
+
+    // Binary format:
+    //   int magic "SME1"
+    //   then records, each starting with a type byte
+    //   VALUE:   varint index, string  defines a course name the first time it is used
+    //   STUDENT: string id, string name, varint course index, string email, byte grade
+    // Strings are a varint byte length followed by UTF-8
+    static final int BINARY_MAGIC = 0x534D4531;
+    static final byte VALUE_RECORD = 0;
+    static final byte STUDENT_RECORD = 1;
+
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private FileChannel channel;
+
+    // Export the students in the given course and with the given grade, either
+    // may be null for all. Returns how many were written
+    public long export(RosterView roster, String course, String grade, Format format, Path file) throws IOException {
+        // A course nobody was ever enrolled in has no code and matches no row
+        int courseCode = course == null ? -1 : roster.findCourse(course);
+        int gradeCode = grade == null ? -1 : Student.gradeCode(grade);
+
+        long written = 0;
+        buffer.clear();
+        try(FileChannel out = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            channel = out;
+            boolean[] courseWritten = new boolean[roster.courseNames().length];
+            if(format == Format.CSV) {
+                putAscii("id,name,course,email,grade\n");
+            } else {
+                buffer.putInt(BINARY_MAGIC);
+            }
+
+            for(int row = 0; row < roster.size(); row++) {
+                if(Thread.currentThread().isInterrupted()) {
+                    throw new IOException("Export cancelled");
+                }
+                if((course != null && roster.courseCode(row) != courseCode)
+                        || (grade != null && roster.gradeCode(row) != gradeCode)) {
+                    continue;
+                }
+                if(buffer.remaining() < maxRecordSize(roster, row)) {
+                    drain();
+                    if(buffer.remaining() < maxRecordSize(roster, row)) {
+                        throw new IOException("Student " + roster.valueAt(row, StudentStore.ID) + " is too large to export");
+                    }
+                }
+                if(format == Format.CSV) {
+                    writeCsv(roster, row);
+                } else {
+                    writeBinary(roster, row, courseWritten);
+                }
+                written++;
+            }
+            drain();
+        } finally {
+            channel = null;
+        }
+        return written;
+    }
+
+    // Upper bound for one record: text bytes doubled for CSV quote escaping,
+    // plus the course name, separators and varints
+    private static int maxRecordSize(RosterView roster, int row) {
+        int bytes = roster.byteLength(row, StudentStore.ID) + roster.byteLength(row, StudentStore.NAME)
+                + roster.byteLength(row, StudentStore.EMAIL);
+        return bytes * 2 + roster.courseNames()[roster.courseCode(row)].length() * 6 + 64;
+    }
+
+    private void writeCsv(RosterView roster, int row) {
+        putCsvField(roster, row, StudentStore.ID);
+        buffer.put((byte) ',');
+        putCsvField(roster, row, StudentStore.NAME);
+        buffer.put((byte) ',');
+        putCsvField(roster.courseNames()[roster.courseCode(row)]);
+        buffer.put((byte) ',');
+        putCsvField(roster, row, StudentStore.EMAIL);
+        buffer.put((byte) ',');
+        putAscii(Student.GRADES[roster.gradeCode(row)]);
+        buffer.put((byte) '\n');
+    }
+
+    private void putCsvField(RosterView roster, int row, int column) {
+        if(roster.contains(row, column, (byte) ',', (byte) '"', (byte) '\n', (byte) '\r')) {
+            putCsvField(roster.valueAt(row, column));
+        } else {
+            roster.copyTo(row, column, buffer);
+        }
+    }
+
+    private void putCsvField(String value) {
+        boolean quote = false;
+        for(int i = 0; i < value.length() && !quote; i++) {
+            char c = value.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if(!quote) {
+            putUtf8(value);
+            return;
+        }
+        buffer.put((byte) '"');
+        putUtf8(value.replace("\"", "\"\""));
+        buffer.put((byte) '"');
+    }
+
+    private void writeBinary(RosterView roster, int row, boolean[] courseWritten) {
+        // Course codes from the store are used as is, each defined before first use
+        int course = roster.courseCode(row);
+        if(!courseWritten[course]) {
+            courseWritten[course] = true;
+            buffer.put(VALUE_RECORD);
+            putVarint(course);
+            putString(roster.courseNames()[course]);
+        }
+        buffer.put(STUDENT_RECORD);
+        putText(roster, row, StudentStore.ID);
+        putText(roster, row, StudentStore.NAME);
+        putVarint(course);
+        putText(roster, row, StudentStore.EMAIL);
+        buffer.put(roster.gradeCode(row));
+    }
+
+    private void putText(RosterView roster, int row, int column) {
+        putVarint(roster.byteLength(row, column));
+        roster.copyTo(row, column, buffer);
+    }
+
+    private void putString(String value) {
+        // Most values are ASCII, so the byte length is the char count
+        if(isAscii(value)) {
+            putVarint(value.length());
+            putAscii(value);
+        } else {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            putVarint(bytes.length);
+            buffer.put(bytes);
+        }
+    }
+
+    private void putUtf8(String value) {
+        if(isAscii(value)) {
+            putAscii(value);
+        } else {
+            buffer.put(value.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private static boolean isAscii(String value) {
+        for(int i = 0; i < value.length(); i++) {
+            if(value.charAt(i) >= 0x80) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void putAscii(String value) {
+        for(int i = 0; i < value.length(); i++) {
+            buffer.put((byte) value.charAt(i));
+        }
+    }
+
+    private void putVarint(int value) {
+        while((value & ~0x7F) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    private void drain() throws IOException {
+        buffer.flip();
+        while(buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
@@ -0,0 +1,376 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+// Keeps this instance's roster a read-only copy of a primary's, fed by its
+// RosterReplicationServer. One thread reads the primary's frames and decodes
+// each batch of changes while the store's writer thread applies the one
+// before; runs of adds and of grade changes go into the store as one change
+// each. After a disconnect it reconnects every RETRY_MILLIS and asks for the
+// changes after the last one applied, or gets the whole roster again if the
+// primary no longer has them.
+//
+// Lag is the number of changes the primary is known to have that are not
+// applied here, and how long ago this copy first heard of the oldest of them,
+// or lost the primary, on its own clock
+public class RosterFollower implements AutoCloseable {
+
+    private static final long RETRY_MILLIS = 1000;
+
+    // Decoded records of one CHANGES frame
+    private static class Changes {
+        final long first;
+        final byte[] ops;
+        final String[][] fields;
+
+        Changes(long first, int count) {
+            this.first = first;
+            this.ops = new byte[count];
+            this.fields = new String[count][];
+        }
+
+        long last() {
+            return first + ops.length - 1;
+        }
+    }
+
+    private final InetSocketAddress primary;
+    private final StudentStore store;
+    private final CourseRegistry courses;
+    private final CourseIndex enrollment;
+    private final StoreExecutor executor;
+    private final Runnable coursesChanged;
+    private final CompletableFuture<Integer> synced = new CompletableFuture<>();
+    private final Thread reader;
+
+    // Written by the reader thread only
+    private long epoch;
+    private volatile long applied;
+    private volatile long head;
+
+    // (head, System.nanoTime()) whenever the primary's head moved past what
+    // was applied, oldest first
+    private final ArrayDeque<long[]> heard = new ArrayDeque<>();
+    private volatile long missingSince;
+    private volatile long disconnectedSince = System.nanoTime();
+
+    private volatile Socket socket;
+    private volatile boolean closed;
+
+    // coursesChanged runs on a background thread after replicated changes
+    // touched the courses
+    public RosterFollower(InetSocketAddress primary, StudentStore store, CourseRegistry courses,
+                          CourseIndex enrollment, StoreExecutor executor, Runnable coursesChanged) {
+        this.primary = primary;
+        this.store = store;
+        this.courses = courses;
+        this.enrollment = enrollment;
+        this.executor = executor;
+        this.coursesChanged = coursesChanged;
+        this.reader = new Thread(this::run, "roster-follower");
+        reader.setDaemon(true);
+    }
+
+    public void start() {
+        reader.start();
+    }
+
+    // Completes with the number of students once the first copy of the
+    // primary's roster is in
+    public CompletableFuture<Integer> synced() {
+        return synced;
+    }
+
+    public InetSocketAddress primary() {
+        return primary;
+    }
+
+    // Number of the last of the primary's changes applied here
+    public long applied() {
+        return applied;
+    }
+
+    public boolean isConnected() {
+        return disconnectedSince == 0;
+    }
+
+    public long lagChanges() {
+        return Math.max(0, head - applied);
+    }
+
+    public long lagMillis() {
+        long since = disconnectedSince != 0 ? disconnectedSince : missingSince;
+        return since == 0 ? 0 : (System.nanoTime() - since) / 1_000_000;
+    }
+
+    // Wait until change sequence has been applied, returns false on timeout
+    public synchronized boolean awaitApplied(long sequence, long timeoutMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while(applied < sequence) {
+            long left = deadline - System.currentTimeMillis();
+            if(left <= 0) {
+                return false;
+            }
+            wait(left);
+        }
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        reader.interrupt();
+        Socket current = socket;
+        if(current != null) {
+            current.close();
+        }
+    }
+
+    private void run() {
+        boolean reported = false;
+        while(!closed) {
+            try(Socket connection = new Socket()) {
+                socket = connection;
+                connection.connect(primary);
+                connection.setTcpNoDelay(true);
+                reported = false;
+                follow(connection);
+            } catch(IOException | UncheckedIOException e) {
+                if(!closed && !reported) {
+                    System.err.println("Not following " + primary + ", retrying: " + e);
+                    reported = true;
+                }
+            } finally {
+                socket = null;
+                if(disconnectedSince == 0) {
+                    disconnectedSince = System.nanoTime();
+                }
+            }
+            try {
+                Thread.sleep(RETRY_MILLIS);
+            } catch(InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    private void follow(Socket connection) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(connection.getInputStream(), 1 << 16));
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(connection.getOutputStream()));
+        out.writeInt(RosterReplicationServer.MAGIC);
+        out.writeLong(epoch);
+        out.writeLong(applied);
+        out.flush();
+
+        CompletableFuture<Void> applying = null;
+        Changes inFlight = null;
+        long expected = applied + 1;
+        try {
+            while(true) {
+                // Acknowledge as soon as everything that arrived is applied
+                if(applying != null && in.available() == 0) {
+                    finish(applying, inFlight, out);
+                    applying = null;
+                }
+                byte type = in.readByte();
+                if(type == RosterReplicationServer.SNAPSHOT) {
+                    epoch = in.readLong();
+                    expected = restart(in) + 1;
+                    out.writeLong(applied);
+                    out.flush();
+                    disconnectedSince = 0;
+                    synced.complete(store.size());
+                } else if(type == RosterReplicationServer.CHANGES) {
+                    disconnectedSince = 0;
+                    Changes changes = read(in);
+                    if(changes.first != expected) {
+                        throw new IOException("Expected change " + expected + " from " + primary + ", got " + changes.first);
+                    }
+                    expected = changes.last() + 1;
+                    if(applying != null) {
+                        finish(applying, inFlight, out);
+                    }
+                    inFlight = changes;
+                    applying = executor.write(() -> apply(changes));
+                } else if(type == RosterReplicationServer.HEARTBEAT) {
+                    disconnectedSince = 0;
+                    heardOf(in.readLong());
+                    if(applying == null) {
+                        caughtUpTo(applied);
+                    }
+                } else {
+                    throw new IOException("Unknown replication frame " + type + " from " + primary);
+                }
+            }
+        } finally {
+            // Whatever the writer still has is applied, so it is not asked for again
+            if(applying != null) {
+                try {
+                    applying.join();
+                    caughtUpTo(inFlight.last());
+                } catch(CompletionException e) {
+                    // Asked for again after reconnecting
+                }
+            }
+        }
+    }
+
+    private Changes read(DataInputStream in) throws IOException {
+        long first = in.readLong();
+        int count = in.readInt();
+        heardOf(in.readLong());
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+
+        Changes changes = new Changes(first, count);
+        DataInputStream records = new DataInputStream(new ByteArrayInputStream(bytes));
+        for(int i = 0; i < count; i++) {
+            byte op = records.readByte();
+            String[] fields = new String[RosterJournal.fieldCount(op)];
+            for(int f = 0; f < fields.length; f++) {
+                fields[f] = RosterJournal.readText(records);
+            }
+            changes.ops[i] = op;
+            changes.fields[i] = fields;
+        }
+        return changes;
+    }
+
+    private void finish(CompletableFuture<Void> applying, Changes changes, DataOutputStream out) throws IOException {
+        try {
+            applying.join();
+        } catch(CompletionException e) {
+            throw new IOException("Could not apply changes from " + primary, e.getCause());
+        }
+        caughtUpTo(changes.last());
+        out.writeLong(applied);
+        out.flush();
+    }
+
+    private void heardOf(long primaryHead) {
+        if(primaryHead > head) {
+            head = primaryHead;
+            if(primaryHead > applied) {
+                heard.add(new long[]{primaryHead, System.nanoTime()});
+                if(missingSince == 0) {
+                    missingSince = heard.getFirst()[1];
+                }
+            }
+        }
+    }
+
+    private void caughtUpTo(long sequence) {
+        synchronized(this) {
+            applied = sequence;
+            notifyAll();
+        }
+        while(!heard.isEmpty() && heard.getFirst()[0] <= sequence) {
+            heard.removeFirst();
+        }
+        missingSince = heard.isEmpty() ? 0 : heard.getFirst()[1];
+    }
+
+    // Replace the whole copy with the snapshot that follows. The snapshot is
+    // read into a staging store on this thread, then swapped in on the writer
+    // as one change, so readers never see a partly loaded roster and the
+    // writer is not held up by the network. Returns the number of the last
+    // change it holds
+    private long restart(DataInputStream in) throws IOException {
+        StudentStore staging = new StudentStore();
+        RosterSnapshot snapshot = RosterSnapshot.read(in, staging, "No roster snapshot from " + primary);
+        RosterView roster = staging.snapshot();
+        try {
+            executor.write(() -> {
+                store.replaceAll(roster);
+                for(String course : courses.names()) {
+                    if(!snapshot.courses.containsKey(course)) {
+                        courses.remove(course);
+                    }
+                }
+                snapshot.courses.forEach((course, description) -> {
+                    if(!courses.add(course, description)) {
+                        courses.describe(course, description);
+                    }
+                });
+                return null;
+            }).join();
+        } catch(CompletionException e) {
+            throw new IOException("Could not load the roster from " + primary, e.getCause());
+        }
+        head = snapshot.generation;
+        heard.clear();
+        caughtUpTo(snapshot.generation);
+        coursesChanged.run();
+        return snapshot.generation;
+    }
+
+    // On the writer: one frame's changes in order, runs of adds and of grades
+    // as single store changes
+    private void apply(Changes changes) {
+        ArrayList<Student> added = new ArrayList<>();
+        LinkedHashMap<String, String> grades = new LinkedHashMap<>();
+        boolean coursesTouched = false;
+        for(int i = 0; i < changes.ops.length; i++) {
+            byte op = changes.ops[i];
+            String[] fields = changes.fields[i];
+            if(op != RosterJournal.ADD_STUDENT && !added.isEmpty()) {
+                store.addAll(added);
+                added = new ArrayList<>();
+            }
+            if(op != RosterJournal.SET_GRADE && !grades.isEmpty()) {
+                store.setGrades(grades);
+                grades = new LinkedHashMap<>();
+            }
+            switch(op) {
+                case RosterJournal.ADD_STUDENT:
+                    Student student = new Student(fields[0], fields[1], fields[2], fields[3]);
+                    student.grade = fields[4];
+                    added.add(student);
+                    break;
+                case RosterJournal.SET_GRADE:
+                    grades.put(fields[0], fields[1]);
+                    break;
+                case RosterJournal.DELETE_STUDENT:
+                    store.remove(fields[0]);
+                    break;
+                case RosterJournal.REASSIGN_COURSE:
+                    synchronized(store) {
+                        store.reassignCourse(fields[0], fields[1], enrollment.slots(fields[0]));
+                    }
+                    break;
+                case RosterJournal.ADD_COURSE:
+                    courses.add(fields[0], "");
+                    coursesTouched = true;
+                    break;
+                case RosterJournal.DESCRIBE_COURSE:
+                    courses.describe(fields[0], fields[1]);
+                    coursesTouched = true;
+                    break;
+                case RosterJournal.REMOVE_COURSE:
+                    courses.remove(fields[0]);
+                    coursesTouched = true;
+                    break;
+            }
+        }
+        if(!added.isEmpty()) {
+            store.addAll(added);
+        }
+        if(!grades.isEmpty()) {
+            store.setGrades(grades);
+        }
+        if(coursesTouched) {
+            coursesChanged.run();
+        }
+    }
+}
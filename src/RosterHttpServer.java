@@ -0,0 +1,244 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// Local HTTP/JSON API over the roster, one virtual thread per request.
+//
+//   GET  /students/{id}                          one student, 404 if unknown
+//   GET  /students?offset=&limit=&course=&grade=  a page of students in roster
+//                                                order plus the offset of the
+//                                                next page (null at the end)
+//   POST /students                               {"id","name","course","email",
+//                                                "grade"?}, 201 or 409 if taken
+//   POST /grades                                 {"<id>": "<grade>", ...}, all
+//                                                applied as one store change
+//
+// Lookups read the store on the request thread; changes are queued on the
+// StoreExecutor's writer thread like the Swing frame's. Invalid input is 400
+// wherever it is found, and a read-only follower answers changes with 403
+public class RosterHttpServer {
+
+    private static final int DEFAULT_LIMIT = 100;
+    private static final int MAX_LIMIT = 10_000;
+
+    private final Roster roster;
+    private final HttpServer server;
+    private final ExecutorService requests = Executors.newVirtualThreadPerTaskExecutor();
+
+    public RosterHttpServer(Roster roster, InetSocketAddress address) throws IOException {
+        this.roster = roster;
+        // Headers and body go out in separate writes; without TCP_NODELAY
+        // every response waits for the client's delayed ACK (~40 ms)
+        if(System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+        this.server = HttpServer.create(address, 1024);
+        server.setExecutor(requests);
+        server.createContext("/students", this::students);
+        server.createContext("/grades", this::grades);
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    public InetSocketAddress address() {
+        return server.getAddress();
+    }
+
+    // Stop accepting requests and wait up to delaySeconds for running ones
+    public void stop(int delaySeconds) {
+        server.stop(delaySeconds);
+        requests.shutdown();
+    }
+
+    private void students(HttpExchange exchange) throws IOException {
+        try {
+            String path = exchange.getRequestURI().getRawPath();
+            String method = exchange.getRequestMethod();
+            if(path.equals("/students") || path.equals("/students/")) {
+                if(method.equals("GET")) {
+                    listStudents(exchange);
+                } else if(method.equals("POST")) {
+                    addStudent(exchange);
+                } else {
+                    send(exchange, 405, error("Use GET or POST"));
+                }
+            } else if(method.equals("GET")) {
+                String id = URLDecoder.decode(path.substring("/students/".length()), StandardCharsets.UTF_8);
+                Student student = roster.findStudent(id);
+                if(student != null) {
+                    send(exchange, 200, json(student));
+                } else {
+                    send(exchange, 404, error("No student found with ID: " + id));
+                }
+            } else {
+                send(exchange, 405, error("Use GET"));
+            }
+        } catch(RuntimeException e) {
+            fail(exchange, e);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void listStudents(HttpExchange exchange) throws IOException {
+        Map<String, String> query = query(exchange);
+        int offset = intParameter(query, "offset", 0);
+        int limit = Math.min(intParameter(query, "limit", DEFAULT_LIMIT), MAX_LIMIT);
+        if(offset < 0 || limit < 1) {
+            throw new IllegalArgumentException("offset must be >= 0 and limit >= 1");
+        }
+        ArrayList<Student> page = new ArrayList<>(Math.min(limit, DEFAULT_LIMIT));
+        int next = roster.listStudents(offset, limit, query.get("course"), query.get("grade"), page);
+
+        StringBuilder out = new StringBuilder(64 + page.size() * 128);
+        out.append("{\"students\":[");
+        for(int i = 0; i < page.size(); i++) {
+            if(i > 0) {
+                out.append(',');
+            }
+            Json.write(out, fields(page.get(i)));
+        }
+        out.append("],\"next\":").append(next < 0 ? "null" : Integer.toString(next)).append('}');
+        send(exchange, 200, out.toString());
+    }
+
+    private void addStudent(HttpExchange exchange) throws IOException {
+        Map<?, ?> body = (Map<?, ?>) Json.parse(body(exchange));
+        Student student = new Student(text(body, "id"), text(body, "name"), text(body, "course"), text(body, "email"));
+        if(body.get("grade") != null) {
+            student.grade = (String) body.get("grade");
+        }
+        if(roster.addStudent(student).join()) {
+            send(exchange, 201, json(student));
+        } else {
+            send(exchange, 409, error("A student with ID " + student.id + " already exists"));
+        }
+    }
+
+    private void grades(HttpExchange exchange) throws IOException {
+        try {
+            if(!exchange.getRequestMethod().equals("POST")) {
+                send(exchange, 405, error("Use POST"));
+                return;
+            }
+            Map<?, ?> body = (Map<?, ?>) Json.parse(body(exchange));
+            LinkedHashMap<String, String> grades = new LinkedHashMap<>();
+            for(Map.Entry<?, ?> entry : body.entrySet()) {
+                grades.put((String) entry.getKey(), (String) entry.getValue());
+            }
+            List<String> unknown = roster.assignGrades(grades).join();
+            LinkedHashMap<String, Object> result = new LinkedHashMap<>();
+            result.put("updated", grades.size() - unknown.size());
+            result.put("unknown", unknown);
+            send(exchange, 200, json(result));
+        } catch(RuntimeException e) {
+            fail(exchange, e);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    // Changes fail on the writer thread wrapped in a CompletionException, so
+    // the cause decides the status
+    private void fail(HttpExchange exchange, RuntimeException e) throws IOException {
+        Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+        if(cause instanceof IllegalArgumentException || cause instanceof ClassCastException) {
+            send(exchange, 400, error(cause.getMessage()));
+        } else if(cause instanceof IllegalStateException && roster.primary() != null) {
+            send(exchange, 403, error(cause.getMessage()));
+        } else {
+            send(exchange, 500, error("Operation failed: " + cause.getMessage()));
+        }
+    }
+
+    private static Map<String, Object> fields(Student student) {
+        LinkedHashMap<String, Object> fields = new LinkedHashMap<>();
+        fields.put("id", student.id);
+        fields.put("name", student.name);
+        fields.put("course", student.course);
+        fields.put("email", student.email);
+        fields.put("grade", student.grade);
+        return fields;
+    }
+
+    private static String json(Student student) {
+        return json(fields(student));
+    }
+
+    private static String json(Object value) {
+        StringBuilder out = new StringBuilder(128);
+        Json.write(out, value);
+        return out.toString();
+    }
+
+    private static String error(String message) {
+        return json(Map.of("error", message == null ? "Bad request" : message));
+    }
+
+    private static String text(Map<?, ?> body, String field) {
+        Object value = body.get(field);
+        if(!(value instanceof String)) {
+            throw new IllegalArgumentException("Missing field: " + field);
+        }
+        return (String) value;
+    }
+
+    private static Map<String, String> query(HttpExchange exchange) {
+        HashMap<String, String> parameters = new HashMap<>();
+        String query = exchange.getRequestURI().getRawQuery();
+        if(query == null) {
+            return parameters;
+        }
+        for(String pair : query.split("&")) {
+            int equals = pair.indexOf('=');
+            if(equals > 0) {
+                parameters.put(URLDecoder.decode(pair.substring(0, equals), StandardCharsets.UTF_8),
+                        URLDecoder.decode(pair.substring(equals + 1), StandardCharsets.UTF_8));
+            }
+        }
+        return parameters;
+    }
+
+    private static int intParameter(Map<String, String> query, String name, int fallback) {
+        String value = query.get(name);
+        if(value == null) {
+            return fallback;
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch(NumberFormatException e) {
+            throw new IllegalArgumentException(name + " must be a number");
+        }
+    }
+
+    private static String body(HttpExchange exchange) throws IOException {
+        try(InputStream in = exchange.getRequestBody()) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    private static void send(HttpExchange exchange, int status, String json) throws IOException {
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try(OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+}
@@ -0,0 +1,350 @@
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.CompletableFuture;
+import java.util.zip.CRC32;
+
+// Append-only change journal. Appends only copy the record into a memory
+// buffer; a background thread writes the buffer out and fsyncs it, so many
+// edits share one fsync (group commit). A change is acknowledged through
+// durable(), which completes with the commit that covers it.
+//
+// A file starts with MAGIC, then holds records of [length][crc][op][fields],
+// each field a varint byte length and UTF-8. Files from before the header
+// hold fields as writeUTF strings and still replay
+public class RosterJournal implements AutoCloseable {
+
+    private static final int MAGIC = 0x534D4A32; // "SMJ2"
+    private static final int MAX_RECORD_BYTES = 1 << 20;
+
+    static final byte ADD_STUDENT = 1;
+    static final byte DELETE_STUDENT = 2;
+    static final byte SET_GRADE = 3;
+    static final byte ADD_COURSE = 4;
+    static final byte REMOVE_COURSE = 5;
+    static final byte REASSIGN_COURSE = 6;
+    static final byte DESCRIBE_COURSE = 7;
+
+    // Called for every record while a journal file is replayed
+    public interface Handler {
+        void apply(byte op, String[] fields);
+    }
+
+    // Byte buffer that can be handed to a channel without copying
+    private static class Buffer extends ByteArrayOutputStream {
+        Buffer(int size) {
+            super(size);
+        }
+
+        ByteBuffer asByteBuffer() {
+            return ByteBuffer.wrap(buf, 0, count);
+        }
+    }
+
+    private final long commitIntervalMillis;
+    private final Thread flusher;
+    private final CRC32 crc = new CRC32();
+    private final Buffer record = new Buffer(256);
+    private final DataOutputStream recordOut = new DataOutputStream(record);
+
+    private FileChannel channel;
+    private Buffer pending = new Buffer(64 * 1024);
+    private Buffer writing = new Buffer(64 * 1024);
+    private long appendedRecords;
+    private long durableRecords;
+
+    // Completed by the commit of the records in writing, up to writingEnd,
+    // and by the one after it for the records still pending
+    private CompletableFuture<Void> writingCommit = CompletableFuture.completedFuture(null);
+    private CompletableFuture<Void> nextCommit = new CompletableFuture<>();
+    private long writingEnd;
+    private boolean flushing;
+    private IOException failure;
+    private boolean closed;
+
+    public RosterJournal(Path file, long commitIntervalMillis) throws IOException {
+        this.commitIntervalMillis = commitIntervalMillis;
+        this.channel = open(file);
+        writeHeader();
+        this.flusher = new Thread(this::flushLoop, "roster-journal-flusher");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    private static FileChannel open(Path file) throws IOException {
+        return FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+    }
+
+    // Goes out with the first flush, the file is always new
+    private void writeHeader() throws IOException {
+        new DataOutputStream(pending).writeInt(MAGIC);
+    }
+
+    // Append one record: [length][crc][op][fields]
+    public synchronized void append(byte op, String... fields) {
+        if(failure != null) {
+            throw new UncheckedIOException("Journal is not writable", failure);
+        }
+        if(closed) {
+            throw new IllegalStateException("Journal is closed");
+        }
+        try {
+            record.reset();
+            recordOut.writeByte(op);
+            for(String field : fields) {
+                writeText(recordOut, field);
+            }
+            if(record.size() > MAX_RECORD_BYTES) {
+                throw new IllegalArgumentException("Journal record of " + record.size() + " bytes is too large");
+            }
+            crc.reset();
+            crc.update(record.asByteBuffer());
+
+            DataOutputStream out = new DataOutputStream(pending);
+            out.writeInt(record.size());
+            out.writeInt((int) crc.getValue());
+            record.writeTo(pending);
+        } catch(IOException e) {
+            // Writing to memory buffers does not fail
+            throw new UncheckedIOException(e);
+        }
+        appendedRecords++;
+        if(pending.size() >= 1024 * 1024) {
+            notifyAll();
+        }
+    }
+
+    // Completes once everything appended so far is on disk, or fails if the
+    // journal can no longer be written. Callers share the future of the
+    // commit that will hold their records, nothing waits for a lock
+    public synchronized CompletableFuture<Void> durable() {
+        if(failure != null) {
+            return CompletableFuture.failedFuture(new UncheckedIOException("Journal is not writable", failure));
+        }
+        if(durableRecords >= appendedRecords) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return appendedRecords > writingEnd ? nextCommit : writingCommit;
+    }
+
+    // Make the current file durable and continue appending to a new file
+    public synchronized void rollTo(Path file) throws IOException {
+        awaitIdle();
+        channel.close();
+        channel = open(file);
+        writeHeader();
+    }
+
+    // Wait until every record is on disk and the flusher is not writing, so
+    // the caller can swap the channel while holding the lock
+    private void awaitIdle() throws IOException {
+        while((flushing || durableRecords < appendedRecords) && failure == null) {
+            notifyAll();
+            try {
+                wait();
+            } catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while waiting for the journal", e);
+            }
+        }
+        if(failure != null) {
+            throw failure;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized(this) {
+            if(closed) {
+                return;
+            }
+            awaitIdle();
+            closed = true;
+            notifyAll();
+        }
+        try {
+            flusher.join();
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        channel.close();
+    }
+
+    private void flushLoop() {
+        while(true) {
+            long batchEnd;
+            FileChannel target;
+            synchronized(this) {
+                if(pending.size() == 0 && !closed) {
+                    try {
+                        wait(commitIntervalMillis);
+                    } catch(InterruptedException e) {
+                        return;
+                    }
+                }
+                if(pending.size() == 0) {
+                    if(closed) {
+                        return;
+                    }
+                    continue;
+                }
+                Buffer full = pending;
+                pending = writing;
+                writing = full;
+                batchEnd = appendedRecords;
+                target = channel;
+                flushing = true;
+                writingCommit = nextCommit;
+                writingEnd = batchEnd;
+                nextCommit = new CompletableFuture<>();
+            }
+
+            // Write and fsync outside the lock so appends are never blocked on disk
+            try {
+                ByteBuffer bytes = writing.asByteBuffer();
+                while(bytes.hasRemaining()) {
+                    target.write(bytes);
+                }
+                target.force(false);
+                writing.reset();
+                CompletableFuture<Void> committed;
+                synchronized(this) {
+                    durableRecords = batchEnd;
+                    flushing = false;
+                    committed = writingCommit;
+                    notifyAll();
+                }
+                // Outside the lock, waiting callers continue on this thread
+                committed.complete(null);
+            } catch(IOException e) {
+                CompletableFuture<Void> lost;
+                CompletableFuture<Void> next;
+                synchronized(this) {
+                    failure = e;
+                    flushing = false;
+                    lost = writingCommit;
+                    next = nextCommit;
+                    notifyAll();
+                }
+                UncheckedIOException error = new UncheckedIOException("Journal is not writable", e);
+                lost.completeExceptionally(error);
+                next.completeExceptionally(error);
+                return;
+            }
+        }
+    }
+
+    // Replay every intact record of a journal file. Stops quietly at a torn or
+    // corrupt tail, which is what a crash in the middle of a write leaves behind
+    public static long replay(Path file, Handler handler) throws IOException {
+        long count = 0;
+        try(InputStream in = new BufferedInputStream(Files.newInputStream(file), 1 << 20)) {
+            DataInputStream data = new DataInputStream(in);
+            in.mark(4);
+            boolean varints;
+            try {
+                varints = data.readInt() == MAGIC;
+            } catch(EOFException e) {
+                return 0;
+            }
+            if(!varints) {
+                // Written before the header, the file starts with a record
+                in.reset();
+            }
+            CRC32 crc = new CRC32();
+            byte[] bytes = new byte[256];
+            while(true) {
+                int length;
+                int checksum;
+                try {
+                    length = data.readInt();
+                    checksum = data.readInt();
+                    if(length <= 0 || length > MAX_RECORD_BYTES) {
+                        break;
+                    }
+                    if(bytes.length < length) {
+                        bytes = new byte[Math.max(length, bytes.length * 2)];
+                    }
+                    data.readFully(bytes, 0, length);
+                } catch(EOFException e) {
+                    break;
+                }
+                crc.reset();
+                crc.update(bytes, 0, length);
+                if((int) crc.getValue() != checksum) {
+                    break;
+                }
+
+                DataInputStream record = new DataInputStream(new ByteArrayInputStream(bytes, 0, length));
+                byte op = record.readByte();
+                String[] fields = new String[fieldCount(op)];
+                for(int i = 0; i < fields.length; i++) {
+                    fields[i] = varints ? readText(record) : record.readUTF();
+                }
+                handler.apply(op, fields);
+                count++;
+            }
+        }
+        return count;
+    }
+
+    // A string as a varint byte length and UTF-8. Unlike writeUTF there is no
+    // 64 KB limit
+    static void writeText(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        int length = bytes.length;
+        while((length & ~0x7F) != 0) {
+            out.writeByte((length & 0x7F) | 0x80);
+            length >>>= 7;
+        }
+        out.writeByte(length);
+        out.write(bytes);
+    }
+
+    static String readText(DataInputStream in) throws IOException {
+        int length = 0;
+        int shift = 0;
+        byte b;
+        do {
+            if(shift > 28) {
+                throw new IOException("Malformed text length");
+            }
+            b = in.readByte();
+            length |= (b & 0x7F) << shift;
+            shift += 7;
+        } while((b & 0x80) != 0);
+        if(length < 0) {
+            throw new IOException("Malformed text length");
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // Fields that follow each kind of record
+    static int fieldCount(byte op) throws IOException {
+        switch(op) {
+            case ADD_STUDENT: return 5;
+            case SET_GRADE:
+            case REASSIGN_COURSE:
+            case DESCRIBE_COURSE: return 2;
+            case DELETE_STUDENT:
+            case ADD_COURSE:
+            case REMOVE_COURSE: return 1;
+            default: throw new IOException("Unknown journal record type " + op);
+        }
+    }
+}
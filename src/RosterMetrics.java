@@ -0,0 +1,219 @@
+import javax.management.JMException;
+import javax.management.ObjectName;
+import javax.swing.SwingUtilities;
+import java.beans.ConstructorProperties;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.LongSupplier;
+import jdk.jfr.EventType;
+
+// Latency histograms and counts for every student and course operation, the
+// roster size, replication lag and the delay of tasks waiting for the EDT.
+// Exposed over JMX and as Flight Recorder events. Recording an operation is a
+// few atomic updates and allocates nothing; a JFR event is only created,
+// filled in and committed while a recording has it enabled. That is checked
+// through the events' EventType, which start() looks up on a background
+// thread because the lookup initializes Flight Recorder and takes a few
+// hundred milliseconds. Until then each event checks its own isEnabled()
+public class RosterMetrics implements RosterMetricsMXBean {
+
+    public enum Operation {
+        ADD_STUDENT, ADD_STUDENTS, FIND_STUDENT, LIST_STUDENTS, QUERY_STUDENTS, FIND_DUPLICATES, SCAN_DUPLICATES, WRITE_REPORTS, ASSIGN_GRADE, ASSIGN_GRADES, DELETE_STUDENT, ADD_COURSE, REMOVE_COURSE, TABLE_REFRESH
+    }
+
+    // Summary of one histogram, in microseconds
+    public static class OperationStats {
+        private final String name;
+        private final long count;
+        private final double meanMicros;
+        private final double p50Micros;
+        private final double p99Micros;
+        private final double p999Micros;
+        private final double maxMicros;
+
+        @ConstructorProperties({"name", "count", "meanMicros", "p50Micros", "p99Micros", "p999Micros", "maxMicros"})
+        public OperationStats(String name, long count, double meanMicros, double p50Micros, double p99Micros,
+                              double p999Micros, double maxMicros) {
+            this.name = name;
+            this.count = count;
+            this.meanMicros = meanMicros;
+            this.p50Micros = p50Micros;
+            this.p99Micros = p99Micros;
+            this.p999Micros = p999Micros;
+            this.maxMicros = maxMicros;
+        }
+
+        static OperationStats of(String name, LatencyHistogram histogram) {
+            return new OperationStats(name, histogram.count(), histogram.meanNanos() / 1000,
+                    histogram.percentileNanos(0.5) / 1000.0, histogram.percentileNanos(0.99) / 1000.0,
+                    histogram.percentileNanos(0.999) / 1000.0, histogram.maxNanos() / 1000.0);
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public double getMeanMicros() {
+            return meanMicros;
+        }
+
+        public double getP50Micros() {
+            return p50Micros;
+        }
+
+        public double getP99Micros() {
+            return p99Micros;
+        }
+
+        public double getP999Micros() {
+            return p999Micros;
+        }
+
+        public double getMaxMicros() {
+            return maxMicros;
+        }
+    }
+
+    private static final long EDT_PROBE_MILLIS = 100;
+
+    private final StudentStore store;
+    private final LatencyHistogram[] operations = new LatencyHistogram[Operation.values().length];
+    private final LatencyHistogram edtDelay = new LatencyHistogram();
+
+    // EDT probe: one task object, reposted only after the previous one ran
+    private final AtomicBoolean probePending = new AtomicBoolean();
+    private volatile long probePostedNanos;
+    private final Runnable probe = () -> {
+        recordEdtDelay(System.nanoTime() - probePostedNanos);
+        probePending.set(false);
+    };
+    private ScheduledExecutorService prober;
+
+    // Null until start() has looked them up
+    private volatile EventType operationEvents;
+    private volatile EventType edtDelayEvents;
+
+    // Replication lag, from the primary's or the follower's side
+    private volatile LongSupplier replicationLagChanges = () -> 0;
+    private volatile LongSupplier replicationLagMillis = () -> 0;
+
+    public RosterMetrics(StudentStore store) {
+        this.store = store;
+        for(int i = 0; i < operations.length; i++) {
+            operations[i] = new LatencyHistogram();
+        }
+    }
+
+    // Register the MBean and look up the JFR event types
+    public void start() throws JMException {
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this,
+                new ObjectName("StudentManagement:type=RosterMetrics"));
+        Thread lookup = new Thread(() -> {
+            operationEvents = EventType.getEventType(RosterOperationEvent.class);
+            edtDelayEvents = EventType.getEventType(EdtQueueDelayEvent.class);
+        }, "jfr-event-lookup");
+        lookup.setDaemon(true);
+        lookup.start();
+    }
+
+    // Start measuring EDT queue delay, only when there is a UI
+    public void watchEdt() {
+        prober = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "edt-delay-probe");
+            thread.setDaemon(true);
+            return thread;
+        });
+        prober.scheduleAtFixedRate(() -> {
+            if(probePending.compareAndSet(false, true)) {
+                probePostedNanos = System.nanoTime();
+                SwingUtilities.invokeLater(probe);
+            }
+        }, EDT_PROBE_MILLIS, EDT_PROBE_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    // Report replication lag, on a primary that ships changes or on a follower
+    public void watchReplication(LongSupplier lagChanges, LongSupplier lagMillis) {
+        replicationLagChanges = lagChanges;
+        replicationLagMillis = lagMillis;
+    }
+
+    // Record an operation that started at startNanos (from System.nanoTime())
+    public void record(Operation operation, long startNanos) {
+        long duration = System.nanoTime() - startNanos;
+        operations[operation.ordinal()].record(duration);
+        EventType events = operationEvents;
+        if(events != null && !events.isEnabled()) {
+            return;
+        }
+        RosterOperationEvent event = new RosterOperationEvent();
+        if(event.shouldCommit()) {
+            event.operation = operation.name();
+            event.latency = duration;
+            event.rosterSize = store.sizeNow();
+            event.commit();
+        }
+    }
+
+    private void recordEdtDelay(long nanos) {
+        edtDelay.record(nanos);
+        EventType events = edtDelayEvents;
+        if(events != null && !events.isEnabled()) {
+            return;
+        }
+        EdtQueueDelayEvent event = new EdtQueueDelayEvent();
+        if(event.shouldCommit()) {
+            event.delay = nanos;
+            event.commit();
+        }
+    }
+
+    public LatencyHistogram histogram(Operation operation) {
+        return operations[operation.ordinal()];
+    }
+
+    @Override
+    public long getRosterSize() {
+        return store.sizeNow();
+    }
+
+    @Override
+    public long getReplicationLagChanges() {
+        return replicationLagChanges.getAsLong();
+    }
+
+    @Override
+    public long getReplicationLagMillis() {
+        return replicationLagMillis.getAsLong();
+    }
+
+    @Override
+    public List<OperationStats> getOperations() {
+        ArrayList<OperationStats> stats = new ArrayList<>(operations.length);
+        for(Operation operation : Operation.values()) {
+            stats.add(OperationStats.of(operation.name(), operations[operation.ordinal()]));
+        }
+        return stats;
+    }
+
+    @Override
+    public OperationStats getEdtQueueDelay() {
+        return OperationStats.of("EDT_QUEUE_DELAY", edtDelay);
+    }
+
+    @Override
+    public void reset() {
+        for(LatencyHistogram histogram : operations) {
+            histogram.reset();
+        }
+        edtDelay.reset();
+    }
+}
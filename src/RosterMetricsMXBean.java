@@ -0,0 +1,21 @@
+import java.util.List;
+
+// Management interface of RosterMetrics, registered as
+// StudentManagement:type=RosterMetrics
+public interface RosterMetricsMXBean {
+
+    long getRosterSize();
+
+    // Changes not yet applied by the slowest follower, or by this follower; 0
+    // without replication
+    long getReplicationLagChanges();
+
+    // Age of the oldest of those changes, in milliseconds
+    long getReplicationLagMillis();
+
+    List<RosterMetrics.OperationStats> getOperations();
+
+    RosterMetrics.OperationStats getEdtQueueDelay();
+
+    void reset();
+}
@@ -0,0 +1,23 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+// Flight Recorder event for one student or course operation
+@Name("studentmanagement.RosterOperation")
+@Label("Roster Operation")
+@Category("Student Management")
+@Description("A student or course operation and how long it took")
+public class RosterOperationEvent extends jdk.jfr.Event {
+
+    @Label("Operation")
+    String operation;
+
+    @Label("Latency")
+    @Timespan(Timespan.NANOSECONDS)
+    long latency;
+
+    @Label("Roster Size")
+    long rosterSize;
+}
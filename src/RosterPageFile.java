@@ -0,0 +1,198 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// Random access record file holding one roster view, read through memory
+// mappings so rows come straight from the page cache of the OS and never all
+// sit on the heap. Used by the paged table, see PagedStudentTableModel.
+//
+// Layout:
+//   int magic "SMP1", int row count, int course count
+//   course names, each an unsigned short byte length and UTF-8
+//   long record offset per row
+//   records: id, name, email as unsigned short length and UTF-8, then an
+//   unsigned short course index and a grade byte
+//
+// Files over 1 GiB are mapped in segments. Each mapping reaches one record
+// past its segment, so every record and offset lies inside a single mapping
+public class RosterPageFile implements AutoCloseable {
+
+    static final int MAGIC = 0x534D5031; // "SMP1"
+
+    private static final int SEGMENT_BITS = 30;
+    private static final int MAX_FIELD = 0xFFFF;
+    private static final int MAX_RECORD = 3 * (2 + MAX_FIELD) + 3;
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer[] segments;
+    private final int size;
+    private final String[] courseNames;
+    private final long offsetsStart;
+
+    private RosterPageFile(FileChannel channel) throws IOException {
+        this.channel = channel;
+        long length = channel.size();
+        segments = new MappedByteBuffer[(int) ((length + (1L << SEGMENT_BITS) - 1) >>> SEGMENT_BITS)];
+        for(int i = 0; i < segments.length; i++) {
+            long start = (long) i << SEGMENT_BITS;
+            long end = Math.min(length, start + (1L << SEGMENT_BITS) + MAX_RECORD);
+            segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+        }
+        if(length < 12 || segments[0].getInt(0) != MAGIC) {
+            throw new IOException("Not a roster page file");
+        }
+        size = segments[0].getInt(4);
+        courseNames = new String[segments[0].getInt(8)];
+        long position = 12;
+        for(int i = 0; i < courseNames.length; i++) {
+            courseNames[i] = string(position);
+            position += 2 + unsignedShort(position);
+        }
+        offsetsStart = position;
+    }
+
+    // Write a view to a page file. Only a buffer for records and one for
+    // offsets are held, whatever the roster size
+    public static void write(RosterView roster, Path file) throws IOException {
+        String[] courseNames = roster.courseNames();
+        if(courseNames.length > MAX_FIELD) {
+            throw new IOException("Too many courses for a page file");
+        }
+        ByteBuffer records = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        ByteBuffer offsets = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        try(FileChannel out = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            records.putInt(MAGIC).putInt(roster.size()).putInt(courseNames.length);
+            for(String course : courseNames) {
+                byte[] bytes = course.getBytes(StandardCharsets.UTF_8);
+                if(bytes.length > MAX_FIELD) {
+                    throw new IOException("Course name too long for a page file: " + course);
+                }
+                records.putShort((short) bytes.length).put(bytes);
+            }
+            long offsetsPosition = drain(out, records, 0);
+            long recordPosition = offsetsPosition + 8L * roster.size();
+
+            for(int row = 0; row < roster.size(); row++) {
+                if(Thread.currentThread().isInterrupted()) {
+                    throw new IOException("Writing the page file was cancelled");
+                }
+                if(records.remaining() < MAX_RECORD) {
+                    recordPosition += drain(out, records, recordPosition);
+                }
+                if(!offsets.hasRemaining()) {
+                    offsetsPosition += drain(out, offsets, offsetsPosition);
+                }
+                offsets.putLong(recordPosition + records.position());
+                putText(roster, row, StudentStore.ID, records);
+                putText(roster, row, StudentStore.NAME, records);
+                putText(roster, row, StudentStore.EMAIL, records);
+                records.putShort((short) roster.courseCode(row));
+                records.put(roster.gradeCode(row));
+            }
+            drain(out, records, recordPosition);
+            drain(out, offsets, offsetsPosition);
+        }
+    }
+
+    public static RosterPageFile open(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            return new RosterPageFile(channel);
+        } catch(IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // All columns of a row, in table order
+    public void read(int row, String[] out) {
+        long position = recordStart(row);
+        out[StudentStore.ID] = string(position);
+        position += 2 + unsignedShort(position);
+        out[StudentStore.NAME] = string(position);
+        position += 2 + unsignedShort(position);
+        out[StudentStore.EMAIL] = string(position);
+        position += 2 + unsignedShort(position);
+        out[StudentStore.COURSE] = courseNames[unsignedShort(position)];
+        out[StudentStore.GRADE] = Student.GRADES[segment(position + 2).get(local(position + 2))];
+    }
+
+    // One column of a row
+    public String value(int row, int column) {
+        long position = recordStart(row);
+        // Skip the text fields before the column, they come as id, name, email
+        int skip = column == StudentStore.ID ? 0 : column == StudentStore.NAME ? 1
+                : column == StudentStore.EMAIL ? 2 : 3;
+        for(int i = 0; i < skip; i++) {
+            position += 2 + unsignedShort(position);
+        }
+        switch(column) {
+            case StudentStore.COURSE: return courseNames[unsignedShort(position)];
+            case StudentStore.GRADE: return Student.GRADES[segment(position + 2).get(local(position + 2))];
+            default: return string(position);
+        }
+    }
+
+    // The mappings are released when they are garbage collected
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private long recordStart(int row) {
+        if(row < 0 || row >= size) {
+            throw new IndexOutOfBoundsException("Row " + row + " of " + size);
+        }
+        long position = offsetsStart + 8L * row;
+        return segment(position).getLong(local(position));
+    }
+
+    private int unsignedShort(long position) {
+        return segment(position).getShort(local(position)) & 0xFFFF;
+    }
+
+    private String string(long position) {
+        int length = unsignedShort(position);
+        byte[] bytes = new byte[length];
+        segment(position).get(local(position) + 2, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private MappedByteBuffer segment(long position) {
+        return segments[(int) (position >>> SEGMENT_BITS)];
+    }
+
+    private static int local(long position) {
+        return (int) (position & ((1L << SEGMENT_BITS) - 1));
+    }
+
+    private static void putText(RosterView roster, int row, int column, ByteBuffer out) throws IOException {
+        int length = roster.byteLength(row, column);
+        if(length > MAX_FIELD) {
+            throw new IOException("Student " + roster.valueAt(row, StudentStore.ID) + " is too large for a page file");
+        }
+        out.putShort((short) length);
+        roster.copyTo(row, column, out);
+    }
+
+    // Write a buffer at a position and clear it, returns the bytes written
+    private static long drain(FileChannel out, ByteBuffer buffer, long position) throws IOException {
+        buffer.flip();
+        long written = 0;
+        while(buffer.hasRemaining()) {
+            written += out.write(buffer, position + written);
+        }
+        buffer.clear();
+        return written;
+    }
+}
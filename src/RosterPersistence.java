@@ -0,0 +1,301 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+// Keeps the roster on disk. Every change is appended to the journal, and
+// after a number of changes a snapshot is written in the background. Startup
+// loads the newest snapshot and replays the journal files written after it.
+//
+// Files in the data directory:
+//   snapshot-<generation>.bin  roster as of the start of that generation
+//   journal-<generation>.log   changes made during that generation
+public class RosterPersistence implements StudentStoreListener, AutoCloseable {
+
+    private static final long COMMIT_INTERVAL_MILLIS = 2;
+    private static final long DEFAULT_SNAPSHOT_EVERY = 100_000;
+
+    private final Path directory;
+    private final long snapshotEvery;
+    private final LinkedHashMap<String, String> courses = new LinkedHashMap<>();
+    private final ExecutorService snapshotWriter = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "roster-snapshot-writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private StudentStore store;
+    private RosterJournal journal;
+    private long generation;
+    private long changesSinceSnapshot;
+    private boolean hasState;
+
+    // Followers get a copy of every record, null when nothing is shipped
+    private RosterReplicationLog shipping;
+
+    public RosterPersistence(Path directory) {
+        this(directory, DEFAULT_SNAPSHOT_EVERY);
+    }
+
+    public RosterPersistence(Path directory, long snapshotEvery) {
+        this.directory = directory;
+        this.snapshotEvery = snapshotEvery;
+    }
+
+    // Load the newest snapshot and replay the journal into the store, then
+    // start recording the store's changes
+    public void recover(StudentStore store) throws IOException {
+        Files.createDirectories(directory);
+        this.store = store;
+
+        TreeMap<Long, Path> snapshots = list("snapshot-", ".bin");
+        TreeMap<Long, Path> journals = list("journal-", ".log");
+
+        long first = 0;
+        if(!snapshots.isEmpty()) {
+            RosterSnapshot snapshot = RosterSnapshot.read(snapshots.lastEntry().getValue(), store);
+            courses.putAll(snapshot.courses);
+            first = snapshot.generation;
+            hasState = true;
+        }
+
+        generation = first;
+        for(Map.Entry<Long, Path> entry : journals.tailMap(first, true).entrySet()) {
+            if(RosterJournal.replay(entry.getValue(), this::apply) > 0) {
+                hasState = true;
+            }
+            generation = entry.getKey();
+        }
+
+        // Always start a fresh journal file, a torn tail in the last one stays behind
+        generation++;
+        journal = new RosterJournal(journalFile(generation), COMMIT_INTERVAL_MILLIS);
+        store.addListener(this);
+    }
+
+    private void apply(byte op, String[] fields) {
+        switch(op) {
+            case RosterJournal.ADD_STUDENT:
+                Student student = new Student(fields[0], fields[1], fields[2], fields[3]);
+                student.grade = fields[4];
+                store.add(student);
+                break;
+            case RosterJournal.DELETE_STUDENT:
+                store.remove(fields[0]);
+                break;
+            case RosterJournal.SET_GRADE:
+                store.setGrade(fields[0], fields[1]);
+                break;
+            case RosterJournal.REASSIGN_COURSE:
+                store.reassignCourse(fields[0], fields[1]);
+                break;
+            case RosterJournal.ADD_COURSE:
+                courses.put(fields[0], "");
+                break;
+            case RosterJournal.DESCRIBE_COURSE:
+                courses.replace(fields[0], fields[1]);
+                break;
+            case RosterJournal.REMOVE_COURSE:
+                courses.remove(fields[0]);
+                break;
+        }
+    }
+
+    // True if anything was loaded from disk
+    public boolean hasState() {
+        return hasState;
+    }
+
+    // Courses and their descriptions as recovered from disk
+    public Map<String, String> courses() {
+        return new LinkedHashMap<>(courses);
+    }
+
+    // Course changes are recorded under the store's lock, like student
+    // changes, so the journal and checkpoints follow one order
+    public void courseAdded(String course, String description) {
+        synchronized(store) {
+            courses.put(course, "");
+            record(RosterJournal.ADD_COURSE, course);
+            if(!description.isEmpty()) {
+                courseDescribed(course, description);
+            }
+        }
+    }
+
+    public void courseDescribed(String course, String description) {
+        synchronized(store) {
+            courses.replace(course, description);
+            record(RosterJournal.DESCRIBE_COURSE, course, description);
+        }
+    }
+
+    public void courseRemoved(String course) {
+        synchronized(store) {
+            courses.remove(course);
+            record(RosterJournal.REMOVE_COURSE, course);
+        }
+    }
+
+    @Override
+    public void studentAdded(int row, Student student) {
+        record(RosterJournal.ADD_STUDENT, student.id, student.name, student.course, student.email, student.grade);
+    }
+
+    @Override
+    public void gradeChanged(int row, Student student, String oldGrade) {
+        record(RosterJournal.SET_GRADE, student.id, student.grade);
+    }
+
+    // A batch is journaled in full before a checkpoint is considered, so the
+    // checkpoint never splits it across journal generations
+    @Override
+    public void gradesChanged(int[] rows, List<Student> students, List<String> oldGrades) {
+        for(Student student : students) {
+            append(RosterJournal.SET_GRADE, student.id, student.grade);
+        }
+        changed(students.size());
+    }
+
+    @Override
+    public void courseReassigned(int[] rows, List<Student> students, String oldCourse) {
+        record(RosterJournal.REASSIGN_COURSE, oldCourse, students.get(0).course);
+    }
+
+    @Override
+    public void studentRemoved(int row, int lastRow, Student student) {
+        record(RosterJournal.DELETE_STUDENT, student.id);
+    }
+
+    private void record(byte op, String... fields) {
+        append(op, fields);
+        changed(1);
+    }
+
+    private void append(byte op, String... fields) {
+        journal.append(op, fields);
+        if(shipping != null) {
+            shipping.append(op, fields);
+        }
+    }
+
+    // Completes once every change recorded so far is on disk. Before
+    // recover() there is no journal and nothing to wait for
+    public CompletableFuture<Void> durable() {
+        RosterJournal current = journal;
+        return current == null ? CompletableFuture.completedFuture(null) : current.durable();
+    }
+
+    // Copy every record journaled from now on into log as well. Only once the
+    // roster is recovered, the snapshot followers start from covers the rest
+    public void ship(RosterReplicationLog log) {
+        synchronized(store) {
+            shipping = log;
+        }
+    }
+
+    // The roster and its courses as of the last record shipped, taken under
+    // the store's lock so no change falls between them
+    RosterReplicationLog.Snapshot shippedState() {
+        synchronized(store) {
+            return new RosterReplicationLog.Snapshot(shipping.head(), store.snapshot(), courses());
+        }
+    }
+
+    private void changed(int count) {
+        changesSinceSnapshot += count;
+        if(changesSinceSnapshot >= snapshotEvery) {
+            try {
+                checkpoint();
+            } catch(IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    // Switch to a new journal generation and write the snapshot for it in the
+    // background. Runs under the store's lock, so no change can land between
+    // the roster view and the start of the new journal
+    public void checkpoint() throws IOException {
+        RosterView roster;
+        Map<String, String> snapshotCourses;
+        long snapshotGeneration;
+        synchronized(store) {
+            changesSinceSnapshot = 0;
+            snapshotGeneration = ++generation;
+            journal.rollTo(journalFile(snapshotGeneration));
+
+            roster = store.snapshot();
+            snapshotCourses = courses();
+        }
+        snapshotWriter.execute(() -> {
+            try {
+                RosterSnapshot.write(snapshotFile(snapshotGeneration), snapshotGeneration, snapshotCourses, roster);
+                deleteBefore(snapshotGeneration);
+            } catch(IOException e) {
+                // The journal still holds every change, the next checkpoint retries
+                System.err.println("Could not write roster snapshot: " + e);
+            }
+        });
+    }
+
+    // Remove snapshots and journals that the given snapshot makes redundant
+    private void deleteBefore(long snapshotGeneration) throws IOException {
+        for(Path file : list("snapshot-", ".bin").headMap(snapshotGeneration).values()) {
+            Files.deleteIfExists(file);
+        }
+        for(Path file : list("journal-", ".log").headMap(snapshotGeneration).values()) {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    // Leaves a snapshot of the final state behind, so the next start reads a
+    // single file instead of replaying the journal
+    @Override
+    public void close() throws IOException {
+        if(journal != null && changesSinceSnapshot > 0) {
+            checkpoint();
+        }
+        snapshotWriter.shutdown();
+        try {
+            snapshotWriter.awaitTermination(1, TimeUnit.MINUTES);
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if(journal != null) {
+            journal.close();
+        }
+    }
+
+    private Path journalFile(long generation) {
+        return directory.resolve("journal-" + generation + ".log");
+    }
+
+    private Path snapshotFile(long generation) {
+        return directory.resolve("snapshot-" + generation + ".bin");
+    }
+
+    private TreeMap<Long, Path> list(String prefix, String suffix) throws IOException {
+        TreeMap<Long, Path> files = new TreeMap<>();
+        try(DirectoryStream<Path> stream = Files.newDirectoryStream(directory, prefix + "*" + suffix)) {
+            for(Path file : stream) {
+                String name = file.getFileName().toString();
+                try {
+                    files.put(Long.parseLong(name.substring(prefix.length(), name.length() - suffix.length())), file);
+                } catch(NumberFormatException e) {
+                    // Not one of ours
+                }
+            }
+        }
+        return files;
+    }
+}
@@ -0,0 +1,149 @@
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+// Filter of the View Students query: students in any of the courses, with any
+// of the grades and with an ID in a range. An empty set or a missing bound
+// matches everything. IDs compare in natural order, digit runs by their value,
+// so "S99" comes before "S100"
+public class RosterQuery {
+
+    final Set<String> courses;
+    final Set<String> grades;
+    final String idFrom;
+    final String idTo;
+
+    // Bounds are inclusive, null or empty for none
+    public RosterQuery(Collection<String> courses, Collection<String> grades, String idFrom, String idTo) {
+        for(String grade : grades) {
+            Student.gradeCode(grade);
+        }
+        this.courses = Collections.unmodifiableSet(new LinkedHashSet<>(courses));
+        this.grades = Collections.unmodifiableSet(new LinkedHashSet<>(grades));
+        this.idFrom = idFrom == null || idFrom.isEmpty() ? null : idFrom;
+        this.idTo = idTo == null || idTo.isEmpty() ? null : idTo;
+    }
+
+    public boolean hasIdRange() {
+        return idFrom != null || idTo != null;
+    }
+
+    public boolean matchesId(String id) {
+        return (idFrom == null || compareIds(id, idFrom) >= 0) && (idTo == null || compareIds(id, idTo) <= 0);
+    }
+
+    // Natural order: runs of digits compare by value, everything else by character
+    static int compareIds(String a, String b) {
+        int i = 0;
+        int j = 0;
+        while(i < a.length() && j < b.length()) {
+            char x = a.charAt(i);
+            char y = b.charAt(j);
+            if(isDigit(x) && isDigit(y)) {
+                int endA = digitsEnd(a, i);
+                int endB = digitsEnd(b, j);
+                // Leading zeros do not count, then the longer number is larger
+                while(i < endA - 1 && a.charAt(i) == '0') {
+                    i++;
+                }
+                while(j < endB - 1 && b.charAt(j) == '0') {
+                    j++;
+                }
+                if(endA - i != endB - j) {
+                    return (endA - i) - (endB - j);
+                }
+                for(; i < endA; i++, j++) {
+                    if(a.charAt(i) != b.charAt(j)) {
+                        return a.charAt(i) - b.charAt(j);
+                    }
+                }
+            } else if(x != y) {
+                return x - y;
+            } else {
+                i++;
+                j++;
+            }
+        }
+        return (a.length() - i) - (b.length() - j);
+    }
+
+    // Prefix of an ID's natural order packed into a long, for comparing with
+    // Long.compareUnsigned: a smaller key means a smaller ID, equal keys need
+    // compareIds. Bytes, most significant first:
+    //   ASCII character other than a digit: the character
+    //   digit run: '0', the digit count without leading zeros, then two digits per byte
+    //   any other character: 0xFF, and the key ends there
+    // Digits sort between the characters below and above them, like the
+    // first digit of the run does in compareIds
+    static long idKey(String id) {
+        long key = 0;
+        int bytes = 0;
+        int i = 0;
+        while(i < id.length() && bytes < 8) {
+            char c = id.charAt(i);
+            if(isDigit(c)) {
+                int end = digitsEnd(id, i);
+                while(i < end - 1 && id.charAt(i) == '0') {
+                    i++;
+                }
+                key = key << 8 | '0';
+                bytes++;
+                if(bytes < 8) {
+                    key = key << 8 | Math.min(end - i, 0xFF);
+                    bytes++;
+                }
+                if(end - i > 0xFF) {
+                    break;
+                }
+                // Both numbers have the same digit count when this is compared,
+                // so they are split into pairs the same way
+                while(i < end && bytes < 8) {
+                    int pair = id.charAt(i++) - '0';
+                    if(i < end) {
+                        pair = pair * 10 + id.charAt(i++) - '0';
+                    }
+                    key = key << 8 | pair;
+                    bytes++;
+                }
+            } else if(c < 0x80) {
+                key = key << 8 | c;
+                bytes++;
+                i++;
+            } else {
+                key = key << 8 | 0xFF;
+                bytes++;
+                break;
+            }
+        }
+        // Whatever ran out first sorts first
+        return bytes == 8 ? key : key << (8 * (8 - bytes));
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder();
+        if(!courses.isEmpty()) {
+            text.append(String.join(" or ", courses));
+        }
+        if(!grades.isEmpty()) {
+            text.append(text.length() > 0 ? ", " : "").append("grade ").append(String.join(" or ", grades));
+        }
+        if(hasIdRange()) {
+            text.append(text.length() > 0 ? ", " : "").append("ID ")
+                    .append(idFrom != null ? idFrom : "first").append(" to ").append(idTo != null ? idTo : "last");
+        }
+        return text.length() > 0 ? text.toString() : "all students";
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static int digitsEnd(String s, int from) {
+        while(from < s.length() && isDigit(s.charAt(from))) {
+            from++;
+        }
+        return from;
+    }
+}
@@ -0,0 +1,181 @@
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+// The roster's recent changes in memory, numbered from 1, for shipping to
+// followers. RosterPersistence appends every record it journals, under the
+// store's lock, so the numbers follow the store's order. Records use the
+// journal's encoding, the op then the fields, without length or CRC.
+//
+// Records are kept in segments of up to SEGMENT_BYTES. The written part of a
+// segment never changes, so senders copy it to their sockets without holding
+// the lock. Once more than retainBytes are held the oldest segments are
+// dropped; a follower that still needs them starts over from a snapshot
+public class RosterReplicationLog {
+
+    static final int SEGMENT_BYTES = 1 << 20;
+    private static final int SEGMENT_RECORDS = 16384;
+
+    // Consecutive records of one segment
+    static class Batch {
+        final Segment segment;
+        final int from;
+        final int to;
+
+        Batch(Segment segment, int from, int to) {
+            this.segment = segment;
+            this.from = from;
+            this.to = to;
+        }
+
+        long first() {
+            return segment.first + from;
+        }
+
+        int count() {
+            return to - from;
+        }
+
+        int offset() {
+            return segment.offsets[from];
+        }
+
+        int length() {
+            return segment.offsets[to] - segment.offsets[from];
+        }
+
+        byte[] bytes() {
+            return segment.bytes;
+        }
+    }
+
+    // The roster with its courses as of one change, for a follower that starts over
+    static class Snapshot {
+        final long sequence;
+        final RosterView roster;
+        final Map<String, String> courses;
+
+        Snapshot(long sequence, RosterView roster, Map<String, String> courses) {
+            this.sequence = sequence;
+            this.roster = roster;
+            this.courses = courses;
+        }
+    }
+
+    static class Segment {
+        final long first;
+        final byte[] bytes = new byte[SEGMENT_BYTES];
+        final int[] offsets = new int[SEGMENT_RECORDS + 1];
+        final long[] appended = new long[SEGMENT_RECORDS];
+        int count;
+
+        Segment(long first) {
+            this.first = first;
+        }
+    }
+
+    // Byte buffer whose contents can be copied without a new array
+    private static class Buffer extends ByteArrayOutputStream {
+        Buffer(int size) {
+            super(size);
+        }
+
+        void copyTo(byte[] target, int at) {
+            System.arraycopy(buf, 0, target, at, count);
+        }
+    }
+
+    // Tells followers whether their numbers are from this log; a restarted
+    // primary numbers from 1 again
+    private final long epoch = ThreadLocalRandom.current().nextLong();
+    private final long retainBytes;
+    private final ArrayDeque<Segment> segments = new ArrayDeque<>();
+    private final Buffer record = new Buffer(256);
+    private final DataOutputStream recordOut = new DataOutputStream(record);
+    private long head;
+
+    public RosterReplicationLog(long retainBytes) {
+        this.retainBytes = Math.max(retainBytes, SEGMENT_BYTES);
+        segments.add(new Segment(1));
+    }
+
+    long epoch() {
+        return epoch;
+    }
+
+    // Number of the last change, 0 if there is none yet
+    public synchronized long head() {
+        return head;
+    }
+
+    // Number of the oldest change still kept, head() + 1 if none is
+    public synchronized long first() {
+        return segments.getFirst().first;
+    }
+
+    public synchronized void append(byte op, String... fields) {
+        try {
+            record.reset();
+            recordOut.writeByte(op);
+            for(String field : fields) {
+                RosterJournal.writeText(recordOut, field);
+            }
+        } catch(IOException e) {
+            // Writing to a memory buffer does not fail
+            throw new UncheckedIOException(e);
+        }
+
+        Segment last = segments.getLast();
+        if(last.count == SEGMENT_RECORDS || last.offsets[last.count] + record.size() > SEGMENT_BYTES) {
+            last = new Segment(head + 1);
+            segments.add(last);
+            if((long) segments.size() * SEGMENT_BYTES > retainBytes) {
+                segments.removeFirst();
+            }
+        }
+        int at = last.offsets[last.count];
+        record.copyTo(last.bytes, at);
+        last.appended[last.count] = System.currentTimeMillis();
+        last.offsets[++last.count] = at + record.size();
+        head++;
+        notifyAll();
+    }
+
+    // The changes from number from on, as many as one segment holds. Waits up
+    // to waitMillis for one to arrive; returns null if none did, or if from is
+    // older than first()
+    public synchronized Batch read(long from, long waitMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + waitMillis;
+        while(from > head) {
+            long left = deadline - System.currentTimeMillis();
+            if(left <= 0) {
+                return null;
+            }
+            wait(left);
+        }
+        Segment segment = find(from);
+        return segment == null ? null : new Batch(segment, (int) (from - segment.first), segment.count);
+    }
+
+    // Wall clock time change sequence was appended, or -1 if it is not kept
+    public synchronized long appendedMillis(long sequence) {
+        Segment segment = sequence <= head ? find(sequence) : null;
+        return segment == null ? -1 : segment.appended[(int) (sequence - segment.first)];
+    }
+
+    // Followers are usually close to the head, so the search starts there
+    private Segment find(long sequence) {
+        for(Iterator<Segment> newest = segments.descendingIterator(); newest.hasNext(); ) {
+            Segment segment = newest.next();
+            if(sequence >= segment.first) {
+                return sequence < segment.first + segment.count ? segment : null;
+            }
+        }
+        return null;
+    }
+}
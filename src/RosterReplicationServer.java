@@ -0,0 +1,225 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Ships the roster's change log to follower instances over TCP (see
+// RosterFollower). Every follower gets a virtual thread that sends it frames
+// and one that reads its acknowledgements.
+//
+// Protocol, in DataOutputStream encoding:
+//   follower -> primary  MAGIC, the epoch of its log and the number of the
+//                        last change it applied (0 and 0 when it has none)
+//   primary -> follower  SNAPSHOT  epoch, then a RosterSnapshot whose
+//                                  generation is the number of the last change
+//                                  it holds; first, if the follower's numbers
+//                                  are from another epoch or no longer kept
+//                        CHANGES   first number, count, head, length, records
+//                        HEARTBEAT head, after HEARTBEAT_MILLIS without changes
+//   follower -> primary  the number of the last change applied, after every
+//                        batch
+//
+// Replication lag is how far the slowest connected follower is behind, in
+// changes and in how long ago the oldest change it misses was made
+public class RosterReplicationServer implements AutoCloseable {
+
+    static final int MAGIC = 0x534D5231; // "SMR1"
+    static final byte SNAPSHOT = 1;
+    static final byte CHANGES = 2;
+    static final byte HEARTBEAT = 3;
+    static final long HEARTBEAT_MILLIS = 1000;
+
+    // Changes kept for followers that fall behind or reconnect
+    private static final long DEFAULT_RETAIN_BYTES = 64L << 20;
+
+    private final RosterPersistence persistence;
+    private final RosterReplicationLog log;
+    private final ServerSocket server;
+    private final Set<Follower> followers = ConcurrentHashMap.newKeySet();
+    private Thread acceptor;
+    private volatile boolean closed;
+
+    // Listens on address right away; followers are only served after start()
+    public RosterReplicationServer(RosterPersistence persistence, InetSocketAddress address) throws IOException {
+        this(persistence, address, DEFAULT_RETAIN_BYTES);
+    }
+
+    public RosterReplicationServer(RosterPersistence persistence, InetSocketAddress address, long retainBytes)
+            throws IOException {
+        this.persistence = persistence;
+        this.log = new RosterReplicationLog(retainBytes);
+        this.server = new ServerSocket();
+        server.bind(address, 64);
+    }
+
+    // Start shipping, once the roster has been recovered
+    public synchronized void start() {
+        if(acceptor != null) {
+            return;
+        }
+        persistence.ship(log);
+        acceptor = new Thread(this::accept, "roster-replication");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    public InetSocketAddress address() {
+        return (InetSocketAddress) server.getLocalSocketAddress();
+    }
+
+    // Number of the last change made on this roster
+    public long head() {
+        return log.head();
+    }
+
+    public int followers() {
+        return followers.size();
+    }
+
+    // Changes the slowest connected follower has not applied yet
+    public long lagChanges() {
+        long head = log.head();
+        long lag = 0;
+        for(Follower follower : followers) {
+            lag = Math.max(lag, head - follower.acknowledged);
+        }
+        return lag;
+    }
+
+    // Milliseconds since the oldest change some connected follower has not
+    // applied yet was made
+    public long lagMillis() {
+        long head = log.head();
+        long oldest = head;
+        for(Follower follower : followers) {
+            oldest = Math.min(oldest, follower.acknowledged);
+        }
+        if(oldest >= head) {
+            return 0;
+        }
+        long appended = log.appendedMillis(Math.max(oldest + 1, log.first()));
+        return appended < 0 ? 0 : Math.max(0, System.currentTimeMillis() - appended);
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        server.close();
+        for(Follower follower : followers) {
+            follower.close();
+        }
+    }
+
+    private void accept() {
+        while(!closed) {
+            try {
+                Socket socket = server.accept();
+                socket.setTcpNoDelay(true);
+                Follower follower = new Follower(socket);
+                Thread.ofVirtual().name("roster-replication-" + socket.getRemoteSocketAddress()).start(follower::send);
+            } catch(IOException e) {
+                if(!closed) {
+                    System.err.println("Replication stopped accepting followers: " + e);
+                }
+                return;
+            }
+        }
+    }
+
+    private class Follower {
+        private final Socket socket;
+        private volatile long acknowledged;
+
+        Follower(Socket socket) {
+            this.socket = socket;
+        }
+
+        void send() {
+            try {
+                DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 1 << 16));
+                if(in.readInt() != MAGIC) {
+                    return;
+                }
+                long epoch = in.readLong();
+                long applied = in.readLong();
+
+                // Numbers from another run of the primary, or changes no longer
+                // kept: start over from the roster as it is
+                if(epoch != log.epoch() || applied > log.head() || applied + 1 < log.first()) {
+                    RosterReplicationLog.Snapshot snapshot = persistence.shippedState();
+                    out.writeByte(SNAPSHOT);
+                    out.writeLong(log.epoch());
+                    RosterSnapshot.write(out, snapshot.sequence, snapshot.courses, snapshot.roster);
+                    out.flush();
+                    applied = snapshot.sequence;
+                }
+                acknowledged = applied;
+                followers.add(this);
+                Thread.ofVirtual().name("roster-replication-acks").start(() -> readAcks(in));
+
+                long next = applied + 1;
+                while(!closed) {
+                    RosterReplicationLog.Batch batch = log.read(next, HEARTBEAT_MILLIS);
+                    if(batch == null) {
+                        if(next < log.first()) {
+                            // Fell too far behind while sending, the follower
+                            // reconnects and starts over
+                            return;
+                        }
+                        out.writeByte(HEARTBEAT);
+                        out.writeLong(log.head());
+                        out.flush();
+                        continue;
+                    }
+                    out.writeByte(CHANGES);
+                    out.writeLong(batch.first());
+                    out.writeInt(batch.count());
+                    out.writeLong(log.head());
+                    out.writeInt(batch.length());
+                    out.write(batch.bytes(), batch.offset(), batch.length());
+                    out.flush();
+                    next += batch.count();
+                }
+            } catch(EOFException e) {
+                // The follower went away
+            } catch(IOException e) {
+                // Closed here when the follower stops acknowledging
+                if(!closed && !socket.isClosed()) {
+                    System.err.println("Replication to " + socket.getRemoteSocketAddress() + " stopped: " + e);
+                }
+            } catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                followers.remove(this);
+                close();
+            }
+        }
+
+        private void readAcks(DataInputStream in) {
+            try {
+                while(true) {
+                    acknowledged = in.readLong();
+                }
+            } catch(IOException e) {
+                // Closed, the sender finds out on its next write
+                close();
+            }
+        }
+
+        void close() {
+            try {
+                socket.close();
+            } catch(IOException e) {
+                // Closing anyway
+            }
+        }
+    }
+}
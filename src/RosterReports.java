@@ -0,0 +1,444 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+import java.util.function.Function;
+import java.util.function.IntConsumer;
+
+// Term-end reports from one snapshot, as HTML or plain text. Every course
+// gets a grade report, with the grade distribution and its students, and a
+// transcript file holding the transcript of each of its students; an index
+// lists the courses. Layout of the output directory:
+//   index.html                       courses with their counts and links
+//   courses/<course>.html            grade report
+//   transcripts/<course>.html        one transcript per student, a page each
+//
+// The rows are partitioned by course first, then the courses are written on
+// the fork/join pool, each by one task that streams both of its files through
+// a small buffer. Nothing is rendered ahead of the writers, so memory stays
+// at a few int arrays however large the roster is.
+//
+// Transcripts are grouped per course rather than written one file per student,
+// a million tiny files take longer to create than to fill
+public class RosterReports {
+
+    public enum Format {
+        HTML("html"), TEXT("txt");
+
+        final String extension;
+
+        Format(String extension) {
+            this.extension = extension;
+        }
+    }
+
+    // What was written
+    public static class Summary {
+        public final int courses;
+        public final int students;
+        public final Path index;
+
+        Summary(int courses, int students, Path index) {
+            this.courses = courses;
+            this.students = students;
+            this.index = index;
+        }
+    }
+
+    // Students written between progress updates and checks for cancelling
+    private static final int STEP = 1024;
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    // Column widths of the text grade report
+    private static final int ID_WIDTH = 14;
+    private static final int NAME_WIDTH = 28;
+    private static final int EMAIL_WIDTH = 34;
+
+    private final RosterView view;
+    private final Function<String, String> descriptions;
+    private final Format format;
+    private final Path directory;
+    private final BooleanSupplier cancelled;
+    private final IntConsumer progress;
+    private final String issued = LocalDate.now().toString();
+    private final AtomicLong done = new AtomicLong();
+
+    // Rows of course c are rows[starts[c]] up to rows[starts[c + 1]]
+    private final int[] rows;
+    private final int[] starts;
+
+    // Courses with students, by code, and the file name of each
+    private final int[] courses;
+    private final String[] fileNames;
+
+    private RosterReports(RosterView view, Function<String, String> descriptions, Format format, Path directory,
+                          BooleanSupplier cancelled, IntConsumer progress) {
+        this.view = view;
+        this.descriptions = descriptions;
+        this.format = format;
+        this.directory = directory;
+        this.cancelled = cancelled;
+        this.progress = progress;
+
+        // Counting sort of the rows by course code
+        String[] names = view.courseNames();
+        starts = new int[names.length + 1];
+        for(int row = 0; row < view.size(); row++) {
+            starts[view.courseCode(row) + 1]++;
+        }
+        int withStudents = 0;
+        for(int code = 0; code < names.length; code++) {
+            withStudents += starts[code + 1] > 0 ? 1 : 0;
+            starts[code + 1] += starts[code];
+        }
+        rows = new int[view.size()];
+        int[] next = Arrays.copyOf(starts, names.length);
+        for(int row = 0; row < view.size(); row++) {
+            rows[next[view.courseCode(row)]++] = row;
+        }
+
+        courses = new int[withStudents];
+        fileNames = new String[names.length];
+        HashSet<String> taken = new HashSet<>();
+        int at = 0;
+        for(int code = 0; code < names.length; code++) {
+            if(starts[code + 1] > starts[code]) {
+                courses[at++] = code;
+                fileNames[code] = fileName(names[code], taken);
+            }
+        }
+    }
+
+    // Write the reports into directory, which is created if needed. Progress
+    // is reported in percent from the pool's threads; once cancelled returns
+    // true the writing stops with a CancellationException, leaving the files
+    // written so far
+    public static Summary write(RosterView view, Function<String, String> descriptions, Format format,
+                                Path directory, BooleanSupplier cancelled, IntConsumer progress) throws IOException {
+        RosterReports reports = new RosterReports(view, descriptions, format, directory, cancelled, progress);
+        try {
+            return reports.run();
+        } catch(UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private Summary run() throws IOException {
+        Files.createDirectories(directory.resolve("courses"));
+        Files.createDirectories(directory.resolve("transcripts"));
+        ForkJoinPool.commonPool().invoke(new Courses(0, courses.length));
+
+        Path index = directory.resolve("index." + format.extension);
+        try(Writer out = open(index)) {
+            writeIndex(out);
+        }
+        progress.accept(100);
+        return new Summary(courses.length, view.size(), index);
+    }
+
+    // Splits the courses down to one per task
+    private class Courses extends RecursiveAction {
+        private final int from;
+        private final int to;
+
+        Courses(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if(to - from > 1) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new Courses(from, middle), new Courses(middle, to));
+            } else if(to > from) {
+                try {
+                    writeCourse(courses[from]);
+                } catch(IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        }
+    }
+
+    private void writeCourse(int code) throws IOException {
+        checkCancelled();
+        String course = view.courseNames()[code];
+        String description = descriptions.apply(course);
+
+        // Students in natural ID order
+        int count = starts[code + 1] - starts[code];
+        String[] ids = new String[count];
+        Integer[] order = new Integer[count];
+        long[] grades = new long[Student.GRADES.length];
+        for(int i = 0; i < count; i++) {
+            int row = rows[starts[code] + i];
+            ids[i] = view.valueAt(row, StudentStore.ID);
+            order[i] = i;
+            grades[view.gradeCode(row)]++;
+        }
+        Arrays.sort(order, (a, b) -> RosterQuery.compareIds(ids[a], ids[b]));
+
+        String file = fileNames[code] + "." + format.extension;
+        try(Writer report = open(directory.resolve("courses").resolve(file));
+            Writer transcripts = open(directory.resolve("transcripts").resolve(file))) {
+            startReport(report, course, description, grades, count);
+            startTranscripts(transcripts, course);
+            for(int i = 0; i < count; i++) {
+                int row = rows[starts[code] + order[i]];
+                String name = view.valueAt(row, StudentStore.NAME);
+                String email = view.valueAt(row, StudentStore.EMAIL);
+                String grade = Student.GRADES[view.gradeCode(row)];
+                writeReportRow(report, ids[order[i]], name, email, grade);
+                writeTranscript(transcripts, ids[order[i]], name, email, course, description, grade);
+                if((i + 1) % STEP == 0) {
+                    checkCancelled();
+                    progress(STEP);
+                }
+            }
+            endReport(report);
+            endTranscripts(transcripts);
+        }
+        progress(count % STEP);
+    }
+
+    private void startReport(Writer out, String course, String description, long[] grades, int count) throws IOException {
+        long ungraded = grades[Student.gradeCode("Incomplete")] + grades[Student.NOT_GRADED];
+        String completion = percent(count - ungraded, count);
+        if(format == Format.HTML) {
+            startPage(out, course + " - Grade Report");
+            out.write("<h1>");
+            html(out, course);
+            out.write("</h1>\n");
+            if(description != null && !description.isEmpty()) {
+                out.write("<p>");
+                html(out, description);
+                out.write("</p>\n");
+            }
+            out.write("<p>" + count + " students, " + completion + " with a final grade. Issued " + issued + ".</p>\n");
+            out.write("<h2>Grades</h2>\n<table>\n<tr><th>Grade</th><th>Students</th><th>Share</th></tr>\n");
+            for(int grade = 0; grade < grades.length; grade++) {
+                out.write("<tr><td>" + Student.GRADES[grade] + "</td><td>" + grades[grade] + "</td><td>"
+                        + percent(grades[grade], count) + "</td></tr>\n");
+            }
+            out.write("</table>\n<h2>Students</h2>\n<table>\n"
+                    + "<tr><th>ID</th><th>Name</th><th>Email</th><th>Grade</th></tr>\n");
+        } else {
+            out.write("GRADE REPORT: " + course + "\n");
+            if(description != null && !description.isEmpty()) {
+                out.write(description + "\n");
+            }
+            out.write(count + " students, " + completion + " with a final grade. Issued " + issued + ".\n\n");
+            pad(out, "Grade", NAME_WIDTH / 2);
+            out.write("Students  Share\n");
+            for(int grade = 0; grade < grades.length; grade++) {
+                pad(out, Student.GRADES[grade], NAME_WIDTH / 2);
+                pad(out, Long.toString(grades[grade]), 10);
+                out.write(percent(grades[grade], count) + "\n");
+            }
+            out.write("\n");
+            pad(out, "ID", ID_WIDTH);
+            pad(out, "Name", NAME_WIDTH);
+            pad(out, "Email", EMAIL_WIDTH);
+            out.write("Grade\n");
+        }
+    }
+
+    private void writeReportRow(Writer out, String id, String name, String email, String grade) throws IOException {
+        if(format == Format.HTML) {
+            out.write("<tr><td>");
+            html(out, id);
+            out.write("</td><td>");
+            html(out, name);
+            out.write("</td><td>");
+            html(out, email);
+            out.write("</td><td>");
+            out.write(grade);
+            out.write("</td></tr>\n");
+        } else {
+            pad(out, id, ID_WIDTH);
+            pad(out, name, NAME_WIDTH);
+            pad(out, email, EMAIL_WIDTH);
+            out.write(grade);
+            out.write('\n');
+        }
+    }
+
+    private void endReport(Writer out) throws IOException {
+        if(format == Format.HTML) {
+            out.write("</table>\n</body>\n</html>\n");
+        }
+    }
+
+    private void startTranscripts(Writer out, String course) throws IOException {
+        if(format == Format.HTML) {
+            startPage(out, course + " - Transcripts");
+        }
+    }
+
+    // One page per student: a section that breaks the page after it, or a
+    // form feed in text
+    private void writeTranscript(Writer out, String id, String name, String email, String course,
+                                 String description, String grade) throws IOException {
+        if(format == Format.HTML) {
+            out.write("<section>\n<h1>Transcript</h1>\n<table>\n<tr><th>Student ID</th><td>");
+            html(out, id);
+            out.write("</td></tr>\n<tr><th>Name</th><td>");
+            html(out, name);
+            out.write("</td></tr>\n<tr><th>Email</th><td>");
+            html(out, email);
+            out.write("</td></tr>\n</table>\n<table>\n<tr><th>Course</th><th>Grade</th></tr>\n<tr><td>");
+            html(out, course);
+            if(description != null && !description.isEmpty()) {
+                out.write("<br><small>");
+                html(out, description);
+                out.write("</small>");
+            }
+            out.write("</td><td>");
+            out.write(grade);
+            out.write("</td></tr>\n</table>\n<p>Issued ");
+            out.write(issued);
+            out.write("</p>\n</section>\n");
+        } else {
+            out.write("TRANSCRIPT\n\nStudent ID: ");
+            out.write(id);
+            out.write("\nName:       ");
+            out.write(name);
+            out.write("\nEmail:      ");
+            out.write(email);
+            out.write("\n\nCourse:     ");
+            out.write(course);
+            out.write("\nGrade:      ");
+            out.write(grade);
+            out.write("\n\nIssued ");
+            out.write(issued);
+            out.write("\n\f");
+        }
+    }
+
+    private void endTranscripts(Writer out) throws IOException {
+        if(format == Format.HTML) {
+            out.write("</body>\n</html>\n");
+        }
+    }
+
+    private void writeIndex(Writer out) throws IOException {
+        String[] names = view.courseNames();
+        if(format == Format.HTML) {
+            startPage(out, "Term Reports");
+            out.write("<h1>Term Reports</h1>\n<p>" + view.size() + " students in " + courses.length
+                    + " courses. Issued " + issued + ".</p>\n<table>\n"
+                    + "<tr><th>Course</th><th>Students</th><th>Grade report</th><th>Transcripts</th></tr>\n");
+            for(int code : courses) {
+                // File names only have ASCII letters, digits, '-' and '_', safe in a link
+                String file = fileNames[code] + "." + format.extension;
+                out.write("<tr><td>");
+                html(out, names[code]);
+                out.write("</td><td>" + (starts[code + 1] - starts[code]) + "</td>"
+                        + "<td><a href=\"courses/" + file + "\">Report</a></td>"
+                        + "<td><a href=\"transcripts/" + file + "\">Transcripts</a></td></tr>\n");
+            }
+            out.write("</table>\n</body>\n</html>\n");
+        } else {
+            out.write("TERM REPORTS\n" + view.size() + " students in " + courses.length + " courses. Issued "
+                    + issued + ".\n\n");
+            pad(out, "Course", NAME_WIDTH);
+            pad(out, "Students", 10);
+            out.write("Files\n");
+            for(int code : courses) {
+                pad(out, names[code], NAME_WIDTH);
+                pad(out, Integer.toString(starts[code + 1] - starts[code]), 10);
+                out.write("courses/" + fileNames[code] + ".txt, transcripts/" + fileNames[code] + ".txt\n");
+            }
+        }
+    }
+
+    private static void startPage(Writer out, String title) throws IOException {
+        out.write("<!DOCTYPE html>\n<html>\n<head>\n<meta charset=\"utf-8\">\n<title>");
+        html(out, title);
+        out.write("</title>\n<style>\n"
+                + "body { font-family: sans-serif; }\n"
+                + "table { border-collapse: collapse; margin-bottom: 1em; }\n"
+                + "th, td { border: 1px solid #ccc; padding: 2px 8px; text-align: left; }\n"
+                + "section { page-break-after: always; }\n"
+                + "</style>\n</head>\n<body>\n");
+    }
+
+    // Text with the characters that mean something in HTML escaped
+    private static void html(Writer out, String text) throws IOException {
+        int from = 0;
+        for(int i = 0; i < text.length(); i++) {
+            String entity;
+            switch(text.charAt(i)) {
+                case '&': entity = "&amp;"; break;
+                case '<': entity = "&lt;"; break;
+                case '>': entity = "&gt;"; break;
+                case '"': entity = "&quot;"; break;
+                default: continue;
+            }
+            out.write(text, from, i - from);
+            out.write(entity);
+            from = i + 1;
+        }
+        out.write(text, from, text.length() - from);
+    }
+
+    // Text followed by spaces up to width, and at least one
+    private static void pad(Writer out, String text, int width) throws IOException {
+        out.write(text);
+        for(int i = text.length(); i < width - 1; i++) {
+            out.write(' ');
+        }
+        out.write(' ');
+    }
+
+    private static String percent(long part, long whole) {
+        return whole == 0 ? "0.0%" : String.format(Locale.ROOT, "%.1f%%", part * 100.0 / whole);
+    }
+
+    // Course name made safe for any file system, and unique
+    private static String fileName(String course, HashSet<String> taken) {
+        StringBuilder name = new StringBuilder();
+        for(int i = 0; i < course.length() && name.length() < 80; i++) {
+            char c = course.charAt(i);
+            name.append(c < 0x80 && (Character.isLetterOrDigit(c) || c == '-' || c == '_') ? c : '_');
+        }
+        String base = name.length() > 0 ? name.toString() : "course";
+        String unique = base;
+        // Case insensitive, for the file systems that are
+        for(int n = 2; !taken.add(unique.toLowerCase(Locale.ROOT)); n++) {
+            unique = base + "-" + n;
+        }
+        return unique;
+    }
+
+    private Writer open(Path file) throws IOException {
+        return new BufferedWriter(new OutputStreamWriter(Files.newOutputStream(file), StandardCharsets.UTF_8), BUFFER_SIZE);
+    }
+
+    private void progress(int students) {
+        if(view.size() > 0) {
+            progress.accept((int) (done.addAndGet(students) * 99 / view.size()));
+        }
+    }
+
+    private void checkCancelled() {
+        if(cancelled.getAsBoolean()) {
+            throw new CancellationException();
+        }
+    }
+}
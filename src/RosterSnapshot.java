@@ -0,0 +1,153 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Compact binary image of the roster. Course names and grades repeat a lot,
+// so they are written once into a value table and records refer to them by index.
+// Version 2 stores a description with every course; version 3 writes strings
+// like the journal, as a varint length and UTF-8, instead of with writeUTF.
+// Version 1 and 2 files still load
+public class RosterSnapshot {
+
+    private static final int MAGIC_V1 = 0x534D5331; // "SMS1"
+    private static final int MAGIC_V2 = 0x534D5332; // "SMS2"
+    private static final int MAGIC = 0x534D5333; // "SMS3"
+    private static final int BATCH_SIZE = 10_000;
+
+    final long generation;
+    final Map<String, String> courses;
+
+    RosterSnapshot(long generation, Map<String, String> courses) {
+        this.generation = generation;
+        this.courses = courses;
+    }
+
+    // Write to a temporary file first and move it into place, so a crash never
+    // leaves a half written snapshot under the real name. The directory is
+    // synced after the move, so the new name is on disk before the caller
+    // deletes the journals the snapshot replaces
+    public static void write(Path file, long generation, Map<String, String> courses, RosterView roster)
+            throws IOException {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try(FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            OutputStream stream = new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 20);
+            DataOutputStream out = new DataOutputStream(stream);
+            write(out, generation, courses, roster);
+            out.flush();
+            channel.force(true);
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        syncDirectory(file.toAbsolutePath().getParent());
+    }
+
+    // Windows cannot open a directory as a channel, there the rename is left
+    // to the file system
+    private static void syncDirectory(Path directory) throws IOException {
+        if(System.getProperty("os.name").startsWith("Windows")) {
+            return;
+        }
+        try(FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        }
+    }
+
+    // The snapshot format on any stream, replication sends it to followers
+    static void write(DataOutputStream out, long generation, Map<String, String> courses, RosterView roster)
+            throws IOException {
+        // The value table holds the roster's course names followed by the grades,
+        // so the codes the store already uses translate directly
+        String[] courseNames = roster.courseNames();
+        if(courseNames.length + Student.GRADES.length > 0xFFFF) {
+            throw new IOException("Too many distinct course and grade values for a snapshot");
+        }
+
+        out.writeInt(MAGIC);
+        out.writeLong(generation);
+
+        out.writeInt(courses.size());
+        for(Map.Entry<String, String> course : courses.entrySet()) {
+            RosterJournal.writeText(out, course.getKey());
+            RosterJournal.writeText(out, course.getValue());
+        }
+
+        out.writeInt(courseNames.length + Student.GRADES.length);
+        for(String value : courseNames) {
+            RosterJournal.writeText(out, value);
+        }
+        for(String value : Student.GRADES) {
+            RosterJournal.writeText(out, value);
+        }
+
+        out.writeInt(roster.size());
+        for(int row = 0; row < roster.size(); row++) {
+            RosterJournal.writeText(out, roster.valueAt(row, StudentStore.ID));
+            RosterJournal.writeText(out, roster.valueAt(row, StudentStore.NAME));
+            RosterJournal.writeText(out, roster.valueAt(row, StudentStore.EMAIL));
+            out.writeShort(roster.courseCode(row));
+            out.writeShort(courseNames.length + roster.gradeCode(row));
+        }
+    }
+
+    // Load a snapshot, adding its students to the store in batches as they are read
+    public static RosterSnapshot read(Path file, StudentStore store) throws IOException {
+        try(InputStream stream = new BufferedInputStream(Files.newInputStream(file), 1 << 20)) {
+            return read(new DataInputStream(stream), store, "Not a roster snapshot: " + file);
+        }
+    }
+
+    static RosterSnapshot read(DataInputStream in, StudentStore store, String notASnapshot) throws IOException {
+        int magic = in.readInt();
+        if(magic != MAGIC && magic != MAGIC_V2 && magic != MAGIC_V1) {
+            throw new IOException(notASnapshot);
+        }
+        boolean varints = magic == MAGIC;
+        long generation = in.readLong();
+
+        int courseCount = in.readInt();
+        LinkedHashMap<String, String> courses = new LinkedHashMap<>();
+        for(int i = 0; i < courseCount; i++) {
+            String course = readText(in, varints);
+            courses.put(course, magic != MAGIC_V1 ? readText(in, varints) : "");
+        }
+
+        String[] values = new String[in.readInt()];
+        for(int i = 0; i < values.length; i++) {
+            values[i] = readText(in, varints);
+        }
+
+        int studentCount = in.readInt();
+        ArrayList<Student> batch = new ArrayList<>(BATCH_SIZE);
+        for(int i = 0; i < studentCount; i++) {
+            String id = readText(in, varints);
+            String name = readText(in, varints);
+            String email = readText(in, varints);
+            Student student = new Student(id, name, values[in.readUnsignedShort()], email);
+            student.grade = values[in.readUnsignedShort()];
+            batch.add(student);
+            if(batch.size() == BATCH_SIZE) {
+                store.addAll(batch);
+                batch.clear();
+            }
+        }
+        store.addAll(batch);
+        return new RosterSnapshot(generation, courses);
+    }
+
+    private static String readText(DataInputStream in, boolean varints) throws IOException {
+        return varints ? RosterJournal.readText(in) : in.readUTF();
+    }
+}
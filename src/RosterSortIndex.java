@@ -0,0 +1,162 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+// On-disk sort order of a RosterPageFile by one column: a file of row numbers
+// in ascending order of that column, ignoring case, ties broken by row. Built
+// with an external merge sort, so the heap only ever holds one run of keys,
+// and read through a memory mapping
+public class RosterSortIndex implements AutoCloseable {
+
+    // Keys sorted in memory at a time
+    static final int RUN_ROWS = 1 << 18;
+
+    private static final Comparator<Entry> ORDER =
+            Comparator.comparing((Entry entry) -> entry.key, String.CASE_INSENSITIVE_ORDER)
+                    .thenComparingInt(entry -> entry.row);
+
+    private static class Entry {
+        final String key;
+        final int row;
+
+        Entry(String key, int row) {
+            this.key = key;
+            this.row = row;
+        }
+    }
+
+    // Sorted run file being merged, holding its next entry
+    private static class Run implements AutoCloseable {
+        final DataInputStream in;
+        Entry head;
+
+        Run(Path file) throws IOException {
+            in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16));
+            advance();
+        }
+
+        void advance() throws IOException {
+            try {
+                String key = in.readUTF();
+                head = new Entry(key, in.readInt());
+            } catch(EOFException e) {
+                head = null;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+
+    private final FileChannel channel;
+    private final IntBuffer rows;
+
+    private RosterSortIndex(FileChannel channel) throws IOException {
+        this.channel = channel;
+        this.rows = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()).asIntBuffer();
+    }
+
+    // Sort the page file by a column into the index file. Runs are written next
+    // to it and deleted afterwards
+    public static void build(RosterPageFile pages, int column, Path file) throws IOException {
+        ArrayList<Path> runs = new ArrayList<>();
+        try {
+            Entry[] run = new Entry[Math.min(RUN_ROWS, Math.max(1, pages.size()))];
+            for(int start = 0; start < pages.size(); start += RUN_ROWS) {
+                int count = Math.min(RUN_ROWS, pages.size() - start);
+                for(int i = 0; i < count; i++) {
+                    if(Thread.currentThread().isInterrupted()) {
+                        throw new IOException("Sorting was cancelled");
+                    }
+                    run[i] = new Entry(pages.value(start + i, column), start + i);
+                }
+                Arrays.sort(run, 0, count, ORDER);
+                Path runFile = file.resolveSibling(file.getFileName() + ".run" + runs.size());
+                runs.add(runFile);
+                try(DataOutputStream out = new DataOutputStream(
+                        new BufferedOutputStream(Files.newOutputStream(runFile), 1 << 16))) {
+                    for(int i = 0; i < count; i++) {
+                        out.writeUTF(run[i].key);
+                        out.writeInt(run[i].row);
+                    }
+                }
+            }
+            merge(runs, file);
+        } finally {
+            for(Path run : runs) {
+                Files.deleteIfExists(run);
+            }
+        }
+    }
+
+    public static RosterSortIndex open(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            return new RosterSortIndex(channel);
+        } catch(IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    public int size() {
+        return rows.limit();
+    }
+
+    // Page file row at a position in sort order
+    public int row(int position) {
+        return rows.get(position);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    // K-way merge of the sorted runs into a file of row numbers
+    private static void merge(List<Path> runFiles, Path file) throws IOException {
+        PriorityQueue<Run> heads = new PriorityQueue<>(Math.max(1, runFiles.size()),
+                (a, b) -> ORDER.compare(a.head, b.head));
+        ArrayList<Run> open = new ArrayList<>();
+        try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), 1 << 16))) {
+            for(Path runFile : runFiles) {
+                Run run = new Run(runFile);
+                open.add(run);
+                if(run.head != null) {
+                    heads.add(run);
+                }
+            }
+            long merged = 0;
+            while(!heads.isEmpty()) {
+                if((++merged & 0xFFFF) == 0 && Thread.currentThread().isInterrupted()) {
+                    throw new IOException("Sorting was cancelled");
+                }
+                Run run = heads.poll();
+                out.writeInt(run.head.row);
+                run.advance();
+                if(run.head != null) {
+                    heads.add(run);
+                }
+            }
+        } finally {
+            for(Run run : open) {
+                run.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,200 @@
+import java.nio.ByteBuffer;
+import java.util.List;
+
+// Immutable view of the roster at one version of the store, see
+// StudentStore.snapshot(). Views share every column chunk that did not change
+// between versions, so publishing one is cheap and holding on to one only
+// keeps the chunks that have been rewritten since. Safe to read from any
+// thread without locking
+public class RosterView {
+
+    private final long version;
+    private final int size;
+    private final int slotCount;
+    private final int[][] rowSlot;
+    private final int[][] slotText;
+    private final int[][] slotHash;
+    private final int[][] slotCourse;
+    private final byte[][] slotGrade;
+    private final int[][] slotRow;
+    private final int[][] idTable;
+    private final int idMask;
+    private final TextArena arena;
+    private final String[] courseNames;
+
+    RosterView(long version, int size, int slotCount, int[][] rowSlot, int[][] slotText, int[][] slotHash,
+               int[][] slotCourse, byte[][] slotGrade, int[][] slotRow, int[][] idTable, TextArena arena,
+               String[] courseNames) {
+        this.version = version;
+        this.size = size;
+        this.slotCount = slotCount;
+        this.rowSlot = rowSlot;
+        this.slotText = slotText;
+        this.slotHash = slotHash;
+        this.slotCourse = slotCourse;
+        this.slotGrade = slotGrade;
+        this.slotRow = slotRow;
+        this.idTable = idTable;
+        this.idMask = (idTable.length << IntColumn.CHUNK_BITS) - 1;
+        this.arena = arena;
+        this.courseNames = courseNames;
+    }
+
+    // Store version this view shows; every change increments it
+    public long version() {
+        return version;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public Student get(int row) {
+        return read(slot(row));
+    }
+
+    public String valueAt(int row, int column) {
+        return value(slot(row), column);
+    }
+
+    // Storage slot of a row in the store the view was taken from
+    public int slot(int row) {
+        return IntColumn.get(rowSlot, row);
+    }
+
+    // One column of a storage slot, or null if the slot was not in use
+    public String valueAtSlot(int slot, int column) {
+        if(slot >= slotCount || IntColumn.get(slotRow, slot) < 0) {
+            return null;
+        }
+        return value(slot, column);
+    }
+
+    // Student in a storage slot, or null if the slot was not in use
+    public Student atSlot(int slot) {
+        if(slot >= slotCount || IntColumn.get(slotRow, slot) < 0) {
+            return null;
+        }
+        return read(slot);
+    }
+
+    // Find a student by ID, or null if there is none
+    public Student find(String id) {
+        int slot = findSlot(id);
+        return slot < 0 ? null : read(slot);
+    }
+
+    // Row of a student by ID, or -1 if there is none
+    public int rowOf(String id) {
+        int slot = findSlot(id);
+        return slot < 0 ? -1 : IntColumn.get(slotRow, slot);
+    }
+
+    // Copy up to limit students in row order, starting at row from, keeping
+    // only those in the given course and with the given grade (null matches
+    // any). Returns the row to continue from, or -1 at the end of the roster
+    public int list(int from, int limit, String course, String grade, List<Student> out) {
+        int courseCode = course == null ? -1 : findCourse(course);
+        int gradeCode = grade == null ? -1 : Student.gradeCode(grade);
+        if(course != null && courseCode < 0) {
+            return -1;
+        }
+        int found = 0;
+        for(int row = Math.max(from, 0); row < size; row++) {
+            if(found == limit) {
+                return row;
+            }
+            int slot = slot(row);
+            if((courseCode < 0 || IntColumn.get(slotCourse, slot) == courseCode)
+                    && (gradeCode < 0 || ByteColumn.get(slotGrade, slot) == gradeCode)) {
+                out.add(read(slot));
+                found++;
+            }
+        }
+        return -1;
+    }
+
+    public int courseCode(int row) {
+        return IntColumn.get(slotCourse, slot(row));
+    }
+
+    public byte gradeCode(int row) {
+        return ByteColumn.get(slotGrade, slot(row));
+    }
+
+    // Course names by code
+    public String[] courseNames() {
+        return courseNames;
+    }
+
+    // Code of a course name, or -1 if no student was ever enrolled in it
+    public int findCourse(String name) {
+        for(int i = 0; i < courseNames.length; i++) {
+            if(courseNames[i].equals(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // Text columns (ID, NAME, EMAIL) as raw UTF-8, without building strings
+    public int byteLength(int row, int column) {
+        return arena.length(text(row), textField(column));
+    }
+
+    public void copyTo(int row, int column, ByteBuffer out) {
+        arena.copyTo(text(row), textField(column), out);
+    }
+
+    public boolean contains(int row, int column, byte a, byte b, byte c, byte d) {
+        return arena.contains(text(row), textField(column), a, b, c, d);
+    }
+
+    private int text(int row) {
+        return IntColumn.get(slotText, slot(row));
+    }
+
+    private int findSlot(String id) {
+        byte[] key = StudentStore.utf8(id);
+        int hash = StudentStore.hash(key);
+        for(int i = hash & idMask; ; i = (i + 1) & idMask) {
+            int entry = IntColumn.get(idTable, i);
+            if(entry == 0) {
+                return -1;
+            }
+            int slot = entry - 1;
+            if(IntColumn.get(slotHash, slot) == hash
+                    && arena.fieldEquals(IntColumn.get(slotText, slot), TextArena.ID, key)) {
+                return slot;
+            }
+        }
+    }
+
+    private Student read(int slot) {
+        int ref = IntColumn.get(slotText, slot);
+        Student student = new Student(arena.field(ref, TextArena.ID), arena.field(ref, TextArena.NAME),
+                courseNames[IntColumn.get(slotCourse, slot)], arena.field(ref, TextArena.EMAIL));
+        student.grade = Student.GRADES[ByteColumn.get(slotGrade, slot)];
+        student.slot = slot;
+        return student;
+    }
+
+    private String value(int slot, int column) {
+        switch(column) {
+            case StudentStore.ID: return arena.field(IntColumn.get(slotText, slot), TextArena.ID);
+            case StudentStore.NAME: return arena.field(IntColumn.get(slotText, slot), TextArena.NAME);
+            case StudentStore.COURSE: return courseNames[IntColumn.get(slotCourse, slot)];
+            case StudentStore.EMAIL: return arena.field(IntColumn.get(slotText, slot), TextArena.EMAIL);
+            default: return Student.GRADES[ByteColumn.get(slotGrade, slot)];
+        }
+    }
+
+    private static int textField(int column) {
+        switch(column) {
+            case StudentStore.ID: return TextArena.ID;
+            case StudentStore.NAME: return TextArena.NAME;
+            case StudentStore.EMAIL: return TextArena.EMAIL;
+            default: throw new IllegalArgumentException("Not a text column: " + column);
+        }
+    }
+}
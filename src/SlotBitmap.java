@@ -0,0 +1,366 @@
+import java.util.Arrays;
+
+// Compressed set of storage slots, in the style of a roaring bitmap. Slots are
+// split by their high 16 bits into chunks of 65536. A chunk with few slots
+// keeps them as a sorted char array; a fuller one becomes a bitmap of 1024
+// longs, which is never larger than the array would be. Set operations go chunk
+// by chunk, combining two bitmap chunks 64 slots at a time.
+//
+// Not thread safe, see RosterBitmapIndex
+public class SlotBitmap {
+
+    // Largest array chunk, where it takes as much memory as a bitmap
+    static final int MAX_ARRAY = 4096;
+
+    // A bitmap chunk goes back to an array below this, so a chunk that
+    // hovers around MAX_ARRAY is not converted on every change
+    private static final int MIN_BITMAP = MAX_ARRAY / 2;
+
+    private static final int BITMAP_WORDS = 1 << 10;
+
+    // Chunks in key order. A chunk is a char[] of low bits, sorted and
+    // filled up to its count, or a long[] bitmap
+    private char[] keys;
+    private Object[] chunks;
+    private int[] counts;
+    private int size;
+
+    public SlotBitmap() {
+        this(4);
+    }
+
+    private SlotBitmap(int capacity) {
+        keys = new char[capacity];
+        chunks = new Object[capacity];
+        counts = new int[capacity];
+    }
+
+    public static SlotBitmap of(int[] slots) {
+        SlotBitmap bitmap = new SlotBitmap();
+        for(int slot : slots) {
+            bitmap.add(slot);
+        }
+        return bitmap;
+    }
+
+    // Returns false if the slot was already in the set
+    public boolean add(int slot) {
+        char key = (char) (slot >>> 16);
+        char low = (char) slot;
+        int index = Arrays.binarySearch(keys, 0, size, key);
+        if(index < 0) {
+            index = -index - 1;
+            insertChunk(index, key, new char[4], 0);
+        }
+        Object chunk = chunks[index];
+        if(chunk instanceof long[]) {
+            long[] words = (long[]) chunk;
+            long bit = 1L << low;
+            if((words[low >>> 6] & bit) != 0) {
+                return false;
+            }
+            words[low >>> 6] |= bit;
+            counts[index]++;
+            return true;
+        }
+        char[] values = (char[]) chunk;
+        int count = counts[index];
+        int at = Arrays.binarySearch(values, 0, count, low);
+        if(at >= 0) {
+            return false;
+        }
+        if(count == MAX_ARRAY) {
+            long[] words = toBitmap(values, count);
+            words[low >>> 6] |= 1L << low;
+            chunks[index] = words;
+            counts[index]++;
+            return true;
+        }
+        at = -at - 1;
+        if(count == values.length) {
+            values = Arrays.copyOf(values, Math.min(MAX_ARRAY, count * 2));
+            chunks[index] = values;
+        }
+        System.arraycopy(values, at, values, at + 1, count - at);
+        values[at] = low;
+        counts[index]++;
+        return true;
+    }
+
+    // Returns false if the slot was not in the set
+    public boolean remove(int slot) {
+        int index = Arrays.binarySearch(keys, 0, size, (char) (slot >>> 16));
+        if(index < 0) {
+            return false;
+        }
+        char low = (char) slot;
+        Object chunk = chunks[index];
+        if(chunk instanceof long[]) {
+            long[] words = (long[]) chunk;
+            long bit = 1L << low;
+            if((words[low >>> 6] & bit) == 0) {
+                return false;
+            }
+            words[low >>> 6] &= ~bit;
+            if(--counts[index] < MIN_BITMAP) {
+                chunks[index] = toValues(words, counts[index]);
+            }
+        } else {
+            char[] values = (char[]) chunk;
+            int count = counts[index];
+            int at = Arrays.binarySearch(values, 0, count, low);
+            if(at < 0) {
+                return false;
+            }
+            System.arraycopy(values, at + 1, values, at, count - at - 1);
+            counts[index]--;
+        }
+        if(counts[index] == 0) {
+            removeChunk(index);
+        }
+        return true;
+    }
+
+    public boolean contains(int slot) {
+        int index = Arrays.binarySearch(keys, 0, size, (char) (slot >>> 16));
+        if(index < 0) {
+            return false;
+        }
+        char low = (char) slot;
+        Object chunk = chunks[index];
+        if(chunk instanceof long[]) {
+            return (((long[]) chunk)[low >>> 6] & (1L << low)) != 0;
+        }
+        return Arrays.binarySearch((char[]) chunk, 0, counts[index], low) >= 0;
+    }
+
+    public int cardinality() {
+        int total = 0;
+        for(int i = 0; i < size; i++) {
+            total += counts[i];
+        }
+        return total;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    // Slots in both sets, as a new set
+    public SlotBitmap and(SlotBitmap other) {
+        SlotBitmap result = new SlotBitmap(Math.max(1, Math.min(size, other.size)));
+        int i = 0;
+        int j = 0;
+        while(i < size && j < other.size) {
+            if(keys[i] < other.keys[j]) {
+                i++;
+            } else if(keys[i] > other.keys[j]) {
+                j++;
+            } else {
+                result.appendAnd(keys[i], chunks[i], counts[i], other.chunks[j], other.counts[j]);
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    // Slots in either set, as a new set
+    public SlotBitmap or(SlotBitmap other) {
+        SlotBitmap result = new SlotBitmap(Math.max(1, size + other.size));
+        int i = 0;
+        int j = 0;
+        while(i < size || j < other.size) {
+            if(j == other.size || (i < size && keys[i] < other.keys[j])) {
+                result.insertChunk(result.size, keys[i], copy(chunks[i], counts[i]), counts[i]);
+                i++;
+            } else if(i == size || keys[i] > other.keys[j]) {
+                result.insertChunk(result.size, other.keys[j], copy(other.chunks[j], other.counts[j]), other.counts[j]);
+                j++;
+            } else {
+                result.appendOr(keys[i], chunks[i], counts[i], other.chunks[j], other.counts[j]);
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    public SlotBitmap copy() {
+        SlotBitmap result = new SlotBitmap(Math.max(1, size));
+        for(int i = 0; i < size; i++) {
+            result.insertChunk(i, keys[i], copy(chunks[i], counts[i]), counts[i]);
+        }
+        return result;
+    }
+
+    // The slots in ascending order
+    public int[] toArray() {
+        int[] slots = new int[cardinality()];
+        int at = 0;
+        for(int i = 0; i < size; i++) {
+            int high = keys[i] << 16;
+            Object chunk = chunks[i];
+            if(chunk instanceof long[]) {
+                long[] words = (long[]) chunk;
+                for(int word = 0; word < BITMAP_WORDS; word++) {
+                    long bits = words[word];
+                    while(bits != 0) {
+                        slots[at++] = high | (word << 6) | Long.numberOfTrailingZeros(bits);
+                        bits &= bits - 1;
+                    }
+                }
+            } else {
+                char[] values = (char[]) chunk;
+                for(int k = 0; k < counts[i]; k++) {
+                    slots[at++] = high | values[k];
+                }
+            }
+        }
+        return slots;
+    }
+
+    private void appendAnd(char key, Object a, int countA, Object b, int countB) {
+        if(a instanceof long[] && b instanceof long[]) {
+            long[] left = (long[]) a;
+            long[] right = (long[]) b;
+            long[] words = new long[BITMAP_WORDS];
+            int count = 0;
+            for(int word = 0; word < BITMAP_WORDS; word++) {
+                words[word] = left[word] & right[word];
+                count += Long.bitCount(words[word]);
+            }
+            if(count > 0) {
+                insertChunk(size, key, count < MIN_BITMAP ? toValues(words, count) : words, count);
+            }
+            return;
+        }
+        if(a instanceof long[]) {
+            // Keep the array on the left
+            Object swap = a;
+            a = b;
+            b = swap;
+            int swapCount = countA;
+            countA = countB;
+            countB = swapCount;
+        }
+        char[] values = (char[]) a;
+        char[] result = new char[countA];
+        int count = 0;
+        if(b instanceof long[]) {
+            long[] words = (long[]) b;
+            for(int k = 0; k < countA; k++) {
+                char low = values[k];
+                if((words[low >>> 6] & (1L << low)) != 0) {
+                    result[count++] = low;
+                }
+            }
+        } else {
+            char[] others = (char[]) b;
+            int k = 0;
+            int m = 0;
+            while(k < countA && m < countB) {
+                if(values[k] < others[m]) {
+                    k++;
+                } else if(values[k] > others[m]) {
+                    m++;
+                } else {
+                    result[count++] = values[k];
+                    k++;
+                    m++;
+                }
+            }
+        }
+        if(count > 0) {
+            insertChunk(size, key, result, count);
+        }
+    }
+
+    private void appendOr(char key, Object a, int countA, Object b, int countB) {
+        if(a instanceof char[] && b instanceof char[] && countA + countB <= MAX_ARRAY) {
+            char[] left = (char[]) a;
+            char[] right = (char[]) b;
+            char[] result = new char[countA + countB];
+            int count = 0;
+            int k = 0;
+            int m = 0;
+            while(k < countA || m < countB) {
+                if(m == countB || (k < countA && left[k] < right[m])) {
+                    result[count++] = left[k++];
+                } else if(k == countA || left[k] > right[m]) {
+                    result[count++] = right[m++];
+                } else {
+                    result[count++] = left[k++];
+                    m++;
+                }
+            }
+            insertChunk(size, key, result, count);
+            return;
+        }
+        long[] words = a instanceof long[] ? ((long[]) a).clone() : toBitmap((char[]) a, countA);
+        if(b instanceof long[]) {
+            long[] right = (long[]) b;
+            for(int word = 0; word < BITMAP_WORDS; word++) {
+                words[word] |= right[word];
+            }
+        } else {
+            char[] values = (char[]) b;
+            for(int k = 0; k < countB; k++) {
+                words[values[k] >>> 6] |= 1L << values[k];
+            }
+        }
+        int count = 0;
+        for(long word : words) {
+            count += Long.bitCount(word);
+        }
+        insertChunk(size, key, words, count);
+    }
+
+    private void insertChunk(int index, char key, Object chunk, int count) {
+        if(size == keys.length) {
+            int capacity = size * 2;
+            keys = Arrays.copyOf(keys, capacity);
+            chunks = Arrays.copyOf(chunks, capacity);
+            counts = Arrays.copyOf(counts, capacity);
+        }
+        System.arraycopy(keys, index, keys, index + 1, size - index);
+        System.arraycopy(chunks, index, chunks, index + 1, size - index);
+        System.arraycopy(counts, index, counts, index + 1, size - index);
+        keys[index] = key;
+        chunks[index] = chunk;
+        counts[index] = count;
+        size++;
+    }
+
+    private void removeChunk(int index) {
+        System.arraycopy(keys, index + 1, keys, index, size - index - 1);
+        System.arraycopy(chunks, index + 1, chunks, index, size - index - 1);
+        System.arraycopy(counts, index + 1, counts, index, size - index - 1);
+        chunks[--size] = null;
+    }
+
+    private static Object copy(Object chunk, int count) {
+        return chunk instanceof long[] ? ((long[]) chunk).clone() : Arrays.copyOf((char[]) chunk, count);
+    }
+
+    private static long[] toBitmap(char[] values, int count) {
+        long[] words = new long[BITMAP_WORDS];
+        for(int k = 0; k < count; k++) {
+            words[values[k] >>> 6] |= 1L << values[k];
+        }
+        return words;
+    }
+
+    private static char[] toValues(long[] words, int count) {
+        char[] values = new char[Math.max(count, 4)];
+        int at = 0;
+        for(int word = 0; word < BITMAP_WORDS; word++) {
+            long bits = words[word];
+            while(bits != 0) {
+                values[at++] = (char) ((word << 6) | Long.numberOfTrailingZeros(bits));
+                bits &= bits - 1;
+            }
+        }
+        return values;
+    }
+}
@@ -0,0 +1,46 @@
+import javax.swing.SwingUtilities;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+// Runs student store operations away from the EDT. The store takes writes
+// from any thread; the UI's go to one writer thread so they apply in the order
+// they were made. Reads run on virtual threads. Results come back as futures,
+// use EDT to continue on the Event Dispatch Thread
+public class StoreExecutor {
+
+    public static final Executor EDT = SwingUtilities::invokeLater;
+
+    private final ExecutorService writer = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "student-store-writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final ExecutorService readers = Executors.newVirtualThreadPerTaskExecutor();
+
+    public <T> CompletableFuture<T> write(Supplier<T> operation) {
+        return CompletableFuture.supplyAsync(operation, writer);
+    }
+
+    public CompletableFuture<Void> write(Runnable operation) {
+        return CompletableFuture.runAsync(operation, writer);
+    }
+
+    public <T> CompletableFuture<T> read(Supplier<T> operation) {
+        return CompletableFuture.supplyAsync(operation, readers);
+    }
+
+    // Let queued writes finish, used before the journal is closed
+    public void shutdown() {
+        writer.shutdown();
+        readers.shutdown();
+        try {
+            writer.awaitTermination(1, TimeUnit.MINUTES);
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,39 @@
+// Student record as handed out by the store. The store itself keeps students
+// in compact columns (see StudentStore), this is a detached copy
+public class Student {
+
+    // Grades that can be assigned, "Not Graded" is the initial grade. The store
+    // keeps a grade as its index in this array
+    static final String[] GRADES = {"A", "B", "C", "D", "F", "Incomplete", "Not Graded"};
+    static final byte NOT_GRADED = 6;
+
+    // Longest ID, name, email or course name accepted, in characters
+    static final int MAX_FIELD_LENGTH = 1000;
+
+    String id;
+    String name;
+    String course;
+    String email;
+    String grade;
+
+    // Storage slot in the store this copy was read from, -1 if not stored
+    int slot = -1;
+
+    Student(String id, String name, String course, String email) {
+        this.id = id;
+        this.name = name;
+        this.course = course;
+        this.email = email;
+        this.grade = "Not Graded";
+    }
+
+    // Index of a grade in GRADES
+    static byte gradeCode(String grade) {
+        for(int i = 0; i < GRADES.length; i++) {
+            if(GRADES[i].equals(grade)) {
+                return (byte) i;
+            }
+        }
+        throw new IllegalArgumentException("Unknown grade: " + grade);
+    }
+}
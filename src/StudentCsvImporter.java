@@ -0,0 +1,231 @@
+import javax.swing.SwingWorker;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletionException;
+import java.util.stream.IntStream;
+
+// Imports students from a CSV file with the columns id,name,course,email and an
+// optional grade. The file is read line by line on a background thread, each
+// batch of lines is validated in parallel and then added through
+// Roster.addStudents in one step on the writer thread. Rejected rows go to an
+// error report next to the input file
+public class StudentCsvImporter extends SwingWorker<StudentCsvImporter.Result, Integer> {
+
+    static final int BATCH_SIZE = 5000;
+
+    // Outcome of an import
+    public static class Result {
+        final long imported;
+        final long rejected;
+        final Path errorReport;
+
+        Result(long imported, long rejected, Path errorReport) {
+            this.imported = imported;
+            this.rejected = rejected;
+            this.errorReport = errorReport;
+        }
+    }
+
+    // A parsed line: either a student or the reason it was rejected
+    private static class Row {
+        final long lineNumber;
+        final String line;
+        Student student;
+        String error;
+
+        Row(long lineNumber, String line) {
+            this.lineNumber = lineNumber;
+            this.line = line;
+        }
+    }
+
+    private final Path file;
+    private final Roster roster;
+    private final Set<String> courses;
+    private final Set<String> grades = new HashSet<>(Arrays.asList(Student.GRADES));
+
+    public StudentCsvImporter(Path file, Roster roster, List<String> courses) {
+        this.file = file;
+        this.roster = roster;
+        this.courses = new HashSet<>(courses);
+    }
+
+    public Path errorReportFile() {
+        return file.resolveSibling(file.getFileName() + ".errors.csv");
+    }
+
+    @Override
+    protected Result doInBackground() throws IOException {
+        long totalBytes = Math.max(1, Files.size(file));
+        long bytesRead = 0;
+        long imported = 0;
+        long rejected = 0;
+        long lineNumber = 0;
+        Path reportFile = errorReportFile();
+
+        try(BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8);
+            BufferedWriter report = Files.newBufferedWriter(reportFile, StandardCharsets.UTF_8)) {
+            report.write("line,error,row");
+            report.newLine();
+
+            ArrayList<Row> batch = new ArrayList<>(BATCH_SIZE);
+            String line;
+            while(true) {
+                line = reader.readLine();
+                if(line != null) {
+                    lineNumber++;
+                    bytesRead += line.length() + 1;
+                    if(lineNumber == 1 && line.toLowerCase().startsWith("id,")) {
+                        continue; // Header
+                    }
+                    if(!line.trim().isEmpty()) {
+                        batch.add(new Row(lineNumber, line));
+                    }
+                }
+                if(batch.size() == BATCH_SIZE || (line == null && !batch.isEmpty())) {
+                    if(isCancelled()) {
+                        break;
+                    }
+                    int added = insert(batch);
+                    imported += added;
+                    for(Row row : batch) {
+                        if(row.error != null) {
+                            rejected++;
+                            report.write(row.lineNumber + "," + quote(row.error) + "," + quote(row.line));
+                            report.newLine();
+                        }
+                    }
+                    batch.clear();
+                    setProgress((int) Math.min(100, bytesRead * 100 / totalBytes));
+                    publish((int) imported);
+                }
+                if(line == null) {
+                    break;
+                }
+            }
+        }
+
+        if(rejected == 0) {
+            Files.deleteIfExists(reportFile);
+            reportFile = null;
+        }
+        return new Result(imported, rejected, reportFile);
+    }
+
+    // Validate the batch in parallel, then add the valid students on the writer
+    // thread in one call so the table gets a single event. Waiting for the
+    // writer also keeps the reader from running ahead of the store
+    private int insert(List<Row> batch) {
+        IntStream.range(0, batch.size()).parallel().forEach(i -> parse(batch.get(i)));
+
+        ArrayList<Student> students = new ArrayList<>(batch.size());
+        for(Row row : batch) {
+            if(row.student != null) {
+                students.add(row.student);
+            }
+        }
+        if(students.isEmpty()) {
+            return 0;
+        }
+
+        List<Student> notAdded;
+        try {
+            notAdded = roster.addStudents(students).join();
+        } catch(CompletionException e) {
+            throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+        }
+        if(!notAdded.isEmpty()) {
+            Set<Student> rejected = Collections.newSetFromMap(new IdentityHashMap<>());
+            rejected.addAll(notAdded);
+            for(Row row : batch) {
+                if(row.student != null && rejected.contains(row.student)) {
+                    // Taken IDs, and courses removed while the batch waited for the writer
+                    row.error = roster.hasCourse(row.student.course)
+                            ? "Duplicate student ID " + row.student.id
+                            : "Unknown course " + row.student.course;
+                    row.student = null;
+                }
+            }
+        }
+        return students.size() - notAdded.size();
+    }
+
+    private void parse(Row row) {
+        List<String> fields = parseLine(row.line);
+        if(fields.size() < 4 || fields.size() > 5) {
+            row.error = "Expected 4 or 5 columns but found " + fields.size();
+            return;
+        }
+        String id = fields.get(0).trim();
+        String name = fields.get(1).trim();
+        String course = fields.get(2).trim();
+        String email = fields.get(3).trim();
+        String grade = fields.size() == 5 ? fields.get(4).trim() : "";
+
+        if(id.isEmpty() || name.isEmpty() || course.isEmpty() || email.isEmpty()) {
+            row.error = "Missing required field";
+        } else if(Math.max(Math.max(id.length(), name.length()), email.length()) > Student.MAX_FIELD_LENGTH) {
+            row.error = "Field longer than " + Student.MAX_FIELD_LENGTH + " characters";
+        } else if(!courses.contains(course)) {
+            row.error = "Unknown course " + course;
+        } else if(email.indexOf('@') <= 0) {
+            row.error = "Invalid email " + email;
+        } else if(!grade.isEmpty() && !grades.contains(grade)) {
+            row.error = "Invalid grade " + grade;
+        } else {
+            row.student = new Student(id, name, course, email);
+            if(!grade.isEmpty()) {
+                row.student.grade = grade;
+            }
+        }
+    }
+
+    // Split one CSV line. Fields may be quoted, with "" standing for a quote
+    static List<String> parseLine(String line) {
+        ArrayList<String> fields = new ArrayList<>(5);
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for(int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if(quoted) {
+                if(c == '"') {
+                    if(i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                        field.append('"');
+                        i++;
+                    } else {
+                        quoted = false;
+                    }
+                } else {
+                    field.append(c);
+                }
+            } else if(c == '"') {
+                quoted = true;
+            } else if(c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+
+    static String quote(String value) {
+        if(value.indexOf(',') < 0 && value.indexOf('"') < 0) {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+}
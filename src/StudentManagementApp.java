@@ -1,12 +1,168 @@
-// Main class to run the application
+import javax.management.JMException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+// Main class to run the application. With --headless no window is shown and
+// the roster is served over HTTP on localhost instead; the port is set with
+// -Dstudentmanagement.httpPort=<port> (default 8080).
+//
+// The window comes up empty and the saved roster streams in behind it. With
+// -Dstudentmanagement.startupTiming=true the time to the first paint and to
+// the end of loading is printed; -Dstudentmanagement.exitAfterStartup=true
+// exits once both happened, which is the training run of run-app.sh
+//
+// Replication keeps read-only copies of the roster in other instances. With
+// -Dstudentmanagement.replicationPort=<port> every change is shipped to the
+// followers that connect there, on localhost unless
+// -Dstudentmanagement.replicationHost=<address> says otherwise. An instance
+// started with -Dstudentmanagement.follow=<host>:<port> is such a follower; it
+// saves nothing and takes no changes of its own. For two instances on one
+// machine:
+//   java -Dstudentmanagement.replicationPort=7070 StudentManagementApp
+//   java -Dstudentmanagement.follow=localhost:7070 StudentManagementApp
 public class StudentManagementApp {
-    public static void main(String[] args) {
-        // Create and display the frame
+    public static void main(String[] args) throws IOException {
+        boolean headless = Arrays.asList(args).contains("--headless");
+        boolean timing = Boolean.getBoolean("studentmanagement.startupTiming");
+        boolean exitAfterStartup = Boolean.getBoolean("studentmanagement.exitAfterStartup");
+
+        // The data directory can be changed with -Dstudentmanagement.data=<dir>
+        StudentStore store = new StudentStore();
+        RosterPersistence persistence = new RosterPersistence(
+                Paths.get(System.getProperty("studentmanagement.data", "data")));
+
+        // Store operations run on their own threads, not the EDT
+        StoreExecutor storeExecutor = new StoreExecutor();
+
+        // Operation latencies, visible in JConsole and Flight Recorder
+        RosterMetrics metrics = new RosterMetrics(store);
+
+        Roster roster = new Roster(store, persistence, storeExecutor, metrics);
+
+        String follow = System.getProperty("studentmanagement.follow");
+        if(follow != null) {
+            roster.follow(hostAndPort(follow));
+        }
+        RosterReplicationServer shipping = follow == null ? shipChanges(roster) : null;
+
+        RosterHttpServer server;
+        if(headless) {
+            // Requests are only served once the whole roster is there
+            try {
+                roster.load().join();
+            } catch(CompletionException e) {
+                if(e.getCause() instanceof UncheckedIOException) {
+                    throw ((UncheckedIOException) e.getCause()).getCause();
+                }
+                throw e;
+            }
+            int port = Integer.getInteger("studentmanagement.httpPort", 8080);
+            server = new RosterHttpServer(roster, new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+            server.start();
+            System.out.println("Serving " + store.size() + " students on http://localhost:" + server.address().getPort());
+            if(timing) {
+                System.out.println("Serving " + millisSinceJvmStart() + " ms after JVM start");
+            }
+        } else {
+            server = null;
+        }
+
+        // Finish queued writes and flush the journal when the application exits
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            if(server != null) {
+                server.stop(1);
+            }
+            if(shipping != null) {
+                try {
+                    shipping.close();
+                } catch(IOException e) {
+                    System.err.println("Could not stop replication: " + e);
+                }
+            }
+            storeExecutor.shutdown();
+            try {
+                persistence.close();
+            } catch(IOException e) {
+                System.err.println("Could not close the roster journal: " + e);
+            }
+        }));
+
+        if(headless) {
+            startMetrics(metrics);
+            if(exitAfterStartup) {
+                System.exit(0);
+            }
+            return;
+        }
+
+        // Create and display the frame, then start loading into it
+        CompletableFuture<Void> painted = new CompletableFuture<>();
         javax.swing.SwingUtilities.invokeLater(new Runnable() {
             public void run() {
-                StudentManagementFrame frame = new StudentManagementFrame();
+                // Report events that hold the EDT for too long
+                EdtStallMonitor.install();
+                metrics.watchEdt();
+
+                StudentManagementFrame frame = new StudentManagementFrame(roster, metrics);
+                frame.whenFirstPainted(() -> painted.complete(null));
                 frame.setVisible(true);
+                roster.load();
             }
         });
+
+        // Registering with JMX takes a while, it is done here while the window opens
+        startMetrics(metrics);
+
+        if(timing) {
+            painted.thenRun(() -> System.out.println("First paint " + millisSinceJvmStart() + " ms after JVM start"));
+            roster.loaded().thenAccept(count -> System.out.println(
+                    count + " students loaded " + millisSinceJvmStart() + " ms after JVM start"));
+        }
+        if(exitAfterStartup) {
+            painted.join();
+            roster.loaded().join();
+            System.exit(0);
+        }
+    }
+
+    private static void startMetrics(RosterMetrics metrics) {
+        try {
+            metrics.start();
+        } catch(JMException e) {
+            System.err.println("Could not register the roster metrics: " + e);
+        }
+    }
+
+    // Ship changes if a replication port is set, otherwise returns null
+    private static RosterReplicationServer shipChanges(Roster roster) throws IOException {
+        Integer port = Integer.getInteger("studentmanagement.replicationPort");
+        if(port == null) {
+            return null;
+        }
+        String host = System.getProperty("studentmanagement.replicationHost");
+        RosterReplicationServer shipping = roster.shipChanges(new InetSocketAddress(
+                host != null ? InetAddress.getByName(host) : InetAddress.getLoopbackAddress(), port));
+        System.out.println("Shipping changes to followers on " + shipping.address());
+        return shipping;
+    }
+
+    // "host:port", for the primary to follow
+    private static InetSocketAddress hostAndPort(String address) {
+        int colon = address.lastIndexOf(':');
+        if(colon <= 0) {
+            throw new IllegalArgumentException("Expected <host>:<port> to follow, got " + address);
+        }
+        return new InetSocketAddress(address.substring(0, colon), Integer.parseInt(address.substring(colon + 1)));
+    }
+
+    private static long millisSinceJvmStart() {
+        return System.currentTimeMillis() - ManagementFactory.getRuntimeMXBean().getStartTime();
     }
-}
\ No newline at end of file
+}
@@ -1,74 +1,198 @@
 import javax.swing.*;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
 import javax.swing.table.DefaultTableModel;
+import javax.swing.table.TableColumn;
 import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 public class StudentManagementFrame extends JFrame {
 
-    // Student class to store data
-    private class Student {
-        String id;
-        String name;
-        String course;
-        String email;
-        String grade;
-
-        Student(String id, String name, String course, String email) {
-            this.id = id;
-            this.name = name;
-            this.course = course;
-            this.email = email;
-            this.grade = "Not Graded";
-        }
-    }
+    // Enrolled students listed in the course details
+    private static final int COURSE_DETAILS_STUDENTS = 200;
+
+    // Most similar pairs listed by Find Duplicates
+    private static final int DUPLICATE_PAIRS = 1000;
 
     // Data storage
-    private ArrayList<Student> studentList = new ArrayList<>();
+    private final Roster roster;
+    private final StudentStore studentStore;
+    private final StoreExecutor storeExecutor;
+    private final StudentSearchIndex searchIndex;
+    private final RosterAnalytics analytics;
+    private final RosterMetrics metrics;
+
+    // Search queries run here so typing never waits for the index
+    private final ExecutorService searchExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "student-search");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private int searchGeneration;
+
+    // Course, grade and ID filter from the Query dialog, null when there is none
+    private RosterQuery activeQuery;
+
+    // Running Find Duplicates job, null when there is none
+    private SwingWorker<List<DuplicateScan.Pair>, Void> duplicateScan;
+
+    // Running Reports job, null when there is none
+    private SwingWorker<RosterReports.Summary, Void> reportJob;
 
     // UI Components
     private JTextField idField, nameField, emailField;
     private JTable studentTable;
-    private DefaultTableModel tableModel;
+    private StudentTableModel tableModel;
+    private PagedStudentTableModel pagedModel;
     private JComboBox<String> gradeComboBox;
     private DefaultListModel<String> courseListModel;
     private JList<String> courseList;
     private JComboBox<String> courseDropdown;
+    private JLabel loadStatus;
+
+    // Runs once the Home tab has been painted for the first time
+    private Runnable firstPaint;
+
+    public StudentManagementFrame(Roster roster, RosterMetrics metrics) {
+        this.roster = roster;
+        this.studentStore = roster.store();
+        this.storeExecutor = roster.executor();
+        this.metrics = metrics;
+        // Built off the EDT. Both read the whole roster once, which is still
+        // empty when the frame opens before the roster is loaded
+        this.searchIndex = storeExecutor.write(() -> new StudentSearchIndex(studentStore)).join();
+        this.analytics = storeExecutor.write(() -> new RosterAnalytics(studentStore)).join();
 
-    public StudentManagementFrame() {
         // Basic frame setup
-        setTitle("Student Management System");
+        setTitle(roster.primary() == null ? "Student Management System"
+                : "Student Management System - read-only copy of " + roster.primary());
         setSize(700, 500);
         setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
         setLocationRelativeTo(null);
 
         // Initialize courseListModel first since it's needed by Add Student tab
         courseListModel = new DefaultListModel<String>();
-        // Add default courses
-        courseListModel.addElement("Computer Science 101");
-        courseListModel.addElement("Data Structures");
-        courseListModel.addElement("Web Development");
-        courseListModel.addElement("Database Systems");
-        courseListModel.addElement("Software Engineering");
+        for(String course : roster.courses()) {
+            courseListModel.addElement(course);
+            analytics.courseAdded(course);
+        }
 
         // Create tabbed pane
         JTabbedPane tabbedPane = new JTabbedPane();
 
-        // Add tabs
+        // Add tabs. Only Home is built up front, so the window shows quickly
         tabbedPane.addTab("Home", createHomeTab());
-        tabbedPane.addTab("Add Student", createAddStudentTab());
-        tabbedPane.addTab("View Students", createViewStudentsTab());
-        tabbedPane.addTab("Grade Management", createGradeTab());
-        tabbedPane.addTab("Courses", createCoursesTab());
+        addLazyTab(tabbedPane, "Add Student", this::createAddStudentTab);
+        addLazyTab(tabbedPane, "View Students", this::createViewStudentsTab);
+        addLazyTab(tabbedPane, "Grade Management", this::createGradeTab);
+        addLazyTab(tabbedPane, "Courses", this::createCoursesTab);
+        addLazyTab(tabbedPane, "Analytics", this::createAnalyticsTab);
 
         // Add to frame
         add(tabbedPane);
+
+        showLoadProgress();
+    }
+
+    // Run an action on the EDT once the window has been painted for the first time
+    public void whenFirstPainted(Runnable action) {
+        firstPaint = action;
+    }
+
+    // Add a tab whose content is built the first time it is selected
+    private void addLazyTab(JTabbedPane tabbedPane, String title, Supplier<JPanel> content) {
+        JPanel holder = new JPanel(new BorderLayout());
+        tabbedPane.addTab(title, holder);
+        tabbedPane.addChangeListener(new ChangeListener() {
+            public void stateChanged(ChangeEvent e) {
+                if(tabbedPane.getSelectedComponent() == holder) {
+                    tabbedPane.removeChangeListener(this);
+                    holder.add(content.get(), BorderLayout.CENTER);
+                    holder.revalidate();
+                }
+            }
+        });
+    }
+
+    // Count the students on the Home tab while the saved roster is loading,
+    // and add its courses once it is there
+    private void showLoadProgress() {
+        Timer progressTimer = new Timer(250, e ->
+                loadStatus.setText(String.format("Loading saved roster... %,d students", studentStore.size())));
+        progressTimer.start();
+        roster.loaded().whenCompleteAsync((count, error) -> {
+            progressTimer.stop();
+            if(error != null) {
+                // Changes could not be saved, so there is no point in going on
+                Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+                JOptionPane.showMessageDialog(this,
+                        "Could not load the saved roster: " + cause.getMessage(),
+                        "Error",
+                        JOptionPane.ERROR_MESSAGE);
+                System.exit(1);
+            }
+            loadStatus.setText(String.format("%,d students", count));
+            syncCourses();
+        }, StoreExecutor.EDT);
+
+        // A follower's courses change when the primary's do
+        roster.whenCoursesChange(() -> SwingUtilities.invokeLater(this::syncCourses));
+    }
+
+    // Bring the course list, analytics and the Add Student dropdown in line
+    // with the roster's courses
+    private void syncCourses() {
+        List<String> courses = roster.courses();
+        for(int i = courseListModel.getSize() - 1; i >= 0; i--) {
+            String course = courseListModel.getElementAt(i);
+            if(!courses.contains(course)) {
+                courseListModel.remove(i);
+                analytics.courseRemoved(course);
+                if(courseDropdown != null) {
+                    courseDropdown.removeItem(course);
+                }
+            }
+        }
+        for(String course : courses) {
+            if(!courseListModel.contains(course)) {
+                courseListModel.addElement(course);
+                analytics.courseAdded(course);
+                if(courseDropdown != null) {
+                    courseDropdown.addItem(course);
+                }
+            }
+        }
     }
 
     // Tab 1: Home tab with information
     private JPanel createHomeTab() {
-        JPanel panel = new JPanel();
+        JPanel panel = new JPanel() {
+            @Override
+            protected void paintComponent(Graphics g) {
+                super.paintComponent(g);
+                if(firstPaint != null) {
+                    // After the rest of the window has been painted as well
+                    SwingUtilities.invokeLater(firstPaint);
+                    firstPaint = null;
+                }
+            }
+        };
         panel.setLayout(new BorderLayout());
 
         // Header
@@ -84,7 +208,8 @@ public class StudentManagementFrame extends JFrame {
                         "- Add new students\n" +
                         "- View student records\n" +
                         "- Manage grades\n" +
-                        "- View course information\n\n" +
+                        "- View course information\n" +
+                        "- See grade analytics per course\n\n" +
                         "Use the tabs above to navigate between different functions."
         );
         infoArea.setEditable(false);
@@ -108,7 +233,13 @@ public class StudentManagementFrame extends JFrame {
 
         JPanel buttonPanel = new JPanel();
         buttonPanel.add(helpButton);
-        panel.add(buttonPanel, BorderLayout.SOUTH);
+
+        loadStatus = new JLabel("Loading saved roster...", SwingConstants.CENTER);
+
+        JPanel southPanel = new JPanel(new BorderLayout());
+        southPanel.add(loadStatus, BorderLayout.NORTH);
+        southPanel.add(buttonPanel, BorderLayout.CENTER);
+        panel.add(southPanel, BorderLayout.SOUTH);
 
         return panel;
     }
@@ -192,26 +323,124 @@ public class StudentManagementFrame extends JFrame {
                         emailField.getText()
                 );
 
-                // Add to list
-                studentList.add(student);
+                // Warn first if the student looks like one already on the roster
+                whenStored(storeExecutor.read(() -> roster.findDuplicates(student.name, student.email, 5)), panel, matches -> {
+                    if(!matches.isEmpty() && !confirmNotDuplicate(panel, matches)) {
+                        return;
+                    }
 
-                // Update table if exists
-                updateStudentTable();
+                    // Add to store, IDs must be unique. The table model is
+                    // notified by the store
+                    CompletableFuture<Boolean> adding;
+                    try {
+                        adding = roster.addStudent(student);
+                    } catch(IllegalArgumentException ex) {
+                        JOptionPane.showMessageDialog(panel,
+                                ex.getMessage(),
+                                "Error",
+                                JOptionPane.ERROR_MESSAGE);
+                        return;
+                    }
+                    whenStored(adding, panel, added -> {
+                        if(!added) {
+                            JOptionPane.showMessageDialog(panel,
+                                    "A student with ID " + student.id + " already exists",
+                                    "Error",
+                                    JOptionPane.ERROR_MESSAGE);
+                            return;
+                        }
 
-                // Success message
-                JOptionPane.showMessageDialog(panel,
-                        "Student added successfully",
-                        "Success",
-                        JOptionPane.INFORMATION_MESSAGE);
+                        // Success message
+                        JOptionPane.showMessageDialog(panel,
+                                "Student added successfully",
+                                "Success",
+                                JOptionPane.INFORMATION_MESSAGE);
 
-                // Clear fields
-                clearButton.doClick();
+                        // Clear fields
+                        clearButton.doClick();
+                    });
+                });
             }
         });
 
+        // Bulk import from a CSV file, runs in the background
+        JProgressBar importProgress = new JProgressBar(0, 100);
+        importProgress.setStringPainted(true);
+        importProgress.setVisible(false);
+
+        JButton importButton = new JButton("Import CSV...");
+        importButton.setToolTipText("Columns: id,name,course,email and optionally grade");
+        importButton.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                JFileChooser chooser = new JFileChooser();
+                if(chooser.showOpenDialog(panel) != JFileChooser.APPROVE_OPTION) {
+                    return;
+                }
+
+                List<String> courses = new ArrayList<>();
+                for(int i = 0; i < courseListModel.getSize(); i++) {
+                    courses.add(courseListModel.getElementAt(i));
+                }
+
+                StudentCsvImporter importer = new StudentCsvImporter(
+                        chooser.getSelectedFile().toPath(), roster, courses) {
+                    @Override
+                    protected void process(List<Integer> counts) {
+                        importProgress.setString(counts.get(counts.size() - 1) + " students imported");
+                    }
+
+                    @Override
+                    protected void done() {
+                        importButton.setEnabled(true);
+                        importProgress.setVisible(false);
+                        try {
+                            Result result = get();
+                            String message = result.imported + " students imported";
+                            if(result.rejected > 0) {
+                                message += "\n" + result.rejected + " rows rejected, see " + result.errorReport;
+                            }
+                            JOptionPane.showMessageDialog(panel,
+                                    message,
+                                    "Import Finished",
+                                    result.rejected > 0 ? JOptionPane.WARNING_MESSAGE : JOptionPane.INFORMATION_MESSAGE);
+                        } catch(Exception ex) {
+                            Throwable cause = ex.getCause() != null ? ex.getCause() : ex;
+                            JOptionPane.showMessageDialog(panel,
+                                    "Import failed: " + cause.getMessage(),
+                                    "Error",
+                                    JOptionPane.ERROR_MESSAGE);
+                        }
+                    }
+                };
+                importer.addPropertyChangeListener(event -> {
+                    if("progress".equals(event.getPropertyName())) {
+                        importProgress.setValue((Integer) event.getNewValue());
+                    }
+                });
+
+                importButton.setEnabled(false);
+                importProgress.setValue(0);
+                importProgress.setString("Importing...");
+                importProgress.setVisible(true);
+                importer.execute();
+            }
+        });
+
+        // Rows are checked against the courses, which are only known once the
+        // saved roster is loaded. A follower's roster only changes on its primary
+        importButton.setEnabled(roster.loaded().isDone() && roster.primary() == null);
+        if(roster.primary() == null) {
+            roster.loaded().thenRunAsync(() -> importButton.setEnabled(true), StoreExecutor.EDT);
+        }
+
         buttonPanel.add(clearButton);
         buttonPanel.add(addButton);
-        panel.add(buttonPanel, BorderLayout.SOUTH);
+        buttonPanel.add(importButton);
+
+        JPanel southPanel = new JPanel(new BorderLayout());
+        southPanel.add(buttonPanel, BorderLayout.CENTER);
+        southPanel.add(importProgress, BorderLayout.SOUTH);
+        panel.add(southPanel, BorderLayout.SOUTH);
 
         // Initial population of the course dropdown
         for (int i = 0; i < courseListModel.getSize(); i++) {
@@ -226,21 +455,143 @@ public class StudentManagementFrame extends JFrame {
         JPanel panel = new JPanel();
         panel.setLayout(new BorderLayout());
 
-        // Create table with columns
-        String[] columns = {"ID", "Name", "Course", "Email", "Grade"};
-        tableModel = new DefaultTableModel(columns, 0);
+        // Create table backed directly by the student store. Store events are
+        // passed to it on the EDT in bounded passes
+        tableModel = new StudentTableModel(studentStore);
+        tableModel.refresh(studentStore.addListener(new EdtStoreListener(studentStore, tableModel, tableModel::refresh)));
         studentTable = new JTable(tableModel);
 
         JScrollPane scrollPane = new JScrollPane(studentTable);
         panel.add(scrollPane, BorderLayout.CENTER);
 
+        // Search box, filters the table as the user types
+        JPanel searchPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        JTextField searchField = new JTextField(25);
+        searchField.setToolTipText("Search by name, email or course");
+        searchPanel.add(new JLabel("Search:"));
+        searchPanel.add(searchField);
+        panel.add(searchPanel, BorderLayout.NORTH);
+
+        // Combined course, grade and ID range filter, answered from bitmaps
+        JButton queryButton = new JButton("Query...");
+        queryButton.setToolTipText("Filter by courses, grades and an ID range");
+        JLabel queryStatus = new JLabel();
+        searchPanel.add(queryButton);
+        searchPanel.add(queryStatus);
+        JComponent[] filterControls = {searchField, queryButton};
+
+        // Disk backed paging: the table shows a snapshot written to a page file
+        // and only decodes the rows around the viewport
+        JCheckBox pagedBox = new JCheckBox("Disk paging");
+        pagedBox.setToolTipText("Browse a snapshot of the roster from disk; click a column header to sort");
+        JLabel pagedStatus = new JLabel();
+        pagedBox.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                if(pagedBox.isSelected()) {
+                    openPagedView(panel, pagedBox, filterControls, pagedStatus);
+                } else {
+                    closePagedView(filterControls, pagedStatus);
+                }
+            }
+        });
+        searchPanel.add(pagedBox);
+        searchPanel.add(pagedStatus);
+
+        // Decode the pages around the viewport ahead of scrolling
+        scrollPane.getViewport().addChangeListener(e -> {
+            if(pagedModel != null && studentTable.getModel() == pagedModel) {
+                Rectangle visible = scrollPane.getViewport().getViewRect();
+                int first = studentTable.rowAtPoint(new Point(0, visible.y));
+                int last = studentTable.rowAtPoint(new Point(0, visible.y + visible.height - 1));
+                if(first >= 0) {
+                    pagedModel.prefetch(first, last >= 0 ? last : pagedModel.getRowCount() - 1);
+                }
+            }
+        });
+
+        // Sorting in paged mode, a second click on the same column reverses it
+        studentTable.getTableHeader().addMouseListener(new MouseAdapter() {
+            public void mouseClicked(MouseEvent e) {
+                int viewColumn = studentTable.columnAtPoint(e.getPoint());
+                if(pagedModel != null && studentTable.getModel() == pagedModel && viewColumn >= 0) {
+                    sortPagedView(panel, studentTable.convertColumnIndexToModel(viewColumn), pagedStatus);
+                }
+            }
+        });
+
+        // Wait for a short pause in typing before querying
+        Timer searchTimer = new Timer(100, e -> runSearch(searchField.getText(), queryStatus));
+        searchTimer.setRepeats(false);
+        queryButton.addActionListener(e -> editQuery(panel, searchTimer));
+        searchField.getDocument().addDocumentListener(new DocumentListener() {
+            public void insertUpdate(DocumentEvent e) {
+                searchTimer.restart();
+            }
+
+            public void removeUpdate(DocumentEvent e) {
+                searchTimer.restart();
+            }
+
+            public void changedUpdate(DocumentEvent e) {
+                searchTimer.restart();
+            }
+        });
+
+        // Re-run the active search when the roster changes
+        StudentStoreListener searchRefresh = new StudentStoreListener() {
+            public void studentAdded(int row, Student student) {
+                refreshSearch();
+            }
+
+            public void studentsAdded(int firstRow, List<Student> students) {
+                refreshSearch();
+            }
+
+            public void gradeChanged(int row, Student student, String oldGrade) {
+                // Grades are not searched, only queried
+                if(activeQuery != null) {
+                    refreshSearch();
+                }
+            }
+
+            public void gradesChanged(int[] rows, List<Student> students, List<String> oldGrades) {
+                if(activeQuery != null) {
+                    refreshSearch();
+                }
+            }
+
+            public void courseReassigned(int[] rows, List<Student> students, String oldCourse) {
+                refreshSearch();
+            }
+
+            public void studentRemoved(int row, int lastRow, Student student) {
+                refreshSearch();
+            }
+
+            private void refreshSearch() {
+                if(tableModel.isFiltered()) {
+                    searchTimer.restart();
+                }
+            }
+        };
+        studentStore.addListener(new EdtStoreListener(studentStore, searchRefresh, view -> {
+            if(tableModel.isFiltered()) {
+                searchTimer.restart();
+            }
+        }));
+
         // Button panel
         JPanel buttonPanel = new JPanel();
 
         JButton refreshButton = new JButton("Refresh");
         refreshButton.addActionListener(new ActionListener() {
             public void actionPerformed(ActionEvent e) {
-                updateStudentTable();
+                if(pagedBox.isSelected()) {
+                    // Take a new snapshot
+                    openPagedView(panel, pagedBox, filterControls, pagedStatus);
+                } else {
+                    updateStudentTable();
+                }
             }
         });
 
@@ -250,23 +601,14 @@ public class StudentManagementFrame extends JFrame {
                 int row = studentTable.getSelectedRow();
                 if(row >= 0) {
                     // Remove student
-                    String id = (String) tableModel.getValueAt(row, 0);
-
-                    // Find and remove from list
-                    for(int i = 0; i < studentList.size(); i++) {
-                        if(studentList.get(i).id.equals(id)) {
-                            studentList.remove(i);
-                            break;
-                        }
-                    }
-
-                    // Update table
-                    tableModel.removeRow(row);
-
-                    JOptionPane.showMessageDialog(panel,
-                            "Student deleted",
-                            "Success",
-                            JOptionPane.INFORMATION_MESSAGE);
+                    String id = (String) studentTable.getModel().getValueAt(row, StudentTableModel.ID_COLUMN);
+
+                    // Remove from store, the table model is notified
+                    whenStored(roster.removeStudent(id), panel, removed ->
+                            JOptionPane.showMessageDialog(panel,
+                                    removed != null ? "Student deleted" : "Student was already deleted",
+                                    "Success",
+                                    JOptionPane.INFORMATION_MESSAGE));
                 } else {
                     JOptionPane.showMessageDialog(panel,
                             "Please select a student",
@@ -276,13 +618,479 @@ public class StudentManagementFrame extends JFrame {
             }
         });
 
+        JButton gradeSelectedButton = new JButton("Grade Selected...");
+        gradeSelectedButton.setToolTipText("Assign one grade to every selected student");
+        gradeSelectedButton.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                int[] rows = studentTable.getSelectedRows();
+                if(rows.length == 0) {
+                    JOptionPane.showMessageDialog(panel,
+                            "Please select one or more students",
+                            "Error",
+                            JOptionPane.ERROR_MESSAGE);
+                    return;
+                }
+
+                JComboBox<String> gradeBox = new JComboBox<>(Student.GRADES);
+                JPanel gradePanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+                gradePanel.add(new JLabel("Grade for " + rows.length + " selected students:"));
+                gradePanel.add(gradeBox);
+                if(JOptionPane.showConfirmDialog(panel, gradePanel, "Grade Selected",
+                        JOptionPane.OK_CANCEL_OPTION, JOptionPane.PLAIN_MESSAGE) != JOptionPane.OK_OPTION) {
+                    return;
+                }
+
+                // All selected students are graded as one change
+                String grade = (String) gradeBox.getSelectedItem();
+                LinkedHashMap<String, String> grades = new LinkedHashMap<>();
+                for(int row : rows) {
+                    String id = (String) studentTable.getModel().getValueAt(row, StudentTableModel.ID_COLUMN);
+                    if(!id.isEmpty()) {
+                        grades.put(id, grade);
+                    }
+                }
+                whenStored(roster.assignGrades(grades), panel, unknown ->
+                        showGradingSummary(panel, grades.size() - unknown.size(), unknown, List.of()));
+            }
+        });
+
+        JButton exportButton = new JButton("Export...");
+        exportButton.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                exportRoster(panel, exportButton);
+            }
+        });
+
+        // Compares the whole roster in the background, a second click cancels
+        JProgressBar duplicateProgress = new JProgressBar(0, 100);
+        duplicateProgress.setStringPainted(true);
+        duplicateProgress.setVisible(false);
+        JButton duplicatesButton = new JButton("Find Duplicates...");
+        duplicatesButton.setToolTipText("List pairs of students that are likely the same person");
+        duplicatesButton.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                if(duplicateScan != null) {
+                    duplicateScan.cancel(false);
+                } else {
+                    findDuplicates(panel, duplicatesButton, duplicateProgress);
+                }
+            }
+        });
+
+        // Writes the term-end reports in the background, a second click cancels
+        JProgressBar reportProgress = new JProgressBar(0, 100);
+        reportProgress.setStringPainted(true);
+        reportProgress.setVisible(false);
+        JButton reportsButton = new JButton("Reports...");
+        reportsButton.setToolTipText("Write a grade report and transcripts for every course");
+        reportsButton.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                if(reportJob != null) {
+                    reportJob.cancel(false);
+                } else {
+                    writeReports(panel, reportsButton, reportProgress);
+                }
+            }
+        });
+
         buttonPanel.add(refreshButton);
         buttonPanel.add(deleteButton);
+        buttonPanel.add(gradeSelectedButton);
+        buttonPanel.add(exportButton);
+        buttonPanel.add(duplicatesButton);
+        buttonPanel.add(duplicateProgress);
+        buttonPanel.add(reportsButton);
+        buttonPanel.add(reportProgress);
         panel.add(buttonPanel, BorderLayout.SOUTH);
 
         return panel;
     }
 
+    // Write a snapshot of the roster to a page file in the background and show
+    // it in the table instead of the live store
+    private void openPagedView(JPanel panel, JCheckBox pagedBox, JComponent[] filterControls, JLabel pagedStatus) {
+        pagedBox.setEnabled(false);
+        pagedStatus.setText("Writing page file...");
+        new SwingWorker<PagedStudentTableModel, Void>() {
+            @Override
+            protected PagedStudentTableModel doInBackground() throws Exception {
+                return PagedStudentTableModel.create(studentStore.snapshot());
+            }
+
+            @Override
+            protected void done() {
+                pagedBox.setEnabled(true);
+                try {
+                    PagedStudentTableModel opened = get();
+                    if(!pagedBox.isSelected()) {
+                        opened.close();
+                        return;
+                    }
+                    PagedStudentTableModel previous = pagedModel;
+                    pagedModel = opened;
+                    studentTable.setModel(opened);
+                    for(JComponent control : filterControls) {
+                        control.setEnabled(false);
+                    }
+                    pagedStatus.setText("Snapshot of " + opened.getRowCount() + " students, Refresh to update");
+                    closeQuietly(previous);
+                } catch(Exception ex) {
+                    Throwable cause = ex.getCause() != null ? ex.getCause() : ex;
+                    pagedBox.setSelected(false);
+                    pagedStatus.setText("");
+                    JOptionPane.showMessageDialog(panel,
+                            "Could not page the roster to disk: " + cause.getMessage(),
+                            "Error",
+                            JOptionPane.ERROR_MESSAGE);
+                }
+            }
+        }.execute();
+    }
+
+    private void closePagedView(JComponent[] filterControls, JLabel pagedStatus) {
+        studentTable.setModel(tableModel);
+        for(JComponent control : filterControls) {
+            control.setEnabled(true);
+        }
+        pagedStatus.setText("");
+        closeQuietly(pagedModel);
+        pagedModel = null;
+    }
+
+    // Build the column's on-disk index in the background the first time, then
+    // switch the paged table to that order
+    private void sortPagedView(JPanel panel, int column, JLabel pagedStatus) {
+        PagedStudentTableModel model = pagedModel;
+        boolean descending = column == model.sortColumn() && !model.isDescending();
+        String status = pagedStatus.getText();
+        pagedStatus.setText("Sorting...");
+        new SwingWorker<Void, Void>() {
+            @Override
+            protected Void doInBackground() throws Exception {
+                model.prepareSort(column);
+                return null;
+            }
+
+            @Override
+            protected void done() {
+                pagedStatus.setText(status);
+                if(model != pagedModel) {
+                    return;
+                }
+                try {
+                    get();
+                    model.sortBy(column, descending);
+                    // Show the sort arrow
+                    for(int i = 0; i < studentTable.getColumnCount(); i++) {
+                        TableColumn tableColumn = studentTable.getColumnModel().getColumn(i);
+                        tableColumn.setHeaderValue(model.getColumnName(tableColumn.getModelIndex()));
+                    }
+                    studentTable.getTableHeader().repaint();
+                } catch(Exception ex) {
+                    Throwable cause = ex.getCause() != null ? ex.getCause() : ex;
+                    JOptionPane.showMessageDialog(panel,
+                            "Sorting failed: " + cause.getMessage(),
+                            "Error",
+                            JOptionPane.ERROR_MESSAGE);
+                }
+            }
+        }.execute();
+    }
+
+    private static void closeQuietly(PagedStudentTableModel model) {
+        if(model == null) {
+            return;
+        }
+        try {
+            model.close();
+        } catch(IOException e) {
+            // Only temporary files are left behind, they go on exit
+            System.err.println("Could not remove page files: " + e);
+        }
+    }
+
+    // Query the search index and the active query in the background and show
+    // the students found by both, unless a newer search has been started in
+    // the meantime
+    private void runSearch(String text, JLabel queryStatus) {
+        int generation = ++searchGeneration;
+        RosterQuery query = activeQuery;
+        if(text.trim().isEmpty() && query == null) {
+            tableModel.clearFilter();
+            queryStatus.setText("");
+            return;
+        }
+        searchExecutor.execute(() -> {
+            int[] results;
+            if(query == null) {
+                results = searchIndex.search(text);
+            } else if(text.trim().isEmpty()) {
+                results = roster.queryStudents(query);
+            } else {
+                results = SlotBitmap.of(searchIndex.search(text)).and(SlotBitmap.of(roster.queryStudents(query))).toArray();
+            }
+            SwingUtilities.invokeLater(() -> {
+                if(generation == searchGeneration) {
+                    tableModel.setFilter(results);
+                    queryStatus.setText(query == null ? "" : String.format("%,d match %s", results.length, query));
+                }
+            });
+        });
+    }
+
+    // Ask for the courses, grades and ID range to filter the table by
+    private void editQuery(JPanel panel, Timer searchTimer) {
+        JList<String> courseChoices = new JList<>(roster.courses().toArray(new String[0]));
+        courseChoices.setVisibleRowCount(7);
+        JList<String> gradeChoices = new JList<>(Student.GRADES);
+        gradeChoices.setVisibleRowCount(7);
+        JTextField idFromField = new JTextField(10);
+        JTextField idToField = new JTextField(10);
+        if(activeQuery != null) {
+            for(int i = 0; i < courseChoices.getModel().getSize(); i++) {
+                if(activeQuery.courses.contains(courseChoices.getModel().getElementAt(i))) {
+                    courseChoices.addSelectionInterval(i, i);
+                }
+            }
+            for(int i = 0; i < Student.GRADES.length; i++) {
+                if(activeQuery.grades.contains(Student.GRADES[i])) {
+                    gradeChoices.addSelectionInterval(i, i);
+                }
+            }
+            idFromField.setText(activeQuery.idFrom != null ? activeQuery.idFrom : "");
+            idToField.setText(activeQuery.idTo != null ? activeQuery.idTo : "");
+        }
+
+        JScrollPane courseScroll = new JScrollPane(courseChoices);
+        courseScroll.setBorder(BorderFactory.createTitledBorder("Courses"));
+        JScrollPane gradeScroll = new JScrollPane(gradeChoices);
+        gradeScroll.setBorder(BorderFactory.createTitledBorder("Grades"));
+        JPanel listPanel = new JPanel(new GridLayout(1, 2, 10, 10));
+        listPanel.add(courseScroll);
+        listPanel.add(gradeScroll);
+
+        JPanel idPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        idPanel.add(new JLabel("ID from:"));
+        idPanel.add(idFromField);
+        idPanel.add(new JLabel("to:"));
+        idPanel.add(idToField);
+
+        JPanel queryPanel = new JPanel(new BorderLayout(10, 10));
+        queryPanel.add(new JLabel("Select none to match any. Ctrl-click selects several."), BorderLayout.NORTH);
+        queryPanel.add(listPanel, BorderLayout.CENTER);
+        queryPanel.add(idPanel, BorderLayout.SOUTH);
+
+        Object[] options = {"Apply", "Clear", "Cancel"};
+        int choice = JOptionPane.showOptionDialog(panel, queryPanel, "Query Students",
+                JOptionPane.DEFAULT_OPTION, JOptionPane.PLAIN_MESSAGE, null, options, options[0]);
+        if(choice == 0) {
+            activeQuery = new RosterQuery(courseChoices.getSelectedValuesList(), gradeChoices.getSelectedValuesList(),
+                    idFromField.getText().trim(), idToField.getText().trim());
+        } else if(choice == 1) {
+            activeQuery = null;
+        } else {
+            return;
+        }
+        searchTimer.restart();
+    }
+
+    // Ask for format, filter and file, then stream the roster out in the background
+    private void exportRoster(JPanel panel, JButton exportButton) {
+        JComboBox<RosterExporter.Format> formatBox = new JComboBox<>(RosterExporter.Format.values());
+        JComboBox<String> courseBox = new JComboBox<>();
+        courseBox.addItem("All courses");
+        for(int i = 0; i < courseListModel.getSize(); i++) {
+            courseBox.addItem(courseListModel.getElementAt(i));
+        }
+        JComboBox<String> gradeBox = new JComboBox<>();
+        gradeBox.addItem("All grades");
+        for(String grade : Student.GRADES) {
+            gradeBox.addItem(grade);
+        }
+
+        JPanel optionsPanel = new JPanel(new GridLayout(3, 2, 10, 10));
+        optionsPanel.add(new JLabel("Format:"));
+        optionsPanel.add(formatBox);
+        optionsPanel.add(new JLabel("Course:"));
+        optionsPanel.add(courseBox);
+        optionsPanel.add(new JLabel("Grade:"));
+        optionsPanel.add(gradeBox);
+        if(JOptionPane.showConfirmDialog(panel, optionsPanel, "Export Students",
+                JOptionPane.OK_CANCEL_OPTION, JOptionPane.PLAIN_MESSAGE) != JOptionPane.OK_OPTION) {
+            return;
+        }
+
+        JFileChooser chooser = new JFileChooser();
+        if(chooser.showSaveDialog(panel) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+
+        RosterExporter.Format format = (RosterExporter.Format) formatBox.getSelectedItem();
+        String course = courseBox.getSelectedIndex() > 0 ? (String) courseBox.getSelectedItem() : null;
+        String grade = gradeBox.getSelectedIndex() > 0 ? (String) gradeBox.getSelectedItem() : null;
+
+        Path file = chooser.getSelectedFile().toPath();
+
+        exportButton.setEnabled(false);
+        new SwingWorker<Long, Void>() {
+            @Override
+            protected Long doInBackground() throws Exception {
+                // Only the small per row columns are copied, the text is shared
+                RosterView roster = studentStore.snapshot();
+                return new RosterExporter().export(roster, course, grade, format, file);
+            }
+
+            @Override
+            protected void done() {
+                exportButton.setEnabled(true);
+                try {
+                    JOptionPane.showMessageDialog(panel,
+                            get() + " students exported to " + file,
+                            "Export Finished",
+                            JOptionPane.INFORMATION_MESSAGE);
+                } catch(Exception ex) {
+                    Throwable cause = ex.getCause() != null ? ex.getCause() : ex;
+                    JOptionPane.showMessageDialog(panel,
+                            "Export failed: " + cause.getMessage(),
+                            "Error",
+                            JOptionPane.ERROR_MESSAGE);
+                }
+            }
+        }.execute();
+    }
+
+    // Score every pair of students that LSH brings together, on the fork/join
+    // pool, then list the most similar pairs
+    private void findDuplicates(JPanel panel, JButton duplicatesButton, JProgressBar duplicateProgress) {
+        duplicatesButton.setText("Cancel");
+        duplicateProgress.setValue(0);
+        duplicateProgress.setVisible(true);
+        duplicateScan = new SwingWorker<List<DuplicateScan.Pair>, Void>() {
+            @Override
+            protected List<DuplicateScan.Pair> doInBackground() {
+                return roster.scanDuplicates(DUPLICATE_PAIRS, this::isCancelled, this::setProgress);
+            }
+
+            @Override
+            protected void done() {
+                duplicateScan = null;
+                duplicatesButton.setText("Find Duplicates...");
+                duplicateProgress.setVisible(false);
+                if(isCancelled()) {
+                    return;
+                }
+                try {
+                    showDuplicates(panel, get());
+                } catch(Exception ex) {
+                    Throwable cause = ex.getCause() != null ? ex.getCause() : ex;
+                    JOptionPane.showMessageDialog(panel,
+                            "Finding duplicates failed: " + cause.getMessage(),
+                            "Error",
+                            JOptionPane.ERROR_MESSAGE);
+                }
+            }
+        };
+        duplicateScan.addPropertyChangeListener(e -> {
+            if("progress".equals(e.getPropertyName())) {
+                duplicateProgress.setValue((Integer) e.getNewValue());
+            }
+        });
+        duplicateScan.execute();
+    }
+
+    private void showDuplicates(JPanel panel, List<DuplicateScan.Pair> pairs) {
+        if(pairs.isEmpty()) {
+            JOptionPane.showMessageDialog(panel,
+                    "No likely duplicates found",
+                    "Find Duplicates",
+                    JOptionPane.INFORMATION_MESSAGE);
+            return;
+        }
+        DefaultTableModel pairModel = new DefaultTableModel(
+                new String[]{"Alike", "ID", "Name", "Email", "ID", "Name", "Email"}, 0) {
+            @Override
+            public boolean isCellEditable(int row, int column) {
+                return false;
+            }
+        };
+        for(DuplicateScan.Pair pair : pairs) {
+            pairModel.addRow(new Object[]{String.format("%.0f%%", pair.similarity * 100),
+                    pair.first.id, pair.first.name, pair.first.email,
+                    pair.second.id, pair.second.name, pair.second.email});
+        }
+        JTable pairTable = new JTable(pairModel);
+        pairTable.getColumnModel().getColumn(0).setMaxWidth(60);
+        JScrollPane pairScroll = new JScrollPane(pairTable);
+        pairScroll.setPreferredSize(new Dimension(900, 400));
+        JOptionPane.showMessageDialog(panel,
+                pairScroll,
+                pairs.size() == DUPLICATE_PAIRS ? "Most Likely Duplicates, First " + DUPLICATE_PAIRS : "Likely Duplicates: " + pairs.size(),
+                JOptionPane.PLAIN_MESSAGE);
+    }
+
+    // Ask for a format and a directory, then write the reports of every
+    // course on the fork/join pool
+    private void writeReports(JPanel panel, JButton reportsButton, JProgressBar reportProgress) {
+        JComboBox<RosterReports.Format> formatBox = new JComboBox<>(RosterReports.Format.values());
+        JPanel optionsPanel = new JPanel(new GridLayout(1, 2, 10, 10));
+        optionsPanel.add(new JLabel("Format:"));
+        optionsPanel.add(formatBox);
+        if(JOptionPane.showConfirmDialog(panel, optionsPanel, "Term Reports",
+                JOptionPane.OK_CANCEL_OPTION, JOptionPane.PLAIN_MESSAGE) != JOptionPane.OK_OPTION) {
+            return;
+        }
+
+        JFileChooser chooser = new JFileChooser();
+        chooser.setFileSelectionMode(JFileChooser.DIRECTORIES_ONLY);
+        chooser.setDialogTitle("Directory for the Reports");
+        if(chooser.showSaveDialog(panel) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+
+        RosterReports.Format format = (RosterReports.Format) formatBox.getSelectedItem();
+        Path directory = chooser.getSelectedFile().toPath();
+
+        reportsButton.setText("Cancel");
+        reportProgress.setValue(0);
+        reportProgress.setVisible(true);
+        reportJob = new SwingWorker<RosterReports.Summary, Void>() {
+            @Override
+            protected RosterReports.Summary doInBackground() throws Exception {
+                return roster.writeReports(format, directory, this::isCancelled, this::setProgress);
+            }
+
+            @Override
+            protected void done() {
+                reportJob = null;
+                reportsButton.setText("Reports...");
+                reportProgress.setVisible(false);
+                if(isCancelled()) {
+                    return;
+                }
+                try {
+                    RosterReports.Summary summary = get();
+                    JOptionPane.showMessageDialog(panel,
+                            "Reports for " + summary.students + " students in " + summary.courses
+                                    + " courses written to " + directory + "\nStart with " + summary.index.getFileName(),
+                            "Reports Finished",
+                            JOptionPane.INFORMATION_MESSAGE);
+                } catch(Exception ex) {
+                    Throwable cause = ex.getCause() != null ? ex.getCause() : ex;
+                    JOptionPane.showMessageDialog(panel,
+                            "Writing reports failed: " + cause.getMessage(),
+                            "Error",
+                            JOptionPane.ERROR_MESSAGE);
+                }
+            }
+        };
+        reportJob.addPropertyChangeListener(e -> {
+            if("progress".equals(e.getPropertyName())) {
+                reportProgress.setValue((Integer) e.getNewValue());
+            }
+        });
+        reportJob.execute();
+    }
+
     // Tab 4: Grade Management tab
     private JPanel createGradeTab() {
         JPanel panel = new JPanel();
@@ -297,7 +1105,7 @@ public class StudentManagementFrame extends JFrame {
         gradePanel.add(studentIdField);
 
         gradePanel.add(new JLabel("Select Grade:"));
-        String[] grades = {"A", "B", "C", "D", "F", "Incomplete", "Not Graded"};
+        String[] grades = Student.GRADES;
         gradeComboBox = new JComboBox<String>(grades);
         gradePanel.add(gradeComboBox);
 
@@ -319,30 +1127,24 @@ public class StudentManagementFrame extends JFrame {
                 }
 
                 // Find student by ID
-                Student foundStudent = null;
-                for(Student student : studentList) {
-                    if(student.id.equals(searchId)) {
-                        foundStudent = student;
-                        break;
-                    }
-                }
-
-                if(foundStudent != null) {
-                    studentInfoLabel.setText("Student: " + foundStudent.name + " (Current Grade: " + foundStudent.grade + ")");
-                    // Preselect current grade if possible
-                    for(int i = 0; i < grades.length; i++) {
-                        if(grades[i].equals(foundStudent.grade)) {
-                            gradeComboBox.setSelectedIndex(i);
-                            break;
+                whenStored(storeExecutor.read(() -> roster.findStudent(searchId)), panel, foundStudent -> {
+                    if(foundStudent != null) {
+                        studentInfoLabel.setText("Student: " + foundStudent.name + " (Current Grade: " + foundStudent.grade + ")");
+                        // Preselect current grade if possible
+                        for(int i = 0; i < grades.length; i++) {
+                            if(grades[i].equals(foundStudent.grade)) {
+                                gradeComboBox.setSelectedIndex(i);
+                                break;
+                            }
                         }
+                    } else {
+                        studentInfoLabel.setText("Student: Not found");
+                        JOptionPane.showMessageDialog(panel,
+                                "No student found with ID: " + searchId,
+                                "Not Found",
+                                JOptionPane.WARNING_MESSAGE);
                     }
-                } else {
-                    studentInfoLabel.setText("Student: Not found");
-                    JOptionPane.showMessageDialog(panel,
-                            "No student found with ID: " + searchId,
-                            "Not Found",
-                            JOptionPane.WARNING_MESSAGE);
-                }
+                });
             }
         });
         gradePanel.add(findButton);
@@ -359,38 +1161,62 @@ public class StudentManagementFrame extends JFrame {
                     return;
                 }
 
-                // Find student by ID
-                boolean studentFound = false;
-                for(Student student : studentList) {
-                    if(student.id.equals(searchId)) {
-                        // Update grade
-                        student.grade = (String) gradeComboBox.getSelectedItem();
-
+                // Find student by ID and update the grade
+                String grade = (String) gradeComboBox.getSelectedItem();
+                whenStored(roster.assignGrade(searchId, grade), panel, student -> {
+                    if(student != null) {
                         // Update UI
-                        updateStudentTable();
-                        studentInfoLabel.setText("Student: " + student.name + " (Current Grade: " + student.grade + ")");
+                        studentInfoLabel.setText("Student: " + student.name + " (Current Grade: " + grade + ")");
 
                         JOptionPane.showMessageDialog(panel,
                                 "Grade assigned successfully",
                                 "Success",
                                 JOptionPane.INFORMATION_MESSAGE);
-
-                        studentFound = true;
-                        break;
+                    } else {
+                        JOptionPane.showMessageDialog(panel,
+                                "No student found with ID: " + searchId,
+                                "Error",
+                                JOptionPane.ERROR_MESSAGE);
                     }
-                }
+                });
+            }
+        });
 
-                if(!studentFound) {
-                    JOptionPane.showMessageDialog(panel,
-                            "No student found with ID: " + searchId,
-                            "Error",
-                            JOptionPane.ERROR_MESSAGE);
+        JButton sheetButton = new JButton("Import Grade Sheet...");
+        sheetButton.setToolTipText("CSV file with the columns id,grade");
+        sheetButton.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                JFileChooser chooser = new JFileChooser();
+                if(chooser.showOpenDialog(panel) != JFileChooser.APPROVE_OPTION) {
+                    return;
                 }
+
+                sheetButton.setEnabled(false);
+                new GradeSheetImporter(chooser.getSelectedFile().toPath(), roster) {
+                    @Override
+                    protected void done() {
+                        sheetButton.setEnabled(true);
+                        try {
+                            Result result = get();
+                            showGradingSummary(panel, result.updated, result.unknownIds, result.rejectedLines);
+                        } catch(Exception ex) {
+                            Throwable cause = ex.getCause() != null ? ex.getCause() : ex;
+                            if(cause instanceof CompletionException && cause.getCause() != null) {
+                                cause = cause.getCause();
+                            }
+                            JOptionPane.showMessageDialog(panel,
+                                    "Grade sheet import failed: " + cause.getMessage(),
+                                    "Error",
+                                    JOptionPane.ERROR_MESSAGE);
+                        }
+                    }
+                }.execute();
             }
         });
 
         JPanel buttonPanel = new JPanel();
         buttonPanel.add(assignButton);
+        buttonPanel.add(sheetButton);
 
         panel.add(gradePanel, BorderLayout.NORTH);
         panel.add(buttonPanel, BorderLayout.CENTER);
@@ -417,31 +1243,10 @@ public class StudentManagementFrame extends JFrame {
         JScrollPane detailsScroll = new JScrollPane(courseDetails);
         panel.add(detailsScroll, BorderLayout.CENTER);
 
-        // When a course is selected, show details
+        // When a course is selected, show its description and who is enrolled
         courseList.addListSelectionListener(e -> {
             if(!e.getValueIsAdjusting()) {
-                String selected = courseList.getSelectedValue();
-                if(selected != null) {
-                    switch(selected) {
-                        case "Computer Science 101":
-                            courseDetails.setText("Computer Science 101\n\nIntroduction to programming concepts and problem-solving techniques.");
-                            break;
-                        case "Data Structures":
-                            courseDetails.setText("Data Structures\n\nStudy of data structures and algorithms including lists, stacks, queues, and trees.");
-                            break;
-                        case "Web Development":
-                            courseDetails.setText("Web Development\n\nLearn HTML, CSS, JavaScript and server-side programming.");
-                            break;
-                        case "Database Systems":
-                            courseDetails.setText("Database Systems\n\nIntroduction to database design, SQL, and database management systems.");
-                            break;
-                        case "Software Engineering":
-                            courseDetails.setText("Software Engineering\n\nPrinciples of software design, testing, and project management.");
-                            break;
-                        default:
-                            courseDetails.setText(selected + "\n\nNo details available for this course.");
-                    }
-                }
+                showCourseDetails(courseList.getSelectedValue(), courseDetails, panel);
             }
         });
 
@@ -450,58 +1255,156 @@ public class StudentManagementFrame extends JFrame {
 
         JPanel addPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
         JTextField newCourseField = new JTextField(20);
+        JTextField descriptionField = new JTextField(30);
         JButton addCourseButton = new JButton("Add Course");
 
         addCourseButton.addActionListener(new ActionListener() {
             public void actionPerformed(ActionEvent e) {
                 String newCourse = newCourseField.getText().trim();
                 if(!newCourse.isEmpty()) {
-                    if(!courseListModel.contains(newCourse)) {
-                        courseListModel.addElement(newCourse);
-                        newCourseField.setText("");
-
-                        // Update course dropdown in Add Student tab
-                        courseDropdown.addItem(newCourse);
-                    } else {
+                    CompletableFuture<Boolean> adding;
+                    try {
+                        adding = roster.addCourse(newCourse, descriptionField.getText().trim());
+                    } catch(IllegalArgumentException ex) {
                         JOptionPane.showMessageDialog(panel,
-                                "Course already exists",
+                                ex.getMessage(),
                                 "Error",
                                 JOptionPane.ERROR_MESSAGE);
+                        return;
                     }
+                    whenStored(adding, panel, added -> {
+                        if(added) {
+                            courseListModel.addElement(newCourse);
+                            analytics.courseAdded(newCourse);
+                            newCourseField.setText("");
+                            descriptionField.setText("");
+
+                            // Update course dropdown in Add Student tab, if it has been built
+                            if(courseDropdown != null) {
+                                courseDropdown.addItem(newCourse);
+                            }
+                        } else {
+                            JOptionPane.showMessageDialog(panel,
+                                    "Course already exists",
+                                    "Error",
+                                    JOptionPane.ERROR_MESSAGE);
+                        }
+                    });
                 }
             }
         });
 
         addPanel.add(new JLabel("New Course:"));
         addPanel.add(newCourseField);
+        addPanel.add(new JLabel("Description:"));
+        addPanel.add(descriptionField);
         addPanel.add(addCourseButton);
 
         JPanel removePanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+
+        JButton describeButton = new JButton("Edit Description...");
+        describeButton.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                String course = courseList.getSelectedValue();
+                if(course == null) {
+                    JOptionPane.showMessageDialog(panel,
+                            "Please select a course",
+                            "Error",
+                            JOptionPane.ERROR_MESSAGE);
+                    return;
+                }
+                JTextArea descriptionArea = new JTextArea(roster.courseDescription(course), 6, 40);
+                descriptionArea.setLineWrap(true);
+                descriptionArea.setWrapStyleWord(true);
+                if(JOptionPane.showConfirmDialog(panel, new JScrollPane(descriptionArea), "Description of " + course,
+                        JOptionPane.OK_CANCEL_OPTION, JOptionPane.PLAIN_MESSAGE) != JOptionPane.OK_OPTION) {
+                    return;
+                }
+                CompletableFuture<Boolean> describing;
+                try {
+                    describing = roster.describeCourse(course, descriptionArea.getText().trim());
+                } catch(IllegalArgumentException ex) {
+                    JOptionPane.showMessageDialog(panel,
+                            ex.getMessage(),
+                            "Error",
+                            JOptionPane.ERROR_MESSAGE);
+                    return;
+                }
+                whenStored(describing, panel, described -> {
+                    if(!described) {
+                        JOptionPane.showMessageDialog(panel,
+                                "Course " + course + " no longer exists",
+                                "Error",
+                                JOptionPane.ERROR_MESSAGE);
+                    }
+                    showCourseDetails(course, courseDetails, panel);
+                });
+            }
+        });
+
         JButton removeCourseButton = new JButton("Remove Selected Course");
 
         removeCourseButton.addActionListener(new ActionListener() {
             public void actionPerformed(ActionEvent e) {
-                int index = courseList.getSelectedIndex();
-                if(index >= 0) {
-                    String courseToRemove = courseListModel.getElementAt(index);
-                    courseListModel.remove(index);
-
-                    // Update course dropdown in Add Student tab
-                    for (int i = 0; i < courseDropdown.getItemCount(); i++) {
-                        if (courseDropdown.getItemAt(i).equals(courseToRemove)) {
-                            courseDropdown.removeItemAt(i);
-                            break;
-                        }
-                    }
-                } else {
+                String courseToRemove = courseList.getSelectedValue();
+                if(courseToRemove == null) {
                     JOptionPane.showMessageDialog(panel,
                             "Please select a course",
                             "Error",
                             JOptionPane.ERROR_MESSAGE);
+                    return;
+                }
+
+                // A course with students is only removed if they move to another one
+                String reassignTo = null;
+                int enrolled = roster.enrolled(courseToRemove);
+                if(enrolled > 0) {
+                    JComboBox<String> targetBox = new JComboBox<>();
+                    for(String course : roster.courses()) {
+                        if(!course.equals(courseToRemove)) {
+                            targetBox.addItem(course);
+                        }
+                    }
+                    if(targetBox.getItemCount() == 0) {
+                        JOptionPane.showMessageDialog(panel,
+                                enrolled + " students are enrolled in " + courseToRemove
+                                        + " and there is no other course to move them to",
+                                "Error",
+                                JOptionPane.ERROR_MESSAGE);
+                        return;
+                    }
+                    JPanel movePanel = new JPanel(new GridLayout(2, 1, 5, 5));
+                    movePanel.add(new JLabel(enrolled + " students are enrolled in " + courseToRemove
+                            + ". Move them to:"));
+                    movePanel.add(targetBox);
+                    if(JOptionPane.showConfirmDialog(panel, movePanel, "Remove Course",
+                            JOptionPane.OK_CANCEL_OPTION, JOptionPane.WARNING_MESSAGE) != JOptionPane.OK_OPTION) {
+                        return;
+                    }
+                    reassignTo = (String) targetBox.getSelectedItem();
                 }
+
+                String target = reassignTo;
+                whenStored(roster.removeCourse(courseToRemove, reassignTo), panel, moved -> {
+                    courseListModel.removeElement(courseToRemove);
+                    analytics.courseRemoved(courseToRemove);
+
+                    // Update course dropdown in Add Student tab, if it has been built
+                    if(courseDropdown != null) {
+                        courseDropdown.removeItem(courseToRemove);
+                    }
+
+                    if(moved > 0) {
+                        JOptionPane.showMessageDialog(panel,
+                                moved + " students moved to " + target,
+                                "Course Removed",
+                                JOptionPane.INFORMATION_MESSAGE);
+                    }
+                });
             }
         });
 
+        removePanel.add(describeButton);
         removePanel.add(removeCourseButton);
 
         coursePanel.add(addPanel, BorderLayout.NORTH);
@@ -512,21 +1415,149 @@ public class StudentManagementFrame extends JFrame {
         return panel;
     }
 
-    // Update the student table with current data
-    private void updateStudentTable() {
-        // Clear table
-        tableModel.setRowCount(0);
-
-        // Add all students to table
-        for(Student student : studentList) {
-            Object[] row = {
-                    student.id,
-                    student.name,
-                    student.course,
-                    student.email,
-                    student.grade
-            };
-            tableModel.addRow(row);
+    // Tab 6: Analytics tab with grade distribution per course
+    private JPanel createAnalyticsTab() {
+        JPanel panel = new JPanel();
+        panel.setLayout(new BorderLayout());
+
+        // Header
+        JLabel titleLabel = new JLabel("Grade Distribution", SwingConstants.CENTER);
+        titleLabel.setFont(new Font("Arial", Font.BOLD, 16));
+        panel.add(titleLabel, BorderLayout.NORTH);
+
+        // One row per course plus a total row
+        String[] columns = new String[Student.GRADES.length + 3];
+        columns[0] = "Course";
+        columns[1] = "Enrolled";
+        System.arraycopy(Student.GRADES, 0, columns, 2, Student.GRADES.length);
+        columns[columns.length - 1] = "Completion";
+        DefaultTableModel statsModel = new DefaultTableModel(columns, 0) {
+            @Override
+            public boolean isCellEditable(int row, int column) {
+                return false;
+            }
+        };
+        JTable statsTable = new JTable(statsModel);
+        panel.add(new JScrollPane(statsTable), BorderLayout.CENTER);
+
+        // The counters are maintained as the roster changes, so refreshing only
+        // copies one row per course
+        Timer refreshTimer = new Timer(500, e -> {
+            if(!panel.isShowing()) {
+                return;
+            }
+            List<RosterAnalytics.CourseStats> stats = analytics.courses();
+            stats.add(analytics.overall());
+            statsModel.setRowCount(stats.size());
+            for(int row = 0; row < stats.size(); row++) {
+                RosterAnalytics.CourseStats course = stats.get(row);
+                statsModel.setValueAt(course.course, row, 0);
+                statsModel.setValueAt(course.enrolled(), row, 1);
+                for(int grade = 0; grade < Student.GRADES.length; grade++) {
+                    statsModel.setValueAt(course.grades[grade], row, grade + 2);
+                }
+                statsModel.setValueAt(String.format("%.1f%%", course.completionRate() * 100), row, columns.length - 1);
+            }
+        });
+        refreshTimer.setInitialDelay(0);
+        refreshTimer.start();
+
+        return panel;
+    }
+
+    // Continue on the EDT once a store operation has finished, reporting failures
+    private <T> void whenStored(CompletableFuture<T> operation, JPanel panel, Consumer<T> then) {
+        operation.whenCompleteAsync((result, error) -> {
+            if(error != null) {
+                Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+                JOptionPane.showMessageDialog(panel,
+                        "Operation failed: " + cause.getMessage(),
+                        "Error",
+                        JOptionPane.ERROR_MESSAGE);
+            } else {
+                then.accept(result);
+            }
+        }, StoreExecutor.EDT);
+    }
+
+    // Show a course's description and enrolled students, read in the background
+    private void showCourseDetails(String course, JTextArea courseDetails, JPanel panel) {
+        if(course == null) {
+            courseDetails.setText("");
+            return;
+        }
+        whenStored(storeExecutor.read(() -> {
+            String description = roster.courseDescription(course);
+            StringBuilder text = new StringBuilder(course).append("\n\n");
+            text.append(description == null || description.isEmpty() ? "No details available for this course." : description);
+
+            ArrayList<Student> students = new ArrayList<>();
+            int enrolled = roster.studentsInCourse(course, COURSE_DETAILS_STUDENTS, students);
+            text.append("\n\nEnrolled students: ").append(enrolled);
+            for(Student student : students) {
+                text.append("\n  ").append(student.id).append("  ").append(student.name)
+                        .append("  (").append(student.grade).append(')');
+            }
+            if(enrolled > students.size()) {
+                text.append("\n  ...");
+            }
+            return text.toString();
+        }), panel, text -> {
+            // Another course may have been selected in the meantime
+            if(course.equals(courseList.getSelectedValue())) {
+                courseDetails.setText(text);
+                courseDetails.setCaretPosition(0);
+            }
+        });
+    }
+
+    // Ask whether to add a student that looks like the ones matched
+    private boolean confirmNotDuplicate(JPanel panel, List<DuplicateIndex.Match> matches) {
+        StringBuilder message = new StringBuilder("This student may already be on the roster:");
+        for(DuplicateIndex.Match match : matches) {
+            message.append("\n  ").append(match.student.id).append("  ").append(match.student.name)
+                    .append("  ").append(match.student.email)
+                    .append(String.format("  (%.0f%% alike)", match.similarity * 100));
+        }
+        message.append("\n\nAdd the student anyway?");
+        return JOptionPane.showConfirmDialog(panel,
+                message.toString(),
+                "Possible Duplicate",
+                JOptionPane.YES_NO_OPTION,
+                JOptionPane.WARNING_MESSAGE) == JOptionPane.YES_OPTION;
+    }
+
+    // One dialog for a whole batch of grades, listing a few of the problems
+    private void showGradingSummary(JPanel panel, int updated, List<String> unknownIds, List<String> rejectedLines) {
+        StringBuilder message = new StringBuilder(updated + " grades assigned");
+        if(!unknownIds.isEmpty()) {
+            message.append("\n").append(unknownIds.size()).append(" unknown student IDs: ")
+                    .append(String.join(", ", unknownIds.subList(0, Math.min(10, unknownIds.size()))));
+            if(unknownIds.size() > 10) {
+                message.append(", ...");
+            }
         }
+        if(!rejectedLines.isEmpty()) {
+            message.append("\n").append(rejectedLines.size()).append(" lines skipped:");
+            for(String line : rejectedLines.subList(0, Math.min(10, rejectedLines.size()))) {
+                message.append("\n  ").append(line);
+            }
+            if(rejectedLines.size() > 10) {
+                message.append("\n  ...");
+            }
+        }
+        boolean clean = unknownIds.isEmpty() && rejectedLines.isEmpty();
+        JOptionPane.showMessageDialog(panel,
+                message.toString(),
+                "Grading Finished",
+                clean ? JOptionPane.INFORMATION_MESSAGE : JOptionPane.WARNING_MESSAGE);
+    }
+
+    // Update the student table with current data. The model reads the store
+    // directly, so this only asks the table to repaint what is visible
+    private void updateStudentTable() {
+        long start = System.nanoTime();
+        tableModel.fireTableDataChanged();
+        metrics.record(RosterMetrics.Operation.TABLE_REFRESH, start);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,286 @@
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+
+// Trigram index over name, email and course for substring search.
+//
+// Every student gets a document number in the order it was indexed, and each
+// trigram maps to the sorted list of documents containing it. A document
+// refers to the student's storage slot in the store. A query looks up the
+// lists of its trigrams, intersects them starting with the shortest, and
+// checks the remaining candidates against the actual text. Removed students
+// leave a hole that is skipped; once half the documents are holes the
+// postings lists are compacted in place, which is linear in their length
+// and never reads the store, so writers are not held up by re-indexing.
+//
+// The index is kept up to date from store events and queried from a
+// background thread, so index access is synchronized. Candidates are checked
+// against one snapshot of the store after the index lock is released
+public class StudentSearchIndex implements StudentStoreListener {
+
+    // Queries shorter than a trigram are answered by scanning the documents
+    static final int GRAM = 3;
+
+    // Growable sorted list of document numbers
+    private static class Postings {
+        int[] docs = new int[4];
+        int size;
+
+        void add(int doc) {
+            if(size == docs.length) {
+                docs = Arrays.copyOf(docs, size * 2);
+            }
+            docs[size++] = doc;
+        }
+    }
+
+    private final StudentStore store;
+    private final HashMap<Long, Postings> postings = new HashMap<>();
+
+    // Document -> storage slot (-1 once removed) and slot -> document
+    private int[] docSlot = new int[1024];
+    private int[] slotDoc = new int[1024];
+    private int docCount;
+    private int liveCount;
+
+    public StudentSearchIndex(StudentStore store) {
+        this.store = store;
+        // Changes that arrive while indexing wait for the lock
+        synchronized(this) {
+            RosterView view = store.addListener(this);
+            for(int row = 0; row < view.size(); row++) {
+                index(view.get(row));
+            }
+        }
+    }
+
+    @Override
+    public synchronized void studentAdded(int row, Student student) {
+        index(student);
+    }
+
+    @Override
+    public synchronized void studentsAdded(int firstRow, List<Student> students) {
+        for(Student student : students) {
+            index(student);
+        }
+    }
+
+    @Override
+    public void gradeChanged(int row, Student student, String oldGrade) {
+        // Grades are not searched
+    }
+
+    @Override
+    public void gradesChanged(int[] rows, List<Student> students, List<String> oldGrades) {
+        // Grades are not searched
+    }
+
+    // The course is searched, so moved students are indexed again under a new
+    // document number
+    @Override
+    public synchronized void courseReassigned(int[] rows, List<Student> students, String oldCourse) {
+        for(Student student : students) {
+            unindex(student.slot);
+            index(student);
+        }
+        compactIfSparse();
+    }
+
+    @Override
+    public synchronized void studentRemoved(int row, int lastRow, Student student) {
+        unindex(student.slot);
+        compactIfSparse();
+    }
+
+    private void unindex(int slot) {
+        if(slot >= slotDoc.length || slotDoc[slot] < 0) {
+            return;
+        }
+        docSlot[slotDoc[slot]] = -1;
+        slotDoc[slot] = -1;
+        liveCount--;
+    }
+
+    private void compactIfSparse() {
+        if(docCount > 1024 && liveCount < docCount / 2) {
+            compact();
+        }
+    }
+
+    private void index(Student student) {
+        if(docCount == docSlot.length) {
+            docSlot = Arrays.copyOf(docSlot, docCount * 2);
+        }
+        if(student.slot >= slotDoc.length) {
+            int length = slotDoc.length;
+            slotDoc = Arrays.copyOf(slotDoc, Math.max(length * 2, student.slot + 1));
+            Arrays.fill(slotDoc, length, slotDoc.length, -1);
+        }
+        int doc = docCount++;
+        docSlot[doc] = student.slot;
+        slotDoc[student.slot] = doc;
+        liveCount++;
+
+        // Each trigram once per student, whichever field it comes from
+        long[] grams = new long[student.name.length() + student.email.length() + student.course.length()];
+        int count = collectGrams(student.name, grams, 0);
+        count = collectGrams(student.email, grams, count);
+        count = collectGrams(student.course, grams, count);
+        Arrays.sort(grams, 0, count);
+        for(int i = 0; i < count; i++) {
+            if(i == 0 || grams[i] != grams[i - 1]) {
+                postings.computeIfAbsent(grams[i], k -> new Postings()).add(doc);
+            }
+        }
+    }
+
+    // Drop removed students from every postings list and renumber the
+    // remaining documents in order, so the lists stay sorted. Works on the
+    // index alone: nothing is read from the store or tokenized again
+    private void compact() {
+        int[] renumbered = new int[docCount];
+        int count = 0;
+        for(int doc = 0; doc < docCount; doc++) {
+            int slot = docSlot[doc];
+            if(slot < 0) {
+                renumbered[doc] = -1;
+                continue;
+            }
+            renumbered[doc] = count;
+            docSlot[count] = slot;
+            slotDoc[slot] = count;
+            count++;
+        }
+        docCount = count;
+
+        Iterator<Postings> lists = postings.values().iterator();
+        while(lists.hasNext()) {
+            Postings list = lists.next();
+            int kept = 0;
+            for(int i = 0; i < list.size; i++) {
+                int doc = renumbered[list.docs[i]];
+                if(doc >= 0) {
+                    list.docs[kept++] = doc;
+                }
+            }
+            list.size = kept;
+            if(kept == 0) {
+                lists.remove();
+            } else if(kept < list.docs.length / 4) {
+                list.docs = Arrays.copyOf(list.docs, Math.max(4, kept * 2));
+            }
+        }
+    }
+
+    // Storage slots of the students whose name, email or course contains the
+    // query, ignoring case
+    public int[] search(String query) {
+        String needle = query.trim().toLowerCase(Locale.ROOT);
+        if(needle.isEmpty()) {
+            return new int[0];
+        }
+
+        int[] candidates;
+        int count = 0;
+        synchronized(this) {
+            if(needle.length() < GRAM) {
+                candidates = new int[liveCount];
+                for(int i = 0; i < docCount; i++) {
+                    if(docSlot[i] >= 0) {
+                        candidates[count++] = docSlot[i];
+                    }
+                }
+            } else {
+                long[] grams = new long[needle.length()];
+                int gramCount = collectGrams(needle, grams, 0);
+                Postings[] lists = new Postings[gramCount];
+                for(int i = 0; i < gramCount; i++) {
+                    lists[i] = postings.get(grams[i]);
+                    if(lists[i] == null) {
+                        return new int[0];
+                    }
+                }
+                Arrays.sort(lists, (a, b) -> Integer.compare(a.size, b.size));
+
+                // Walk the shortest list and probe the others, which are sorted
+                int[] cursors = new int[lists.length];
+                Postings shortest = lists[0];
+                candidates = new int[shortest.size];
+                next:
+                for(int i = 0; i < shortest.size; i++) {
+                    int doc = shortest.docs[i];
+                    if(docSlot[doc] < 0) {
+                        continue;
+                    }
+                    for(int j = 1; j < lists.length; j++) {
+                        cursors[j] = seek(lists[j], cursors[j], doc);
+                        if(cursors[j] == lists[j].size) {
+                            break next;
+                        }
+                        if(lists[j].docs[cursors[j]] != doc) {
+                            continue next;
+                        }
+                    }
+                    candidates[count++] = docSlot[doc];
+                }
+            }
+        }
+
+        // Check the text against one view of the store, trigrams may come
+        // from different fields
+        RosterView view = store.snapshot();
+        int matches = 0;
+        for(int i = 0; i < count; i++) {
+            if(matches(view, candidates[i], needle)) {
+                candidates[matches++] = candidates[i];
+            }
+        }
+        return Arrays.copyOf(candidates, matches);
+    }
+
+    // First position at or after from whose document is >= doc
+    private static int seek(Postings list, int from, int doc) {
+        int step = 1;
+        int high = from;
+        while(high < list.size && list.docs[high] < doc) {
+            from = high + 1;
+            high += step;
+            step <<= 1;
+        }
+        high = Math.min(high + 1, list.size);
+        int index = Arrays.binarySearch(list.docs, from, high, doc);
+        return index >= 0 ? index : -index - 1;
+    }
+
+    private static boolean matches(RosterView view, int slot, String needle) {
+        return containsIgnoreCase(view.valueAtSlot(slot, StudentStore.NAME), needle)
+                || containsIgnoreCase(view.valueAtSlot(slot, StudentStore.EMAIL), needle)
+                || containsIgnoreCase(view.valueAtSlot(slot, StudentStore.COURSE), needle);
+    }
+
+    // needle must already be lower case. A null text is a removed student
+    private static boolean containsIgnoreCase(String text, String needle) {
+        if(text == null) {
+            return false;
+        }
+        int last = text.length() - needle.length();
+        for(int i = 0; i <= last; i++) {
+            if(text.regionMatches(true, i, needle, 0, needle.length())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int collectGrams(String text, long[] grams, int count) {
+        for(int i = 0; i + GRAM <= text.length(); i++) {
+            grams[count++] = ((long) Character.toLowerCase(text.charAt(i)) << 32)
+                    | ((long) Character.toLowerCase(text.charAt(i + 1)) << 16)
+                    | Character.toLowerCase(text.charAt(i + 2));
+        }
+        return count;
+    }
+}
@@ -0,0 +1,616 @@
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Keyed student storage kept in compact columns instead of one object per
+// student:
+//   - id, name and email are packed as UTF-8 into a TextArena
+//   - the course is an int code into a CourseDictionary
+//   - the grade is a byte index into Student.GRADES
+//
+// Each student lives in a storage slot that does not move while it exists.
+// Rows (the display order) map to slots, and a delete moves the last row into
+// the gap so nothing has to be shifted. An open addressing hash table on the
+// id gives O(1) find, update and delete.
+//
+// Any thread may change the store. Changes take the store's lock, bump the
+// version and notify listeners before the lock is released, so listeners see
+// changes one at a time in version order and must not change the store
+// themselves. Reads go to an immutable RosterView of the latest version,
+// which is republished on demand by sharing every column chunk that has not
+// changed since the previous view. Publishing takes only the columns lock,
+// which a change holds while it writes the columns but not while listeners
+// run, so readers never wait for listener work and virtual threads do not
+// pin. A reader may see a change before every listener has seen it
+public class StudentStore {
+
+    // Columns, in table order
+    static final int ID = 0;
+    static final int NAME = 1;
+    static final int COURSE = 2;
+    static final int EMAIL = 3;
+    static final int GRADE = 4;
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    // Held while the columns change and while a view is published
+    private final ReentrantLock columns = new ReentrantLock();
+
+    private final CopyOnWriteArrayList<StudentStoreListener> listeners = new CopyOnWriteArrayList<>();
+    private final CourseDictionary courses = new CourseDictionary();
+    private TextArena text = new TextArena();
+
+    // Per slot columns
+    private final IntColumn slotText = new IntColumn(INITIAL_CAPACITY);
+    private final IntColumn slotHash = new IntColumn(INITIAL_CAPACITY);
+    private final IntColumn slotCourse = new IntColumn(INITIAL_CAPACITY);
+    private final ByteColumn slotGrade = new ByteColumn(INITIAL_CAPACITY);
+    private final IntColumn slotRow = new IntColumn(INITIAL_CAPACITY);
+    private int slotCount;
+    private int[] freeSlots = new int[16];
+    private int freeCount;
+
+    // Row order
+    private final IntColumn rowSlot = new IntColumn(INITIAL_CAPACITY);
+    private int size;
+
+    // Id index, linear probing. Entries are slot + 1, 0 marks an empty entry
+    private IntColumn idTable = new IntColumn(INITIAL_CAPACITY * 2);
+
+    // Text bytes that belong to deleted students
+    private long garbageBytes;
+
+    // Incremented by every change; view is the latest published version
+    private volatile long version;
+    // Students as of the latest change, for metrics that must not publish a view
+    private volatile int changedSize;
+    private volatile RosterView view;
+    private String[] courseNames = new String[0];
+
+    public StudentStore() {
+        publish();
+    }
+
+    // Register a listener and return the view it starts from: the listener is
+    // told about every change after that view's version
+    public synchronized RosterView addListener(StudentStoreListener listener) {
+        listeners.add(listener);
+        return publish();
+    }
+
+    // Add a student, returns false if the ID is already taken
+    public synchronized boolean add(Student student) {
+        byte[] id = utf8(student.id);
+        int hash = hash(id);
+        if(findSlot(id, hash) >= 0) {
+            return false;
+        }
+        columns.lock();
+        try {
+            student.slot = insert(student, id, hash);
+            changed();
+        } finally {
+            columns.unlock();
+        }
+        int row = slotRow.get(student.slot);
+        for(StudentStoreListener listener : listeners) {
+            listener.studentAdded(row, student);
+        }
+        return true;
+    }
+
+    // Add a batch of students as one change with a single notification.
+    // Returns the students that were rejected because their ID is already taken
+    public synchronized List<Student> addAll(List<Student> batch) {
+        int firstRow = size;
+        ArrayList<Student> added = new ArrayList<>(batch.size());
+        ArrayList<Student> rejected = new ArrayList<>();
+        columns.lock();
+        try {
+            for(Student student : batch) {
+                byte[] id = utf8(student.id);
+                int hash = hash(id);
+                if(findSlot(id, hash) >= 0) {
+                    rejected.add(student);
+                } else {
+                    student.slot = insert(student, id, hash);
+                    added.add(student);
+                }
+            }
+            if(!added.isEmpty()) {
+                changed();
+            }
+        } finally {
+            columns.unlock();
+        }
+        if(!added.isEmpty()) {
+            for(StudentStoreListener listener : listeners) {
+                listener.studentsAdded(firstRow, added);
+            }
+        }
+        return rejected;
+    }
+
+    // Update a student's grade, returns false if the ID is unknown
+    public synchronized boolean setGrade(String id, String grade) {
+        byte code = Student.gradeCode(grade);
+        byte[] key = utf8(id);
+        int slot = findSlot(key, hash(key));
+        if(slot < 0) {
+            return false;
+        }
+        String oldGrade = Student.GRADES[slotGrade.get(slot)];
+        columns.lock();
+        try {
+            slotGrade.set(slot, code);
+            changed();
+        } finally {
+            columns.unlock();
+        }
+        int row = slotRow.get(slot);
+        Student student = read(slot);
+        for(StudentStoreListener listener : listeners) {
+            listener.gradeChanged(row, student, oldGrade);
+        }
+        return true;
+    }
+
+    // Update many grades as one change with a single notification. Every grade
+    // is checked before anything is changed; returns the IDs that are unknown
+    public synchronized List<String> setGrades(Map<String, String> grades) {
+        byte[] codes = new byte[grades.size()];
+        int i = 0;
+        for(String grade : grades.values()) {
+            codes[i++] = Student.gradeCode(grade);
+        }
+
+        int[] rows = new int[grades.size()];
+        ArrayList<Student> students = new ArrayList<>(grades.size());
+        ArrayList<String> oldGrades = new ArrayList<>(grades.size());
+        ArrayList<String> unknown = new ArrayList<>();
+        i = 0;
+        columns.lock();
+        try {
+            for(String id : grades.keySet()) {
+                byte code = codes[i++];
+                byte[] key = utf8(id);
+                int slot = findSlot(key, hash(key));
+                if(slot < 0) {
+                    unknown.add(id);
+                    continue;
+                }
+                oldGrades.add(Student.GRADES[slotGrade.get(slot)]);
+                slotGrade.set(slot, code);
+                rows[students.size()] = slotRow.get(slot);
+                students.add(read(slot));
+            }
+            if(!students.isEmpty()) {
+                changed();
+            }
+        } finally {
+            columns.unlock();
+        }
+        if(!students.isEmpty()) {
+            int[] changed = students.size() == rows.length ? rows : Arrays.copyOf(rows, students.size());
+            for(StudentStoreListener listener : listeners) {
+                listener.gradesChanged(changed, students, oldGrades);
+            }
+        }
+        return unknown;
+    }
+
+    // Move every student of one course to another as one change with a single
+    // notification. Scans every row; callers that keep a CourseIndex pass its
+    // slots to the overload below instead. Returns the number of students moved
+    public synchronized int reassignCourse(String from, String to) {
+        int fromCode = courses.find(from);
+        if(fromCode < 0) {
+            return 0;
+        }
+        int[] slots = new int[16];
+        int count = 0;
+        for(int row = 0; row < size; row++) {
+            int slot = rowSlot.get(row);
+            if(slotCourse.get(slot) == fromCode) {
+                if(count == slots.length) {
+                    slots = Arrays.copyOf(slots, count * 2);
+                }
+                slots[count++] = slot;
+            }
+        }
+        return reassignCourse(from, to, Arrays.copyOf(slots, count));
+    }
+
+    // Move the students in the given slots from one course to another, as one
+    // change with a single notification. The cost follows the number of slots,
+    // not the roster; a slot that is not in use or holds a student of another
+    // course is skipped. Returns the number of students moved
+    public synchronized int reassignCourse(String from, String to, int[] slots) {
+        int fromCode = courses.find(from);
+        if(fromCode < 0 || from.equals(to)) {
+            return 0;
+        }
+        int[] rows = new int[slots.length];
+        ArrayList<Student> students = new ArrayList<>(slots.length);
+        columns.lock();
+        try {
+            int toCode = courses.code(to);
+            for(int slot : slots) {
+                if(slot >= slotCount || slotRow.get(slot) < 0 || slotCourse.get(slot) != fromCode) {
+                    continue;
+                }
+                slotCourse.set(slot, toCode);
+                rows[students.size()] = slotRow.get(slot);
+                students.add(read(slot));
+            }
+            if(!students.isEmpty()) {
+                changed();
+            }
+        } finally {
+            columns.unlock();
+        }
+        if(!students.isEmpty()) {
+            int[] changed = students.size() == rows.length ? rows : Arrays.copyOf(rows, students.size());
+            for(StudentStoreListener listener : listeners) {
+                listener.courseReassigned(changed, students, from);
+            }
+        }
+        return students.size();
+    }
+
+    // Remove a student by ID. The last row is moved into the gap so nothing
+    // has to be shifted; returns the removed student or null
+    public synchronized Student remove(String id) {
+        byte[] key = utf8(id);
+        int slot = findSlot(key, hash(key));
+        if(slot < 0) {
+            return null;
+        }
+        Student removed = read(slot);
+        int row = slotRow.get(slot);
+        int last = size - 1;
+        columns.lock();
+        try {
+            removeSlot(slot);
+            freeSlot(slot);
+            changed();
+        } finally {
+            columns.unlock();
+        }
+        for(StudentStoreListener listener : listeners) {
+            listener.studentRemoved(row, last, removed);
+        }
+        return removed;
+    }
+
+    // Make the store hold exactly the students of roster, as one change:
+    // readers see the old students or the new ones, never a mix. Listeners
+    // hear only what differs, as removals, then one batch of grade changes,
+    // then one batch of additions. A student whose name, email or course
+    // differs is removed and added again. Removed slots are only reused once
+    // every listener has heard of the removals, so a listener that reads the
+    // store by slot never sees a new student under an old slot
+    public synchronized void replaceAll(RosterView roster) {
+        ArrayList<Student> removed = new ArrayList<>();
+        int[] removedRows = new int[16];
+        int[] gradeRows = new int[16];
+        ArrayList<Student> graded = new ArrayList<>();
+        ArrayList<String> oldGrades = new ArrayList<>();
+        ArrayList<Student> added = new ArrayList<>();
+        int firstRow;
+        columns.lock();
+        try {
+            // From the last row down, so the row moved into a gap was already kept
+            for(int row = size - 1; row >= 0; row--) {
+                int slot = rowSlot.get(row);
+                Student current = read(slot);
+                Student wanted = roster.find(current.id);
+                if(wanted != null && wanted.name.equals(current.name) && wanted.email.equals(current.email)
+                        && wanted.course.equals(current.course)) {
+                    continue;
+                }
+                if(removed.size() * 2 == removedRows.length) {
+                    removedRows = Arrays.copyOf(removedRows, removedRows.length * 2);
+                }
+                removedRows[removed.size() * 2] = row;
+                removedRows[removed.size() * 2 + 1] = size - 1;
+                removed.add(current);
+                removeSlot(slot);
+            }
+
+            for(int row = 0; row < roster.size(); row++) {
+                Student wanted = roster.get(row);
+                byte[] id = utf8(wanted.id);
+                int hash = hash(id);
+                int slot = findSlot(id, hash);
+                if(slot < 0) {
+                    added.add(wanted);
+                    continue;
+                }
+                byte code = Student.gradeCode(wanted.grade);
+                if(slotGrade.get(slot) != code) {
+                    oldGrades.add(Student.GRADES[slotGrade.get(slot)]);
+                    slotGrade.set(slot, code);
+                    if(graded.size() == gradeRows.length) {
+                        gradeRows = Arrays.copyOf(gradeRows, gradeRows.length * 2);
+                    }
+                    gradeRows[graded.size()] = slotRow.get(slot);
+                    graded.add(read(slot));
+                }
+            }
+
+            firstRow = size;
+            for(Student student : added) {
+                byte[] id = utf8(student.id);
+                student.slot = insert(student, id, hash(id));
+            }
+            if(!removed.isEmpty() || !graded.isEmpty() || !added.isEmpty()) {
+                changed();
+            }
+        } finally {
+            columns.unlock();
+        }
+        try {
+            for(int i = 0; i < removed.size(); i++) {
+                for(StudentStoreListener listener : listeners) {
+                    listener.studentRemoved(removedRows[i * 2], removedRows[i * 2 + 1], removed.get(i));
+                }
+            }
+            if(!graded.isEmpty()) {
+                int[] rows = Arrays.copyOf(gradeRows, graded.size());
+                for(StudentStoreListener listener : listeners) {
+                    listener.gradesChanged(rows, graded, oldGrades);
+                }
+            }
+            if(!added.isEmpty()) {
+                for(StudentStoreListener listener : listeners) {
+                    listener.studentsAdded(firstRow, added);
+                }
+            }
+        } finally {
+            for(Student student : removed) {
+                freeSlot(student.slot);
+            }
+        }
+    }
+
+    // Find a student by ID, or null if there is none
+    public Student find(String id) {
+        return snapshot().find(id);
+    }
+
+    // Row of a student by ID, or -1 if there is none
+    public int rowOf(String id) {
+        return snapshot().rowOf(id);
+    }
+
+    public Student get(int row) {
+        return snapshot().get(row);
+    }
+
+    // One column of a row, as shown in the table. A row that has been removed
+    // in the meantime reads as empty
+    public String valueAt(int row, int column) {
+        RosterView current = snapshot();
+        if(row >= current.size()) {
+            return "";
+        }
+        return current.valueAt(row, column);
+    }
+
+    // One column of a storage slot, or null if the slot is not in use
+    public String valueAtSlot(int slot, int column) {
+        return snapshot().valueAtSlot(slot, column);
+    }
+
+    // Students in row order from row from on, see RosterView.list
+    public int list(int from, int limit, String course, String grade, List<Student> out) {
+        return snapshot().list(from, limit, course, grade, out);
+    }
+
+    public int size() {
+        return snapshot().size();
+    }
+
+    public long version() {
+        return version;
+    }
+
+    // Number of students as of the latest change. Unlike size() this never
+    // publishes a view, so it is cheap enough for every recorded operation
+    public int sizeNow() {
+        return changedSize;
+    }
+
+    // Immutable view of the roster as of the latest change. Returns the
+    // previous view when nothing changed; otherwise a new one is published,
+    // which costs a pointer copy per column chunk and never a row copy
+    public RosterView snapshot() {
+        RosterView current = view;
+        if(current.version() == version) {
+            return current;
+        }
+        return publish();
+    }
+
+    // Approximate heap held by the store, for measuring the footprint
+    public synchronized long footprintBytes() {
+        long columns = (long) slotText.capacity() * (4 + 4 + 4 + 1 + 4) + rowSlot.capacity() * 4L
+                + idTable.capacity() * 4L + freeSlots.length * 4L;
+        return columns + text.allocatedBytes();
+    }
+
+    // Called with the columns lock held once a change is complete
+    private void changed() {
+        changedSize = size;
+        version++;
+    }
+
+    private RosterView publish() {
+        columns.lock();
+        try {
+            if(view == null || view.version() != version) {
+                if(courseNames.length != courses.size()) {
+                    courseNames = courses.toArray();
+                }
+                view = new RosterView(version, size, slotCount, rowSlot.publish(size), slotText.publish(slotCount),
+                        slotHash.publish(slotCount), slotCourse.publish(slotCount), slotGrade.publish(slotCount),
+                        slotRow.publish(slotCount), idTable.publish(idTable.capacity()), text.snapshot(), courseNames);
+            }
+            return view;
+        } finally {
+            columns.unlock();
+        }
+    }
+
+    private int insert(Student student, byte[] id, int hash) {
+        byte grade = Student.gradeCode(student.grade);
+        if((size + 1) * 2 > idTable.capacity()) {
+            rehash(idTable.capacity() * 2);
+        }
+        int slot;
+        if(freeCount > 0) {
+            slot = freeSlots[--freeCount];
+        } else {
+            if(slotCount == slotText.capacity()) {
+                growSlots();
+            }
+            slot = slotCount++;
+        }
+        slotText.set(slot, text.append(id, utf8(student.name), utf8(student.email)));
+        slotHash.set(slot, hash);
+        slotCourse.set(slot, courses.code(student.course));
+        slotGrade.set(slot, grade);
+
+        if(size == rowSlot.capacity()) {
+            rowSlot.grow(size * 2);
+        }
+        rowSlot.set(size, slot);
+        slotRow.set(slot, size);
+        size++;
+        addToIdTable(slot);
+        return slot;
+    }
+
+    // Take a student's slot out of use and move the last row into its row.
+    // The slot is not reused until it is passed to freeSlot. Called with the
+    // columns lock held
+    private void removeSlot(int slot) {
+        int row = slotRow.get(slot);
+        removeFromIdTable(slot);
+        int moved = rowSlot.get(size - 1);
+        rowSlot.set(row, moved);
+        slotRow.set(moved, row);
+        size--;
+
+        slotRow.set(slot, -1);
+        garbageBytes += text.recordLength(slotText.get(slot));
+        if(garbageBytes > 8 << 20 && garbageBytes > text.usedBytes() / 2) {
+            compact();
+        }
+    }
+
+    private void freeSlot(int slot) {
+        if(freeCount == freeSlots.length) {
+            freeSlots = Arrays.copyOf(freeSlots, freeCount * 2);
+        }
+        freeSlots[freeCount++] = slot;
+    }
+
+    private Student read(int slot) {
+        int ref = slotText.get(slot);
+        Student student = new Student(text.field(ref, TextArena.ID), text.field(ref, TextArena.NAME),
+                courses.name(slotCourse.get(slot)), text.field(ref, TextArena.EMAIL));
+        student.grade = Student.GRADES[slotGrade.get(slot)];
+        student.slot = slot;
+        return student;
+    }
+
+    private void growSlots() {
+        int capacity = slotText.capacity() * 2;
+        slotText.grow(capacity);
+        slotHash.grow(capacity);
+        slotCourse.grow(capacity);
+        slotGrade.grow(capacity);
+        slotRow.grow(capacity);
+    }
+
+    // Rewrite the live records into a new arena. Views keep the old one
+    private void compact() {
+        TextArena compacted = new TextArena();
+        for(int row = 0; row < size; row++) {
+            int slot = rowSlot.get(row);
+            slotText.set(slot, compacted.copy(text, slotText.get(slot)));
+        }
+        text = compacted;
+        garbageBytes = 0;
+    }
+
+    private int findSlot(byte[] id, int hash) {
+        int mask = idTable.capacity() - 1;
+        for(int i = hash & mask; ; i = (i + 1) & mask) {
+            int entry = idTable.get(i);
+            if(entry == 0) {
+                return -1;
+            }
+            int slot = entry - 1;
+            if(slotHash.get(slot) == hash && text.fieldEquals(slotText.get(slot), TextArena.ID, id)) {
+                return slot;
+            }
+        }
+    }
+
+    private void addToIdTable(int slot) {
+        int mask = idTable.capacity() - 1;
+        int i = slotHash.get(slot) & mask;
+        while(idTable.get(i) != 0) {
+            i = (i + 1) & mask;
+        }
+        idTable.set(i, slot + 1);
+    }
+
+    // Delete with backward shifting, so probe chains never contain holes
+    private void removeFromIdTable(int slot) {
+        int mask = idTable.capacity() - 1;
+        int i = slotHash.get(slot) & mask;
+        while(idTable.get(i) != slot + 1) {
+            i = (i + 1) & mask;
+        }
+        int j = i;
+        while(true) {
+            j = (j + 1) & mask;
+            int entry = idTable.get(j);
+            if(entry == 0) {
+                break;
+            }
+            int home = slotHash.get(entry - 1) & mask;
+            // The entry may move into the hole unless its home lies cyclically in (i, j]
+            boolean stays = i <= j ? (i < home && home <= j) : (i < home || home <= j);
+            if(!stays) {
+                idTable.set(i, entry);
+                i = j;
+            }
+        }
+        idTable.set(i, 0);
+    }
+
+    private void rehash(int capacity) {
+        idTable = new IntColumn(capacity);
+        for(int row = 0; row < size; row++) {
+            addToIdTable(rowSlot.get(row));
+        }
+    }
+
+    static byte[] utf8(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    static int hash(byte[] id) {
+        int h = Arrays.hashCode(id) * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
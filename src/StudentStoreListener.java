@@ -0,0 +1,32 @@
+import java.util.List;
+
+// Receives notifications when the student store changes. Called on the thread
+// that made the change while it holds the store's lock, one change at a time
+public interface StudentStoreListener {
+
+    void studentAdded(int row, Student student);
+
+    // A batch of students was appended at rows firstRow .. firstRow + size - 1
+    default void studentsAdded(int firstRow, List<Student> students) {
+        for(int i = 0; i < students.size(); i++) {
+            studentAdded(firstRow + i, students.get(i));
+        }
+    }
+
+    void gradeChanged(int row, Student student, String oldGrade);
+
+    // A batch of grades was changed, students.get(i) is at rows[i]
+    default void gradesChanged(int[] rows, List<Student> students, List<String> oldGrades) {
+        for(int i = 0; i < rows.length; i++) {
+            gradeChanged(rows[i], students.get(i), oldGrades.get(i));
+        }
+    }
+
+    // Every student of oldCourse was moved to one other course, the one they
+    // now carry. students.get(i) is at rows[i]
+    void courseReassigned(int[] rows, List<Student> students, String oldCourse);
+
+    // The student at row was removed. If row != lastRow, the student that was
+    // at lastRow has been moved into row
+    void studentRemoved(int row, int lastRow, Student student);
+}
@@ -0,0 +1,151 @@
+import javax.swing.event.TableModelEvent;
+import javax.swing.table.AbstractTableModel;
+import java.util.List;
+
+// Table model that reads rows straight from the student store and turns store
+// changes into row level table events. Store events must reach it on the EDT,
+// see EdtStoreListener. They arrive some time after the change, so the model
+// keeps its own row count, which only moves when it fires the matching event
+public class StudentTableModel extends AbstractTableModel implements StudentStoreListener {
+
+    static final int ID_COLUMN = StudentStore.ID;
+    static final int GRADE_COLUMN = StudentStore.GRADE;
+
+    private static final String[] COLUMNS = {"ID", "Name", "Course", "Email", "Grade"};
+
+    private final StudentStore store;
+
+    // Storage slots shown while a search is active, null when showing the whole store
+    private int[] filtered;
+
+    // Rows of the whole store the table has been told about
+    private int rowCount;
+
+    public StudentTableModel(StudentStore store) {
+        this.store = store;
+    }
+
+    // Show the store as of view, which the events that follow build on
+    public void refresh(RosterView view) {
+        rowCount = view.size();
+        if(filtered == null) {
+            fireTableDataChanged();
+        }
+    }
+
+    // Show only the given students. Store events are not turned into row events
+    // while filtered, the owner of the filter refreshes it instead
+    public void setFilter(int[] slots) {
+        filtered = slots;
+        fireTableDataChanged();
+    }
+
+    public void clearFilter() {
+        if(filtered != null) {
+            filtered = null;
+            fireTableDataChanged();
+        }
+    }
+
+    public boolean isFiltered() {
+        return filtered != null;
+    }
+
+    @Override
+    public int getRowCount() {
+        return filtered != null ? filtered.length : rowCount;
+    }
+
+    @Override
+    public int getColumnCount() {
+        return COLUMNS.length;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        return COLUMNS[column];
+    }
+
+    @Override
+    public Object getValueAt(int row, int column) {
+        if(filtered == null) {
+            return store.valueAt(row, column);
+        }
+        // A student removed since the search shows as empty until it is re-run
+        String value = store.valueAtSlot(filtered[row], column);
+        return value != null ? value : "";
+    }
+
+    @Override
+    public void studentAdded(int row, Student student) {
+        rowCount++;
+        if(filtered != null) {
+            return;
+        }
+        fireTableRowsInserted(row, row);
+    }
+
+    @Override
+    public void studentsAdded(int firstRow, List<Student> students) {
+        rowCount += students.size();
+        if(filtered != null) {
+            return;
+        }
+        fireTableRowsInserted(firstRow, firstRow + students.size() - 1);
+    }
+
+    @Override
+    public void gradeChanged(int row, Student student, String oldGrade) {
+        if(filtered != null) {
+            // Cells are read from the store, so only a repaint is needed
+            if(filtered.length > 0) {
+                fireTableRowsUpdated(0, filtered.length - 1);
+            }
+            return;
+        }
+        fireTableCellUpdated(row, GRADE_COLUMN);
+    }
+
+    @Override
+    public void gradesChanged(int[] rows, List<Student> students, List<String> oldGrades) {
+        rowsChanged(rows, GRADE_COLUMN);
+    }
+
+    @Override
+    public void courseReassigned(int[] rows, List<Student> students, String oldCourse) {
+        rowsChanged(rows, StudentStore.COURSE);
+    }
+
+    // One event spanning every changed row, instead of one per student
+    private void rowsChanged(int[] rows, int column) {
+        if(filtered != null) {
+            if(filtered.length > 0) {
+                fireTableRowsUpdated(0, filtered.length - 1);
+            }
+            return;
+        }
+        int first = Integer.MAX_VALUE;
+        int last = -1;
+        for(int row : rows) {
+            first = Math.min(first, row);
+            last = Math.max(last, row);
+        }
+        if(last >= 0) {
+            fireTableChanged(new TableModelEvent(this, first, last, column));
+        }
+    }
+
+    @Override
+    public void studentRemoved(int row, int lastRow, Student student) {
+        if(filtered != null) {
+            rowCount--;
+            return;
+        }
+        // The last row moved into the gap
+        if(row != lastRow) {
+            fireTableRowsUpdated(row, row);
+        }
+        rowCount--;
+        fireTableRowsDeleted(lastRow, lastRow);
+    }
+}
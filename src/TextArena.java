@@ -0,0 +1,175 @@
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+// Append-only byte storage for the text fields of student records. A record
+// is id, name and email, each as a varint length followed by UTF-8, packed
+// into 1 MB chunks. A record is addressed by an int reference (chunk << 20 |
+// position) and never changes once written, so old references stay readable
+// by snapshots even after the store has compacted into a new arena
+public class TextArena {
+
+    static final int ID = 0;
+    static final int NAME = 1;
+    static final int EMAIL = 2;
+
+    private static final int CHUNK_BITS = 20;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final int POSITION_MASK = CHUNK_SIZE - 1;
+
+    private byte[][] chunks = new byte[4][];
+    private int chunkCount;
+    private int position = CHUNK_SIZE;
+    private long usedBytes;
+
+    // Append a record and return its reference
+    public int append(byte[] id, byte[] name, byte[] email) {
+        int length = varintSize(id.length) + id.length + varintSize(name.length) + name.length
+                + varintSize(email.length) + email.length;
+        if(length > CHUNK_SIZE) {
+            throw new IllegalArgumentException("Student record is too large");
+        }
+        if(position + length > CHUNK_SIZE) {
+            if(chunkCount == chunks.length) {
+                chunks = Arrays.copyOf(chunks, chunkCount * 2);
+            }
+            if(chunkCount == 1 << (31 - CHUNK_BITS)) {
+                throw new IllegalStateException("Text arena is full");
+            }
+            chunks[chunkCount++] = new byte[CHUNK_SIZE];
+            position = 0;
+        }
+        int ref = ((chunkCount - 1) << CHUNK_BITS) | position;
+        byte[] chunk = chunks[chunkCount - 1];
+        position = put(chunk, position, id);
+        position = put(chunk, position, name);
+        position = put(chunk, position, email);
+        usedBytes += length;
+        return ref;
+    }
+
+    // Copy a record from another arena, used when compacting
+    public int copy(TextArena from, int ref) {
+        return append(from.bytes(ref, ID), from.bytes(ref, NAME), from.bytes(ref, EMAIL));
+    }
+
+    public String field(int ref, int field) {
+        byte[] chunk = chunks[ref >>> CHUNK_BITS];
+        int offset = seek(chunk, ref & POSITION_MASK, field);
+        int length = readVarint(chunk, offset);
+        offset += varintSize(length);
+        return new String(chunk, offset, length, StandardCharsets.UTF_8);
+    }
+
+    public byte[] bytes(int ref, int field) {
+        byte[] chunk = chunks[ref >>> CHUNK_BITS];
+        int offset = seek(chunk, ref & POSITION_MASK, field);
+        int length = readVarint(chunk, offset);
+        offset += varintSize(length);
+        return Arrays.copyOfRange(chunk, offset, offset + length);
+    }
+
+    // Byte length of a field
+    public int length(int ref, int field) {
+        byte[] chunk = chunks[ref >>> CHUNK_BITS];
+        return readVarint(chunk, seek(chunk, ref & POSITION_MASK, field));
+    }
+
+    // Copy a field's UTF-8 bytes into a buffer without decoding them
+    public void copyTo(int ref, int field, ByteBuffer out) {
+        byte[] chunk = chunks[ref >>> CHUNK_BITS];
+        int offset = seek(chunk, ref & POSITION_MASK, field);
+        int length = readVarint(chunk, offset);
+        out.put(chunk, offset + varintSize(length), length);
+    }
+
+    // True if a field contains any of the given ASCII bytes
+    public boolean contains(int ref, int field, byte a, byte b, byte c, byte d) {
+        byte[] chunk = chunks[ref >>> CHUNK_BITS];
+        int offset = seek(chunk, ref & POSITION_MASK, field);
+        int length = readVarint(chunk, offset);
+        offset += varintSize(length);
+        for(int i = offset; i < offset + length; i++) {
+            byte value = chunk[i];
+            if(value == a || value == b || value == c || value == d) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public boolean fieldEquals(int ref, int field, byte[] value) {
+        byte[] chunk = chunks[ref >>> CHUNK_BITS];
+        int offset = seek(chunk, ref & POSITION_MASK, field);
+        int length = readVarint(chunk, offset);
+        offset += varintSize(length);
+        return Arrays.equals(chunk, offset, offset + length, value, 0, value.length);
+    }
+
+    // Total bytes of a record
+    public int recordLength(int ref) {
+        byte[] chunk = chunks[ref >>> CHUNK_BITS];
+        int start = ref & POSITION_MASK;
+        int end = seek(chunk, start, EMAIL);
+        int length = readVarint(chunk, end);
+        return end + varintSize(length) + length - start;
+    }
+
+    public long usedBytes() {
+        return usedBytes;
+    }
+
+    // Bytes held by the chunks, including the unused tail of the last one
+    public long allocatedBytes() {
+        return (long) chunkCount * CHUNK_SIZE;
+    }
+
+    // Read-only view sharing the chunks written so far
+    public TextArena snapshot() {
+        TextArena view = new TextArena();
+        view.chunks = Arrays.copyOf(chunks, chunkCount);
+        view.chunkCount = chunkCount;
+        view.usedBytes = usedBytes;
+        return view;
+    }
+
+    private static int seek(byte[] chunk, int offset, int field) {
+        for(int i = 0; i < field; i++) {
+            int length = readVarint(chunk, offset);
+            offset += varintSize(length) + length;
+        }
+        return offset;
+    }
+
+    private static int put(byte[] chunk, int position, byte[] value) {
+        int length = value.length;
+        while((length & ~0x7F) != 0) {
+            chunk[position++] = (byte) ((length & 0x7F) | 0x80);
+            length >>>= 7;
+        }
+        chunk[position++] = (byte) length;
+        System.arraycopy(value, 0, chunk, position, value.length);
+        return position + value.length;
+    }
+
+    private static int readVarint(byte[] chunk, int offset) {
+        int value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = chunk[offset++];
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while((b & 0x80) != 0);
+        return value;
+    }
+
+    private static int varintSize(int value) {
+        int size = 1;
+        while((value & ~0x7F) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+}